@@ -0,0 +1,14 @@
+package io.github.chubbyhippo.updown.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+@SpringBootApplication
+@ConfigurationPropertiesScan
+public class UpDownReactiveApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(UpDownReactiveApplication.class, args);
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.chubbyhippo.updown.reactive.domain;
+
+public class EmptyFileException extends RuntimeException {
+
+    public EmptyFileException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,31 @@
+package io.github.chubbyhippo.updown.reactive.domain;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.codec.multipart.FilePart;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The non-blocking counterpart of the servlet build's {@code StorageService}: bodies arrive and leave as
+ * {@link DataBuffer} streams, and nothing waits on a request thread.
+ */
+public interface ReactiveStorageService {
+
+    Mono<Void> init();
+
+    Mono<Void> store(FilePart file);
+
+    Mono<Void> store(String filename, Flux<DataBuffer> content);
+
+    Flux<String> loadAll();
+
+    /**
+     * A file-backed resource, so the web layer can send it as a zero-copy file region.
+     */
+    Mono<Resource> loadAsResource(String filename);
+
+    Flux<DataBuffer> zipFiles(Flux<String> filenames, Integer level);
+
+    Mono<Void> deleteAll();
+}
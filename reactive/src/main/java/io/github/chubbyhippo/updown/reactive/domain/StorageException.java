@@ -0,0 +1,12 @@
+package io.github.chubbyhippo.updown.reactive.domain;
+
+public class StorageException extends RuntimeException {
+
+    public StorageException(String message) {
+        super(message);
+    }
+
+    public StorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
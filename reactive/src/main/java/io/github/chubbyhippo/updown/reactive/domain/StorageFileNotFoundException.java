@@ -0,0 +1,8 @@
+package io.github.chubbyhippo.updown.reactive.domain;
+
+public class StorageFileNotFoundException extends StorageException {
+
+    public StorageFileNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.chubbyhippo.updown.reactive.infrastructure;
+
+import io.github.chubbyhippo.updown.reactive.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.reactive.domain.ReactiveStorageService;
+import io.github.chubbyhippo.updown.reactive.domain.StorageException;
+import io.github.chubbyhippo.updown.reactive.domain.StorageFileNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Stores into the same flat directory as the servlet build's filesystem backend. Bodies are written through an
+ * asynchronous file channel; only the metadata calls (move, list, stat) and the zip deflater, which have no
+ * non-blocking API, run on the bounded elastic scheduler.
+ */
+@Service
+public class FileSystemReactiveStorageService implements ReactiveStorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSystemReactiveStorageService.class);
+    private static final int ZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final Path rootLocation;
+    private final Path stagingLocation;
+
+    public FileSystemReactiveStorageService(StorageProperties properties) {
+        this.rootLocation = Path.of(properties.location()).toAbsolutePath();
+        this.stagingLocation = rootLocation.resolve(".staging");
+    }
+
+    @Override
+    public Mono<Void> init() {
+        return Mono.<Void>fromCallable(() -> {
+                    Files.createDirectories(stagingLocation);
+                    return null;
+                })
+                .onErrorMap(IOException.class, e -> new StorageException("Could not initialize storage", e))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> store(FilePart file) {
+        return store(file.filename(), file.content());
+    }
+
+    @Override
+    public Mono<Void> store(String filename, Flux<DataBuffer> content) {
+        return Mono.fromCallable(() -> resolve(filename))
+                .flatMap(destination -> {
+                    var staged = stagingLocation.resolve(UUID.randomUUID() + ".tmp");
+                    return DataBufferUtils.write(content, staged, StandardOpenOption.CREATE_NEW,
+                                    StandardOpenOption.WRITE)
+                            .then(Mono.<Void>fromCallable(() -> {
+                                if (Files.size(staged) == 0) {
+                                    throw new EmptyFileException("Failed to store empty file.");
+                                }
+                                Files.move(staged, destination, StandardCopyOption.REPLACE_EXISTING,
+                                        StandardCopyOption.ATOMIC_MOVE);
+                                return null;
+                            }).subscribeOn(Schedulers.boundedElastic()))
+                            .onErrorResume(e -> Mono.<Void>fromRunnable(() -> deleteStaged(staged))
+                                    .subscribeOn(Schedulers.boundedElastic())
+                                    .then(Mono.error(e)));
+                })
+                .onErrorMap(IOException.class, e -> new StorageException("Failed to store file.", e));
+    }
+
+    private static void deleteStaged(Path staged) {
+        try {
+            Files.deleteIfExists(staged);
+        } catch (IOException e) {
+            log.warn("Could not delete staged file {}", staged, e);
+        }
+    }
+
+    private Path resolve(String filename) throws StorageException {
+        var path = rootLocation.resolve(Path.of(filename)).normalize();
+        if (!rootLocation.equals(path.getParent())) {
+            // This is a security check
+            throw new StorageException(
+                    "Cannot store file outside current directory.");
+        }
+        return path;
+    }
+
+    @Override
+    public Flux<String> loadAll() {
+        return Flux.using(() -> Files.list(rootLocation), Flux::fromStream, Stream::close)
+                .filter(path -> Files.isRegularFile(path) && !path.getFileName().toString().startsWith("."))
+                .map(path -> path.getFileName().toString())
+                .sort()
+                .onErrorMap(IOException.class, e -> new StorageException("Failed to read stored files", e))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Resource> loadAsResource(String filename) {
+        return Mono.<Resource>fromCallable(() -> {
+            var file = resolve(filename);
+            if (!Files.isRegularFile(file)) {
+                throw new StorageFileNotFoundException("Could not read file: %s".formatted(filename));
+            }
+            return new FileSystemResource(file);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<DataBuffer> zipFiles(Flux<String> filenames, Integer level) {
+        // Every name is checked before the first byte goes out, so a missing file is still a 404
+        return filenames.concatMap(this::loadAsResource)
+                .collectList()
+                .flatMapMany(resources -> DataBufferUtils.outputStreamPublisher(
+                        outputStream -> writeZip(resources, level, outputStream),
+                        DefaultDataBufferFactory.sharedInstance,
+                        task -> Schedulers.boundedElastic().schedule(task),
+                        ZIP_BUFFER_SIZE));
+    }
+
+    private static void writeZip(List<Resource> resources, Integer level, OutputStream outputStream) {
+        try (var zipOutputStream = new ZipOutputStream(outputStream)) {
+            if (level != null) {
+                zipOutputStream.setLevel(level);
+            }
+            for (var resource : resources) {
+                zipOutputStream.putNextEntry(new ZipEntry(resource.getFilename()));
+                try (var inputStream = resource.getInputStream()) {
+                    inputStream.transferTo(zipOutputStream);
+                }
+                zipOutputStream.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.<Void>fromCallable(() -> {
+                    FileSystemUtils.deleteRecursively(rootLocation);
+                    return null;
+                })
+                .onErrorMap(IOException.class, e -> new StorageException("Could not delete storage", e))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.chubbyhippo.updown.reactive.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * What happens to the stored files when the application starts.
+ */
+@ConfigurationProperties("storage.startup")
+public record StartupProperties(@DefaultValue("reset") Mode mode) {
+
+    public enum Mode {
+        /**
+         * Delete everything stored and start empty.
+         */
+        RESET,
+        /**
+         * Keep the stored files.
+         */
+        KEEP
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.chubbyhippo.updown.reactive.infrastructure;
+
+import io.github.chubbyhippo.updown.reactive.domain.ReactiveStorageService;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StorageConfig {
+    @Bean
+    ApplicationRunner applicationRunner(ReactiveStorageService storageService, StartupProperties startupProperties) {
+        if (startupProperties.mode() == StartupProperties.Mode.KEEP) {
+            return args -> storageService.init().block();
+        }
+        return args -> storageService.deleteAll()
+                .then(storageService.init())
+                .block();
+    }
+}
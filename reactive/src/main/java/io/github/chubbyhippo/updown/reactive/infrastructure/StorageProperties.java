@@ -0,0 +1,7 @@
+package io.github.chubbyhippo.updown.reactive.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("storage")
+public record StorageProperties(String location) {
+}
@@ -0,0 +1,99 @@
+package io.github.chubbyhippo.updown.reactive.presentation;
+
+import io.github.chubbyhippo.updown.reactive.domain.ReactiveStorageService;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The endpoints of the servlet build's {@code FileController} on WebFlux. Downloads return the file itself, which
+ * the resource writer sends as a zero-copy file region and cuts into {@code Range} requests.
+ */
+@RestController
+public class FileController {
+
+    private final ReactiveStorageService storageService;
+
+    public FileController(ReactiveStorageService storageService) {
+        this.storageService = storageService;
+    }
+
+    @PostMapping(value = "/file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<String> upload(@RequestPart("file") Mono<FilePart> file) {
+        return file.flatMap(part -> storageService.store(part)
+                .thenReturn("File uploaded successfully: " + part.filename()));
+    }
+
+    @PostMapping(value = "/files", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<String> upload(@RequestPart("file") Flux<FilePart> files) {
+        return files.concatMap(storageService::store)
+                .then(Mono.just("Files uploaded successfully"));
+    }
+
+    @PutMapping("/files/{filename:.+}")
+    public Mono<String> upload(@PathVariable String filename,
+                               @RequestBody(required = false) Flux<DataBuffer> body) {
+        // Optional so that an empty body reaches the storage and gets its message instead of a bare 400
+        return storageService.store(filename, body == null ? Flux.empty() : body)
+                .thenReturn("File uploaded successfully: " + filename);
+    }
+
+    @GetMapping("/files")
+    public Mono<List<String>> listFiles() {
+        return storageService.loadAll().collectList();
+    }
+
+    @GetMapping("/files/{filename:.+}")
+    public Mono<ResponseEntity<Resource>> serveFile(@PathVariable String filename, ServerWebExchange exchange) {
+        return storageService.loadAsResource(filename).mapNotNull(resource -> {
+            long contentLength;
+            long lastModified;
+            try {
+                contentLength = resource.contentLength();
+                lastModified = resource.lastModified();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            var eTag = "\"%x-%x\"".formatted(lastModified, contentLength);
+            if (exchange.checkNotModified(eTag, Instant.ofEpochMilli(lastModified))) {
+                return null;
+            }
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''"
+                            + URLEncoder.encode(filename, StandardCharsets.UTF_8))
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(resource);
+        });
+    }
+
+    @PostMapping("/zip")
+    public ResponseEntity<Flux<DataBuffer>> zipFiles(@RequestBody List<String> filenames,
+                                                     @RequestParam(required = false) Integer level) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"files.zip\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(storageService.zipFiles(Flux.fromIterable(filenames), level));
+    }
+}
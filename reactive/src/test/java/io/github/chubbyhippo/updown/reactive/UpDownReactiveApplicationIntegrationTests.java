@@ -0,0 +1,155 @@
+package io.github.chubbyhippo.updown.reactive;
+
+import io.github.chubbyhippo.updown.reactive.domain.ReactiveStorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class UpDownReactiveApplicationIntegrationTests {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private ReactiveStorageService storageService;
+    @TempDir
+    private static Path tempDir;
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("storage.location", () -> tempDir.toString());
+        // The pooled test client keeps a range response open to the server's graceful shutdown until it times out
+        registry.add("server.shutdown", () -> "immediate");
+    }
+
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        webTestClient = WebTestClient.bindToServer().baseUrl("http://localhost:" + port).build();
+        storageService.deleteAll().then(storageService.init()).block();
+    }
+
+    private void put(String filename, String content) {
+        webTestClient.put().uri("/files/{filename}", filename)
+                .bodyValue(content.getBytes())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("File uploaded successfully: " + filename);
+    }
+
+    @Test
+    @DisplayName("test upload files as multipart and list them")
+    void testUploadFilesAsMultipartAndListThem() {
+        var builder = new MultipartBodyBuilder();
+        builder.part("file", new ByteArrayResource("first".getBytes()) {
+            @Override
+            public String getFilename() {
+                return "first.txt";
+            }
+        });
+        builder.part("file", new ByteArrayResource("second".getBytes()) {
+            @Override
+            public String getFilename() {
+                return "second.txt";
+            }
+        });
+
+        webTestClient.post().uri("/files")
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Files uploaded successfully");
+
+        webTestClient.get().uri("/files")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<String>>() {
+                })
+                .isEqualTo(List.of("first.txt", "second.txt"));
+    }
+
+    @Test
+    @DisplayName("test download a range of a file")
+    void testDownloadARangeOfAFile() {
+        put("range.txt", "0123456789");
+
+        webTestClient.get().uri("/files/range.txt")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''range.txt")
+                .expectBody(String.class).isEqualTo("0123456789");
+        webTestClient.get().uri("/files/range.txt")
+                .header(HttpHeaders.RANGE, "bytes=2-4")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes 2-4/10")
+                .expectBody(String.class).isEqualTo("234");
+    }
+
+    @Test
+    @DisplayName("test reject an empty upload and a missing file")
+    void testRejectAnEmptyUploadAndAMissingFile() {
+        webTestClient.put().uri("/files/empty.txt")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .bodyValue(new byte[0])
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Failed to store empty file.");
+        webTestClient.get().uri("/files/missing.txt")
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.post().uri("/zip")
+                .bodyValue(List.of("missing.txt"))
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("Could not read file: missing.txt");
+    }
+
+    @Test
+    @DisplayName("test zip files")
+    void testZipFiles() throws IOException {
+        put("a.txt", "alpha");
+        put("b.txt", "beta");
+
+        var zip = webTestClient.post().uri("/zip")
+                .bodyValue(List.of("a.txt", "b.txt"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class).returnResult().getResponseBody();
+
+        assertThat(zip).isNotNull();
+        try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            var first = zipInputStream.getNextEntry();
+            assertThat(first).isNotNull();
+            assertThat(first.getName()).isEqualTo("a.txt");
+            assertThat(new String(zipInputStream.readAllBytes())).isEqualTo("alpha");
+            var second = zipInputStream.getNextEntry();
+            assertThat(second).isNotNull();
+            assertThat(second.getName()).isEqualTo("b.txt");
+            assertThat(new String(zipInputStream.readAllBytes())).isEqualTo("beta");
+        }
+    }
+}
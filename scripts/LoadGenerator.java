@@ -0,0 +1,80 @@
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+/**
+ * Closed-loop load: each client sends its next request as soon as the last one finished.
+ * <pre>
+ * java scripts/LoadGenerator.java GET|PUT &lt;url&gt; &lt;clients&gt; &lt;seconds&gt; [body-file]
+ * </pre>
+ * Prints requests per second, MB per second and latency percentiles. PUT requests go to {@code <url>-<n>}.
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        var method = args[0];
+        var url = args[1];
+        var clients = Integer.parseInt(args[2]);
+        var duration = Duration.ofSeconds(Long.parseLong(args[3]));
+        var body = args.length > 4 ? Files.readAllBytes(Path.of(args[4])) : new byte[0];
+
+        var client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        var bytes = new AtomicLong();
+        var errors = new AtomicLong();
+        var sequence = new AtomicLong();
+        var latencies = new ArrayList<LongStream.Builder>();
+        var deadline = System.nanoTime() + duration.toNanos();
+        var started = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var i = 0; i < clients; i++) {
+                var samples = LongStream.builder();
+                latencies.add(samples);
+                executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        var request = method.equals("PUT")
+                                ? HttpRequest.newBuilder(URI.create(url + "-" + sequence.incrementAndGet()))
+                                .PUT(HttpRequest.BodyPublishers.ofByteArray(body)).build()
+                                : HttpRequest.newBuilder(URI.create(url)).GET().build();
+                        var start = System.nanoTime();
+                        try {
+                            var response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                            long read;
+                            try (var in = response.body()) {
+                                read = in.transferTo(OutputStream.nullOutputStream());
+                            }
+                            if (response.statusCode() >= 400) {
+                                errors.incrementAndGet();
+                            }
+                            bytes.addAndGet(method.equals("PUT") ? body.length : read);
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        samples.add(System.nanoTime() - start);
+                    }
+                    return null;
+                });
+            }
+        }
+        var elapsed = (System.nanoTime() - started) / 1e9;
+        var all = latencies.stream()
+                .flatMapToLong(LongStream.Builder::build)
+                .sorted()
+                .toArray();
+        System.out.printf("%8d req %5d err %9.1f req/s %8.1f MB/s  p50 %7.2f ms  p99 %7.2f ms%n",
+                all.length, errors.get(), all.length / elapsed, bytes.get() / elapsed / (1 << 20),
+                percentile(all, 0.50), percentile(all, 0.99));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, sorted.length * quantile)] / 1e6;
+    }
+}
@@ -0,0 +1,45 @@
+#!/usr/bin/env bash
+# Compares download throughput and server CPU per GB for each storage.download.mode.
+# "stream" reproduces the previous Resource path (InputStream copied through a heap buffer).
+#
+# Usage: scripts/download-benchmark.sh [size-in-MB] [iterations] (defaults 1024 and 5)
+set -euo pipefail
+
+SIZE_MB=${1:-1024}
+ITERATIONS=${2:-5}
+PORT=${PORT:-8089}
+JAR=$(ls target/updown-*.jar | head -n 1)
+WORK_DIR=$(mktemp -d)
+CLK_TCK=$(getconf CLK_TCK)
+PID=
+trap 'kill "$PID" 2>/dev/null || true; rm -rf "$WORK_DIR"' EXIT
+
+mkdir -p "$WORK_DIR/root"
+head -c "$((SIZE_MB * 1024 * 1024))" /dev/urandom > "$WORK_DIR/payload.bin"
+
+cpu_ticks() { awk '{ print $14 + $15 }' "/proc/$PID/stat"; }
+
+for mode in stream channel mapped auto; do
+    java -jar "$JAR" --server.port="$PORT" --storage.location="$WORK_DIR/root" \
+        --storage.download.mode="$mode" > "$WORK_DIR/app-$mode.log" 2>&1 &
+    PID=$!
+    until curl -sf "http://localhost:$PORT/actuator/health" > /dev/null; do sleep 0.5; done
+    curl -sf -T "$WORK_DIR/payload.bin" "http://localhost:$PORT/files/payload.bin" > /dev/null
+    # Warm up the JIT and the page cache before measuring
+    curl -sf -o /dev/null "http://localhost:$PORT/files/payload.bin"
+
+    before_ticks=$(cpu_ticks)
+    start=$(date +%s.%N)
+    for _ in $(seq "$ITERATIONS"); do
+        curl -sf -o /dev/null "http://localhost:$PORT/files/payload.bin"
+    done
+    end=$(date +%s.%N)
+    ticks=$(( $(cpu_ticks) - before_ticks ))
+
+    awk -v mode="$mode" -v mb="$SIZE_MB" -v n="$ITERATIONS" -v start="$start" -v end="$end" \
+        -v ticks="$ticks" -v hz="$CLK_TCK" \
+        'BEGIN { gb = mb * n / 1024;
+                 printf "%-8s %8.1f MB/s  %6.3f server CPU s/GB\n", mode, mb * n / (end - start), ticks / hz / gb }'
+
+    kill "$PID"; wait "$PID" 2>/dev/null || true
+done
@@ -0,0 +1,15 @@
+#!/usr/bin/env bash
+# Moves a flat storage root, sidecars included, into the sharded layout. Stop the service first, then start it
+# with --storage.layout.mode=sharded (and the same --storage.layout.levels).
+#
+# Usage: scripts/migrate-layout.sh <storage.location> [levels] (default 2)
+set -euo pipefail
+
+if [ $# -lt 1 ]; then
+    echo "Usage: $0 <storage.location> [levels]" >&2
+    exit 2
+fi
+JAR=$(ls target/updown-*.jar | head -n 1)
+
+java -Dloader.main=io.github.chubbyhippo.updown.infrastructure.StorageLayoutMigration \
+    -cp "$JAR" org.springframework.boot.loader.launch.PropertiesLauncher "$@"
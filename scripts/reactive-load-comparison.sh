@@ -0,0 +1,53 @@
+#!/usr/bin/env bash
+# Runs the same load against the servlet build (virtual threads) and the WebFlux build (reactive/), one at a
+# time on the same port, and prints throughput, latency, server CPU and peak resident memory side by side.
+# Build both first: ./mvnw package -DskipTests && ./mvnw -f reactive/pom.xml package -DskipTests
+#
+# Usage: scripts/reactive-load-comparison.sh [seconds] (default 20 per scenario)
+set -euo pipefail
+
+SECONDS_PER_RUN=${1:-20}
+PORT=${PORT:-8089}
+MVC_JAR=$(ls target/updown-*.jar | head -n 1)
+REACTIVE_JAR=$(ls reactive/target/updown-reactive-*.jar | head -n 1)
+WORK_DIR=$(mktemp -d)
+CLK_TCK=$(getconf CLK_TCK)
+PID=
+trap 'kill "$PID" 2>/dev/null || true; rm -rf "$WORK_DIR"' EXIT
+
+head -c $((16 * 1024)) /dev/urandom > "$WORK_DIR/small.bin"
+head -c $((64 * 1024 * 1024)) /dev/urandom > "$WORK_DIR/large.bin"
+head -c $((1024 * 1024)) /dev/urandom > "$WORK_DIR/upload.bin"
+
+cpu_ticks() { awk '{ print $14 + $15 }' "/proc/$PID/stat"; }
+peak_rss_mb() { awk '/VmHWM/ { printf "%d", $2 / 1024 }' "/proc/$PID/status"; }
+
+run() {
+    local label=$1; shift
+    local before
+    before=$(cpu_ticks)
+    printf "%-9s %-26s " "$build" "$label"
+    java scripts/LoadGenerator.java "$@" | tr -d '\n'
+    awk -v ticks="$(( $(cpu_ticks) - before ))" -v hz="$CLK_TCK" 'BEGIN { printf "  cpu %6.1f s", ticks / hz }'
+    echo "  rss $(peak_rss_mb) MB"
+}
+
+for build in mvc reactive; do
+    jar=$MVC_JAR
+    [[ $build == reactive ]] && jar=$REACTIVE_JAR
+    rm -rf "$WORK_DIR/root"
+    java -jar "$jar" --server.port="$PORT" --storage.location="$WORK_DIR/root" > "$WORK_DIR/app-$build.log" 2>&1 &
+    PID=$!
+    until curl -sf "http://localhost:$PORT/actuator/health" > /dev/null; do sleep 0.5; done
+    curl -sf -T "$WORK_DIR/small.bin" "http://localhost:$PORT/files/small.bin" > /dev/null
+    curl -sf -T "$WORK_DIR/large.bin" "http://localhost:$PORT/files/large.bin" > /dev/null
+    # Warm up the JIT and the page cache before measuring
+    java scripts/LoadGenerator.java GET "http://localhost:$PORT/files/small.bin" 32 5 > /dev/null
+
+    run "GET 16 KB x 256 clients" GET "http://localhost:$PORT/files/small.bin" 256 "$SECONDS_PER_RUN"
+    run "GET 64 MB x 16 clients" GET "http://localhost:$PORT/files/large.bin" 16 "$SECONDS_PER_RUN"
+    run "PUT 1 MB x 64 clients" PUT "http://localhost:$PORT/files/upload.bin" 64 "$SECONDS_PER_RUN" \
+        "$WORK_DIR/upload.bin"
+
+    kill "$PID"; wait "$PID" 2>/dev/null || true
+done
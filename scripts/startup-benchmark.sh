@@ -0,0 +1,73 @@
+#!/usr/bin/env bash
+# Starts the application repeatedly in each mode and prints the time until it answers and its resident memory:
+#   jvm     plain java -jar
+#   cds     extracted jar with a CDS archive recorded by a training run
+#   aot     extracted jar with a JDK 25 AOT cache recorded by a training run, plus Spring AOT when the jar has it
+#   native  the GraalVM native image, when it has been built
+# The training runs use the "training" profile (TrainingRun), which uploads, downloads and zips before exiting.
+# Build first: ./mvnw -Pnative package -DskipTests (Spring AOT code in the jar)
+#         and optionally: ./mvnw -Pnative native:compile -DskipTests (target/updown)
+#
+# Usage: scripts/startup-benchmark.sh [runs] (default 5 per mode)
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-8089}
+JAR=$(ls target/updown-*.jar | grep -v plain | head -n 1)
+NATIVE=target/updown
+WORK_DIR=$(mktemp -d)
+EXTRACTED=$WORK_DIR/extracted
+PID=
+trap 'kill "$PID" 2>/dev/null || true; rm -rf "$WORK_DIR"' EXIT
+
+java -Djarmode=tools -jar "$JAR" extract --destination "$EXTRACTED" > /dev/null
+EXTRACTED_JAR=$(ls "$EXTRACTED"/*.jar)
+SPRING_AOT=()
+if unzip -l "$JAR" | grep -q '__ApplicationContextInitializer.class'; then
+    SPRING_AOT=(-Dspring.aot.enabled=true)
+fi
+
+echo "Training a CDS archive"
+java -XX:ArchiveClassesAtExit="$WORK_DIR/app.jsa" -Dspring.profiles.active=training -jar "$EXTRACTED_JAR" \
+    > "$WORK_DIR/train-cds.log" 2>&1
+if java -XX:AOTCacheOutput="$WORK_DIR/probe.aot" -version > /dev/null 2>&1; then
+    echo "Training an AOT cache"
+    java -XX:AOTCacheOutput="$WORK_DIR/app.aot" "${SPRING_AOT[@]}" -Dspring.profiles.active=training \
+        -jar "$EXTRACTED_JAR" > "$WORK_DIR/train-aot.log" 2>&1
+fi
+
+command_for() {
+    case $1 in
+        jvm) echo java -jar "$JAR" ;;
+        cds) echo java -XX:SharedArchiveFile="$WORK_DIR/app.jsa" -jar "$EXTRACTED_JAR" ;;
+        aot) echo java -XX:AOTCache="$WORK_DIR/app.aot" "${SPRING_AOT[@]}" -jar "$EXTRACTED_JAR" ;;
+        native) echo "$NATIVE" ;;
+    esac
+}
+
+now_ms() { echo $(( $(date +%s%N) / 1000000 )); }
+rss_mb() { awk '/VmRSS/ { printf "%d", $2 / 1024 }' "/proc/$PID/status"; }
+
+printf "%-7s %12s %12s %10s\n" mode "ready ms" "1st req ms" "rss MB"
+for mode in jvm cds aot native; do
+    [[ $mode == aot && ! -f $WORK_DIR/app.aot ]] && { echo "aot     skipped, needs JDK 25"; continue; }
+    [[ $mode == native && ! -x $NATIVE ]] && { echo "native  skipped, $NATIVE not built"; continue; }
+    total_ready=0 total_first=0 total_rss=0
+    for _ in $(seq "$RUNS"); do
+        rm -rf "$WORK_DIR/root"
+        started=$(now_ms)
+        # shellcheck disable=SC2046
+        $(command_for "$mode") --server.port="$PORT" --storage.location="$WORK_DIR/root" \
+            > "$WORK_DIR/app-$mode.log" 2>&1 &
+        PID=$!
+        until curl -sf "http://localhost:$PORT/actuator/health" > /dev/null; do sleep 0.01; done
+        total_ready=$(( total_ready + $(now_ms) - started ))
+        first=$(curl -sf "http://localhost:$PORT/actuator/metrics/application.first.request.time" \
+            | sed -E 's/.*"value":([0-9.]+).*/\1/')
+        total_first=$(awk -v a="$total_first" -v b="$first" 'BEGIN { print a + b * 1000 }')
+        total_rss=$(( total_rss + $(rss_mb) ))
+        kill "$PID"; wait "$PID" 2>/dev/null || true
+    done
+    awk -v m="$mode" -v r="$total_ready" -v f="$total_first" -v s="$total_rss" -v n="$RUNS" \
+        'BEGIN { printf "%-7s %12d %12d %10d\n", m, r / n, f / n, s / n }'
+done
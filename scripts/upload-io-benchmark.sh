@@ -0,0 +1,44 @@
+#!/usr/bin/env bash
+# Measures the I/O the server process performs per uploaded GB for the
+# buffered multipart upload (POST /file) and the streaming upload (PUT /files/{filename}).
+# Counters come from /proc/<pid>/io: rchar/wchar are bytes passed through read/write
+# syscalls (socket reads included), read_bytes/write_bytes are bytes sent to the block layer.
+#
+# Usage: scripts/upload-io-benchmark.sh [size-in-MB] (default 1024)
+set -euo pipefail
+
+SIZE_MB=${1:-1024}
+PORT=${PORT:-8089}
+JAR=$(ls target/updown-*.jar | head -n 1)
+WORK_DIR=$(mktemp -d)
+trap 'kill "$PID" 2>/dev/null || true; rm -rf "$WORK_DIR"' EXIT
+
+head -c "$((SIZE_MB * 1024 * 1024))" /dev/urandom > "$WORK_DIR/payload.bin"
+
+mkdir -p "$WORK_DIR/spool"
+java -jar "$JAR" --server.port="$PORT" --storage.location="$WORK_DIR/root" \
+    --spring.servlet.multipart.location="$WORK_DIR/spool" > "$WORK_DIR/app.log" 2>&1 &
+PID=$!
+until curl -sf "http://localhost:$PORT/actuator/health" > /dev/null; do sleep 0.5; done
+
+io() { awk -v key="$1" '$1 == key":" { print $2 }' "/proc/$PID/io"; }
+
+measure() {
+    local label=$1; shift
+    local before_rchar before_wchar before_read before_write
+    before_rchar=$(io rchar); before_wchar=$(io wchar)
+    before_read=$(io read_bytes); before_write=$(io write_bytes)
+    sync
+    "$@" > /dev/null
+    sync
+    awk -v label="$label" -v mb="$SIZE_MB" \
+        -v rchar=$(( $(io rchar) - before_rchar )) -v wchar=$(( $(io wchar) - before_wchar )) \
+        -v rb=$(( $(io read_bytes) - before_read )) -v wb=$(( $(io write_bytes) - before_write )) \
+        'BEGIN { gb = mb / 1024 * 1024 ^ 3;
+                 printf "%-10s rchar/GB=%.2f wchar/GB=%.2f read_bytes/GB=%.2f write_bytes/GB=%.2f\n",
+                        label, rchar / gb, wchar / gb, rb / gb, wb / gb }'
+}
+
+measure multipart curl -sf -F "file=@$WORK_DIR/payload.bin;filename=multipart.bin" "http://localhost:$PORT/file"
+measure streaming curl -sf -T "$WORK_DIR/payload.bin" -H "Content-Type: application/octet-stream" \
+    "http://localhost:$PORT/files/streaming.bin"
@@ -0,0 +1,125 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Store, serve, list and zip against a real directory, with durability and compression off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileSystemStorageServiceBenchmark {
+
+    private static final String[] WORDS = {"id", "name", "timestamp", "status", "ok", "error", "user", "42",
+            "2024-01-01T00:00:00Z", "request", "response", "bytes", "GET", "PUT", "/files", "true", "false"};
+
+    @Param({"4KB", "1MB"})
+    private String fileSize;
+
+    @Param({"10", "100"})
+    private int fileCount;
+
+    @Param({"text", "random"})
+    private String content;
+
+    private Path root;
+    private ZipArchiveEngine zipArchiveEngine;
+    private FileSystemStorageService storageService;
+    private byte[] body;
+    private String[] filenames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("updown-jmh-");
+        zipArchiveEngine = new ZipArchiveEngine(new ZipProperties(ZipProperties.Mode.PARALLEL, 0,
+                DataSize.ofMegabytes(1), DataSize.ofMegabytes(64), -1, true, DataSize.ofKilobytes(64), 0.9));
+        storageService = new FileSystemStorageService(new StorageProperties(root.toString()), zipArchiveEngine,
+                new FileCommitter(new DurabilityProperties(DurabilityProperties.Mode.NONE, Duration.ZERO)),
+                new CompressionProperties(false, 6, DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), 0.8),
+                new LayoutProperties(LayoutProperties.Mode.FLAT, 2), event -> {
+                });
+        storageService.init();
+
+        body = body((int) DataSize.parse(fileSize).toBytes(), content.equals("text"));
+        filenames = IntStream.range(0, fileCount).mapToObj("file-%05d.dat"::formatted).toArray(String[]::new);
+        for (var filename : filenames) {
+            storageService.store(filename, new ByteArrayInputStream(body));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storageService.destroy();
+        zipArchiveEngine.destroy();
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    private static byte[] body(int size, boolean text) {
+        var random = new Random(42);
+        if (!text) {
+            var bytes = new byte[size];
+            random.nextBytes(bytes);
+            return bytes;
+        }
+        // Log-like lines from a small vocabulary, which deflate roughly 4:1 like the JSON logs we store
+        var builder = new StringBuilder(size + 32);
+        while (builder.length() < size) {
+            builder.append(WORDS[random.nextInt(WORDS.length)])
+                    .append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        return builder.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private String nextFilename() {
+        next = (next + 1) % filenames.length;
+        return filenames[next];
+    }
+
+    @Benchmark
+    public void store() {
+        storageService.store(nextFilename(), new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public long loadAsResource() throws IOException {
+        try (var inputStream = storageService.loadAsResource(nextFilename()).getInputStream()) {
+            return inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public long loadAll() {
+        try (var paths = storageService.loadAll()) {
+            return paths.count();
+        }
+    }
+
+    @Benchmark
+    public void zipFiles() throws IOException {
+        storageService.zipFiles(Arrays.stream(filenames)).writeTo(OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates, opens and rescans with a million files in the root, flat against sharded. Setting up a trial writes
+ * every file, so expect it to take a while.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageLayoutBenchmark {
+
+    @Param({"flat", "sharded"})
+    private String layout;
+
+    @Param({"1000000"})
+    private int fileCount;
+
+    private Path root;
+    private ZipArchiveEngine zipArchiveEngine;
+    private FileSystemStorageService storageService;
+    private long created;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("updown-layout-jmh-");
+        var layoutProperties = new LayoutProperties(LayoutProperties.Mode.valueOf(layout.toUpperCase()), 2);
+        var storageLayout = StorageLayout.of(root, layoutProperties);
+        for (var i = 0; i < fileCount; i++) {
+            var path = storageLayout.resolve(name(i));
+            if (!Files.isDirectory(path.getParent())) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.createFile(path);
+        }
+        zipArchiveEngine = new ZipArchiveEngine(new ZipProperties(ZipProperties.Mode.PARALLEL, 0,
+                DataSize.ofMegabytes(1), DataSize.ofMegabytes(64), -1, true, DataSize.ofKilobytes(64), 0.9));
+        storageService = new FileSystemStorageService(new StorageProperties(root.toString()), zipArchiveEngine,
+                new FileCommitter(new DurabilityProperties(DurabilityProperties.Mode.NONE, Duration.ZERO)),
+                new CompressionProperties(false, 6, DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), 0.8),
+                layoutProperties, event -> {
+                });
+        storageService.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storageService.destroy();
+        zipArchiveEngine.destroy();
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    private static String name(long i) {
+        return "file-%08d.dat".formatted(i);
+    }
+
+    @Benchmark
+    public void create() {
+        storageService.store(name(fileCount + created++), new ByteArrayInputStream(new byte[]{1}));
+    }
+
+    @Benchmark
+    public void open() throws IOException {
+        var name = name(ThreadLocalRandom.current().nextInt(fileCount));
+        storageService.loadAsResource(name).readableChannel().close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public void reconcile() {
+        storageService.reconcile();
+    }
+}
@@ -0,0 +1,11 @@
+package io.github.chubbyhippo.updown;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param iterations rounds of uploads, downloads and archives the training run sends before it exits
+ */
+@ConfigurationProperties("training")
+public record TrainingProperties(@DefaultValue("20") int iterations) {
+}
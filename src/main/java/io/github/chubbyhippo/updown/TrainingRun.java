@@ -0,0 +1,160 @@
+package io.github.chubbyhippo.updown;
+
+import io.github.chubbyhippo.updown.domain.UploadSession;
+import io.github.chubbyhippo.updown.domain.ZipJob;
+import io.github.chubbyhippo.updown.presentation.UploadController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.server.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Sends uploads, downloads and archives through the whole stack once the application is ready, then exits. Run
+ * with the {@code training} profile to record an AOT cache or CDS archive from a realistic workload, see
+ * {@code scripts/startup-benchmark.sh}.
+ */
+@Component
+@Profile("training")
+public class TrainingRun implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(TrainingRun.class);
+
+    private final TrainingProperties properties;
+    private final JsonMapper jsonMapper;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final Random random = new Random(42);
+    private URI base;
+
+    public TrainingRun(TrainingProperties properties, JsonMapper jsonMapper) {
+        this.properties = properties;
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        var context = event.getApplicationContext();
+        var port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        base = URI.create("http://localhost:%d/".formatted(port));
+        var started = System.nanoTime();
+        var status = 0;
+        try {
+            for (var i = 0; i < properties.iterations(); i++) {
+                iteration(i);
+            }
+            send(get("v3/api-docs"));
+            log.info("Training run of {} iterations finished in {} ms", properties.iterations(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.error("Training run failed", e);
+            status = 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 1;
+        }
+        // Exiting normally is what writes the AOT cache or CDS archive
+        var exitCode = status;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+    private void iteration(int i) throws InterruptedException {
+        var binary = "training-%d.bin".formatted(i);
+        var text = "training-%d.txt".formatted(i);
+        var bytes = new byte[256 * 1024];
+        random.nextBytes(bytes);
+        send(HttpRequest.newBuilder(base.resolve("files/" + binary))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(bytes)));
+        send(multipart("file", text, ("line of compressible text %d%n".formatted(i)).repeat(2000)));
+
+        var download = send(get("files/" + binary));
+        download.headers().firstValue("ETag").ifPresent(etag -> send(get("files/" + binary)
+                .header("If-None-Match", etag)));
+        send(get("files/" + binary).header("Range", "bytes=1000-9999"));
+        send(get("files/" + text).header("Accept-Encoding", "gzip"));
+        send(get("files/" + text).method("HEAD", HttpRequest.BodyPublishers.noBody()));
+
+        send(get("files").header("Accept", "application/json"));
+        send(get("files?limit=10&prefix=training-&sort=-size"));
+        send(get("files?prefix=training-").header("Accept", "application/x-ndjson"));
+
+        var names = jsonMapper.writeValueAsString(List.of(binary, text));
+        send(json("zip", names));
+        send(json("zip?level=1", names));
+        send(get("zip?file=%s&file=%s".formatted(binary, text)).header("Range", "bytes=0-65535"));
+
+        var job = jsonMapper.readValue(send(json("zip-jobs", names)).body(), ZipJob.class);
+        while (job.status() == ZipJob.Status.QUEUED || job.status() == ZipJob.Status.RUNNING) {
+            Thread.sleep(10);
+            job = jsonMapper.readValue(send(get("zip-jobs/" + job.id())).body(), ZipJob.class);
+        }
+        send(get("zip-jobs/%s/archive".formatted(job.id())));
+        send(HttpRequest.newBuilder(base.resolve("zip-jobs/" + job.id())).DELETE());
+
+        var create = jsonMapper.writeValueAsString(new UploadController.CreateUploadRequest("training-%d.part".formatted(i), bytes.length));
+        var session = jsonMapper.readValue(send(json("uploads", create)).body(), UploadSession.class);
+        var half = bytes.length / 2;
+        for (var offset : new int[]{0, half}) {
+            send(HttpRequest.newBuilder(base.resolve("uploads/" + session.id()))
+                    .header("Upload-Offset", String.valueOf(offset))
+                    .header("Content-Type", "application/octet-stream")
+                    .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(bytes, offset, half)));
+        }
+        send(HttpRequest.newBuilder(base.resolve("uploads/%s/complete".formatted(session.id())))
+                .POST(HttpRequest.BodyPublishers.noBody()));
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(base.resolve(path));
+    }
+
+    private HttpRequest.Builder json(String path, String body) {
+        return HttpRequest.newBuilder(base.resolve(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private HttpRequest.Builder multipart(String part, String filename, String content) {
+        var boundary = UUID.randomUUID().toString();
+        var body = """
+                --%1$s\r
+                Content-Disposition: form-data; name="%2$s"; filename="%3$s"\r
+                Content-Type: text/plain\r
+                \r
+                %4$s\r
+                --%1$s--\r
+                """.formatted(boundary, part, filename, content);
+        return HttpRequest.newBuilder(base.resolve("file"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) {
+        try {
+            var response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() >= 400) {
+                throw new IllegalStateException("%s %s answered %d".formatted(response.request().method(),
+                        response.request().uri(), response.statusCode()));
+            }
+            return response;
+        } catch (IOException e) {
+            throw new IllegalStateException("Training request failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training run interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package io.github.chubbyhippo.updown.application;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param parallelism parts of one batch written at the same time
+ */
+@ConfigurationProperties("storage.batch")
+public record BatchUploadProperties(@DefaultValue("16") int parallelism) {
+}
@@ -0,0 +1,164 @@
+package io.github.chubbyhippo.updown.application;
+
+import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.StagedFile;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.StorageService;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Writes the parts of a multipart batch concurrently, each on its own virtual thread, at most
+ * {@link BatchUploadProperties#parallelism()} at a time.
+ */
+@Service
+public class BatchUploadService {
+
+    private final StorageService storageService;
+    private final BatchUploadProperties properties;
+
+    public BatchUploadService(StorageService storageService, BatchUploadProperties properties) {
+        this.storageService = storageService;
+        this.properties = properties;
+    }
+
+    private record Outcome<T>(MultipartFile file, T value, long nanos, RuntimeException failure) {
+
+        UploadResult result(UploadResult.Status status, long bytes) {
+            return new UploadResult(file.getOriginalFilename(), status, bytes, nanos / 1_000_000,
+                    failure == null ? null : failure.getMessage());
+        }
+    }
+
+    /**
+     * Stores every part, rethrowing the first failure in request order once all parts have been tried.
+     */
+    public void uploadAll(List<MultipartFile> files) {
+        for (var outcome : run(files, this::store)) {
+            if (outcome.failure() != null) {
+                throw outcome.failure();
+            }
+        }
+    }
+
+    /**
+     * Stores every part and reports each one. An {@code atomic} batch stages all parts first and only makes them
+     * visible once every part was written; if any part fails, none is stored. A commit failing partway puts back
+     * what the parts committed before it replaced; a part that cannot be put back is reported as stored.
+     */
+    public List<UploadResult> upload(List<MultipartFile> files, boolean atomic) {
+        if (!atomic) {
+            return run(files, this::store).stream()
+                    .map(outcome -> outcome.failure() == null
+                            ? outcome.result(UploadResult.Status.STORED, outcome.value())
+                            : outcome.result(UploadResult.Status.FAILED, 0))
+                    .toList();
+        }
+        var outcomes = run(files, this::stage);
+        var failed = outcomes.stream().anyMatch(outcome -> outcome.failure() != null);
+        var results = new ArrayList<UploadResult>(outcomes.size());
+        try {
+            var committed = new ArrayList<Integer>();
+            for (var outcome : outcomes) {
+                var staged = outcome.value();
+                if (outcome.failure() != null) {
+                    results.add(outcome.result(UploadResult.Status.FAILED, 0));
+                } else if (failed) {
+                    results.add(outcome.result(UploadResult.Status.ROLLED_BACK, staged.size()));
+                } else {
+                    try {
+                        staged.commit();
+                        committed.add(results.size());
+                        results.add(outcome.result(UploadResult.Status.STORED, staged.size()));
+                    } catch (StorageException e) {
+                        failed = true;
+                        results.add(new UploadResult(staged.filename(), UploadResult.Status.FAILED, 0,
+                                outcome.nanos() / 1_000_000, e.getMessage()));
+                    }
+                }
+            }
+            if (failed) {
+                // Newest first, in case a name appears twice in the batch
+                for (var index : committed.reversed()) {
+                    results.set(index, rollback(outcomes.get(index), results.get(index)));
+                }
+            }
+        } finally {
+            outcomes.stream()
+                    .map(Outcome::value)
+                    .filter(Objects::nonNull)
+                    .forEach(StagedFile::discard);
+        }
+        return results;
+    }
+
+    private static UploadResult rollback(Outcome<StagedFile> outcome, UploadResult stored) {
+        try {
+            outcome.value().rollback();
+            return outcome.result(UploadResult.Status.ROLLED_BACK, stored.bytes());
+        } catch (StorageException e) {
+            return new UploadResult(stored.filename(), UploadResult.Status.STORED, stored.bytes(),
+                    stored.durationMillis(), "Could not be rolled back: %s".formatted(e.getMessage()));
+        }
+    }
+
+    private long store(MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new EmptyFileException("Cannot upload empty file.");
+        }
+        storageService.store(file);
+        return file.getSize();
+    }
+
+    private StagedFile stage(MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new EmptyFileException("Cannot upload empty file.");
+        }
+        var filename = Objects.requireNonNull(file.getOriginalFilename());
+        try (var inputStream = file.getInputStream()) {
+            return storageService.stage(filename, inputStream);
+        } catch (IOException e) {
+            throw new StorageException("Failed to store file.", e);
+        }
+    }
+
+    private <T> List<Outcome<T>> run(List<MultipartFile> files, Function<MultipartFile, T> task) {
+        var permits = new Semaphore(Math.max(1, properties.parallelism()));
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<Outcome<T>>>(files.size());
+            for (var file : files) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    var start = System.nanoTime();
+                    try {
+                        return new Outcome<>(file, task.apply(file), System.nanoTime() - start, null);
+                    } catch (RuntimeException e) {
+                        return new Outcome<>(file, null, System.nanoTime() - start, e);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            var outcomes = new ArrayList<Outcome<T>>(futures.size());
+            for (var future : futures) {
+                outcomes.add(future.get());
+            }
+            return outcomes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while storing files.", e);
+        } catch (ExecutionException e) {
+            throw new StorageException("Failed to store files.", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package io.github.chubbyhippo.updown.application;
+
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+
+import java.util.List;
+
+public record FilePage(List<FileMetadata> items, String nextCursor) {
+}
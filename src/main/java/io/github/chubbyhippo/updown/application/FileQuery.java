@@ -0,0 +1,56 @@
+package io.github.chubbyhippo.updown.application;
+
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+
+import java.time.Instant;
+import java.util.Comparator;
+
+/**
+ * Filters and ordering for a file listing; {@code cursor} is the opaque token of the page before, if any.
+ */
+public record FileQuery(String prefix,
+                        Long minSize,
+                        Long maxSize,
+                        Instant modifiedAfter,
+                        Instant modifiedBefore,
+                        Sort sort,
+                        boolean descending,
+                        String cursor) {
+
+    public enum Sort {
+        NAME, SIZE, LAST_MODIFIED
+    }
+
+    public static FileQuery all() {
+        return new FileQuery(null, null, null, null, null, Sort.NAME, false, null);
+    }
+
+    public FileQuery withCursor(String cursor) {
+        return new FileQuery(prefix, minSize, maxSize, modifiedAfter, modifiedBefore, sort, descending, cursor);
+    }
+
+    boolean matches(FileMetadata metadata) {
+        return (prefix == null || metadata.name().startsWith(prefix))
+                && (minSize == null || metadata.size() >= minSize)
+                && (maxSize == null || metadata.size() <= maxSize)
+                && (modifiedAfter == null || metadata.lastModified().isAfter(modifiedAfter))
+                && (modifiedBefore == null || metadata.lastModified().isBefore(modifiedBefore));
+    }
+
+    Comparator<FileMetadata> comparator() {
+        var byName = Comparator.comparing(FileMetadata::name);
+        var comparator = switch (sort) {
+            case NAME -> byName;
+            case SIZE -> Comparator.comparingLong(FileMetadata::size).thenComparing(byName);
+            case LAST_MODIFIED -> Comparator.comparing(FileMetadata::lastModified).thenComparing(byName);
+        };
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    /**
+     * Whether names come straight from storage order, so nothing has to be buffered and sorted.
+     */
+    boolean storageOrdered() {
+        return sort == Sort.NAME && !descending;
+    }
+}
@@ -1,22 +1,46 @@
 package io.github.chubbyhippo.updown.application;
 
+import io.github.chubbyhippo.updown.domain.ArchiveCache;
+import io.github.chubbyhippo.updown.domain.DownloadEngine;
 import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import io.github.chubbyhippo.updown.domain.InvalidFileQueryException;
+import io.github.chubbyhippo.updown.domain.ResourceCache;
 import io.github.chubbyhippo.updown.domain.StorageService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 @Service
 public class FileService {
 
+    static final int MAX_PAGE_SIZE = 1000;
+
     private final StorageService storageService;
+    private final DownloadEngine downloadEngine;
+    private final ResourceCache resourceCache;
+    private final ArchiveCache archiveCache;
 
-    public FileService(StorageService storageService) {
+    public FileService(StorageService storageService, DownloadEngine downloadEngine, ResourceCache resourceCache,
+                       ArchiveCache archiveCache) {
         this.storageService = storageService;
+        this.downloadEngine = downloadEngine;
+        this.resourceCache = resourceCache;
+        this.archiveCache = archiveCache;
     }
 
     public void uploadFile(MultipartFile file) {
@@ -26,16 +50,109 @@ public class FileService {
         storageService.store(file);
     }
 
+    public void uploadFile(String filename, InputStream inputStream) {
+        storageService.store(filename, inputStream);
+    }
+
     public Stream<String> listFiles() {
         return storageService.loadAll()
                 .map(Path::toString);
     }
 
+    /**
+     * Files matching the query after its cursor. Name order streams from storage; other orders sort in memory.
+     */
+    public Stream<FileMetadata> findFiles(FileQuery query) {
+        var after = ListingCursor.decode(query);
+        var comparator = query.comparator();
+        Stream<FileMetadata> files;
+        if (query.storageOrdered()) {
+            var from = query.prefix() == null ? "" : query.prefix();
+            if (after != null && after.name().compareTo(from) > 0) {
+                from = after.name();
+            }
+            files = storageService.loadMetadata(from);
+            if (query.prefix() != null) {
+                files = files.takeWhile(metadata -> metadata.name().startsWith(query.prefix()));
+            }
+            files = files.filter(query::matches);
+        } else {
+            files = storageService.loadMetadata("").filter(query::matches).sorted(comparator);
+        }
+        return files.filter(metadata -> after == null || comparator.compare(metadata, after) > 0);
+    }
+
+    public FilePage listFiles(FileQuery query, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidFileQueryException("Limit must be between 1 and %d.".formatted(MAX_PAGE_SIZE));
+        }
+        try (var files = findFiles(query)) {
+            var items = files.limit(limit + 1L).toList();
+            if (items.size() <= limit) {
+                return new FilePage(items, null);
+            }
+            var page = items.subList(0, limit);
+            return new FilePage(page, ListingCursor.encode(query, page.getLast()));
+        }
+    }
+
     public Resource loadAsResource(String filename) {
-        return storageService.loadAsResource(filename);
+        return resourceCache.get(filename, storageService::loadAsResource);
+    }
+
+    public boolean offload(Resource resource, long position, long count, HttpServletRequest request) {
+        return downloadEngine.offload(resource, position, count, request);
+    }
+
+    public void transfer(Resource resource, long position, long count, OutputStream outputStream) throws IOException {
+        downloadEngine.transfer(resource, position, count, outputStream);
     }
 
     public StreamingResponseBody zipFiles(Stream<String> filenames) {
         return storageService.zipFiles(filenames);
     }
+
+    public StreamingResponseBody zipFiles(Stream<String> filenames, Integer level) {
+        checkLevel(level);
+        if (!archiveCache.enabled()) {
+            return storageService.zipFiles(filenames, level);
+        }
+        var names = filenames.toList();
+        return archiveCache.get(archiveKey(names, level), names, storageService.zipFiles(names.stream(), level));
+    }
+
+    public Resource storedZip(List<String> filenames) {
+        if (filenames.isEmpty()) {
+            throw new InvalidFileQueryException("No files to zip.");
+        }
+        return storageService.storedZip(filenames);
+    }
+
+    /**
+     * Identifies an archive by its files in order, their versions and the compression level. Versions come from
+     * storage metadata, so keying an archive never loads its files.
+     */
+    String archiveKey(List<String> filenames, Integer level) {
+        var digest = sha256();
+        digest.update(String.valueOf(level).getBytes(StandardCharsets.UTF_8));
+        for (var filename : filenames) {
+            digest.update("\0%s\0%s".formatted(filename, storageService.version(filename))
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void checkLevel(Integer level) {
+        if (level != null && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new InvalidFileQueryException("Compression level must be between 0 and 9.");
+        }
+    }
 }
@@ -0,0 +1,56 @@
+package io.github.chubbyhippo.updown.application;
+
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import io.github.chubbyhippo.updown.domain.InvalidFileQueryException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Encodes the sort key of the last item on a page, so the next page resumes after it even if files were
+ * added or removed in between.
+ */
+final class ListingCursor {
+
+    private ListingCursor() {
+    }
+
+    static String encode(FileQuery query, FileMetadata last) {
+        var key = switch (query.sort()) {
+            case NAME -> "";
+            case SIZE -> String.valueOf(last.size());
+            case LAST_MODIFIED -> last.lastModified().toString();
+        };
+        var token = String.join("\n", sortToken(query), key, last.name());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a stand-in for the last item of the previous page, or {@code null} for the first page
+     */
+    static FileMetadata decode(FileQuery query) throws InvalidFileQueryException {
+        if (query.cursor() == null) {
+            return null;
+        }
+        try {
+            var parts = new String(Base64.getUrlDecoder().decode(query.cursor()), StandardCharsets.UTF_8)
+                    .split("\n", 3);
+            if (parts.length != 3 || !parts[0].equals(sortToken(query))) {
+                throw new InvalidFileQueryException("Cursor does not match the requested sort.");
+            }
+            return switch (query.sort()) {
+                case NAME -> new FileMetadata(parts[2], 0, Instant.EPOCH, null);
+                case SIZE -> new FileMetadata(parts[2], Long.parseLong(parts[1]), Instant.EPOCH, null);
+                case LAST_MODIFIED -> new FileMetadata(parts[2], 0, Instant.parse(parts[1]), null);
+            };
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidFileQueryException("Invalid cursor.");
+        }
+    }
+
+    private static String sortToken(FileQuery query) {
+        return (query.descending() ? "-" : "") + query.sort().name();
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.chubbyhippo.updown.application;
+
+import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.StorageService;
+import io.github.chubbyhippo.updown.domain.UploadConflictException;
+import io.github.chubbyhippo.updown.domain.UploadSession;
+import io.github.chubbyhippo.updown.domain.UploadSessionStore;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@Service
+public class ResumableUploadService {
+
+    private final UploadSessionStore uploadSessionStore;
+    private final StorageService storageService;
+
+    public ResumableUploadService(UploadSessionStore uploadSessionStore, StorageService storageService) {
+        this.uploadSessionStore = uploadSessionStore;
+        this.storageService = storageService;
+    }
+
+    public UploadSession create(String filename, long length) {
+        if (length <= 0) {
+            throw new EmptyFileException("Cannot upload empty file.");
+        }
+        // Checked now rather than once every byte has been sent
+        storageService.validateFilename(filename);
+        return uploadSessionStore.create(filename, length);
+    }
+
+    public UploadSession get(String id) {
+        return uploadSessionStore.get(id);
+    }
+
+    public UploadSession writeChunk(String id, long offset, InputStream inputStream) {
+        return uploadSessionStore.write(id, offset, inputStream);
+    }
+
+    /**
+     * Stores the upload under a claim on the session, so a second completion, an abort or a late chunk is refused
+     * rather than racing the store.
+     */
+    public UploadSession complete(String id) {
+        var session = uploadSessionStore.claim(id);
+        var stored = false;
+        try {
+            if (!session.complete()) {
+                throw new UploadConflictException("Upload is incomplete: %d of %d bytes committed."
+                        .formatted(session.committedOffset(), session.length()));
+            }
+            try (var inputStream = uploadSessionStore.openData(id)) {
+                storageService.store(session.filename(), inputStream);
+            } catch (IOException e) {
+                throw new StorageException("Failed to store file.", e);
+            }
+            stored = true;
+        } finally {
+            if (!stored) {
+                uploadSessionStore.release(id);
+            }
+        }
+        uploadSessionStore.delete(id);
+        return session;
+    }
+
+    public void abort(String id) {
+        uploadSessionStore.claim(id);
+        uploadSessionStore.delete(id);
+    }
+}
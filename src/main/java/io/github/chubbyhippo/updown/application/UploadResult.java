@@ -0,0 +1,14 @@
+package io.github.chubbyhippo.updown.application;
+
+public record UploadResult(String filename, Status status, long bytes, long durationMillis, String error) {
+
+    public enum Status {
+        STORED,
+        FAILED,
+        /**
+         * Written successfully but discarded, or committed and put back, because another part of an atomic batch
+         * failed.
+         */
+        ROLLED_BACK
+    }
+}
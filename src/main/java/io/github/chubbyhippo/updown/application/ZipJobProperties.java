@@ -0,0 +1,11 @@
+package io.github.chubbyhippo.updown.application;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param parallelism zip jobs running at the same time; the rest wait queued
+ */
+@ConfigurationProperties("storage.zip-jobs")
+public record ZipJobProperties(@DefaultValue("2") int parallelism) {
+}
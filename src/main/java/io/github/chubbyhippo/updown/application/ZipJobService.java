@@ -0,0 +1,210 @@
+package io.github.chubbyhippo.updown.application;
+
+import io.github.chubbyhippo.updown.domain.InvalidFileQueryException;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.ZipJob;
+import io.github.chubbyhippo.updown.domain.ZipJobNotReadyException;
+import io.github.chubbyhippo.updown.domain.ZipJobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds zip archives in the background, each on its own virtual thread, at most
+ * {@link ZipJobProperties#parallelism()} at a time. Jobs left queued or running by a restart are started again.
+ */
+@Service
+public class ZipJobService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ZipJobService.class);
+
+    /**
+     * Polls and downloads refresh a finished job's last use at most this often, so polling and Range requests
+     * do not rewrite it every time.
+     */
+    private static final Duration TOUCH_INTERVAL = Duration.ofMinutes(1);
+
+    private final ZipJobStore zipJobStore;
+    private final FileService fileService;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Execution> executions = new ConcurrentHashMap<>();
+
+    public ZipJobService(ZipJobStore zipJobStore, FileService fileService, ZipJobProperties properties) {
+        this.zipJobStore = zipJobStore;
+        this.fileService = fileService;
+        this.permits = new Semaphore(properties.parallelism());
+    }
+
+    private record Execution(FutureTask<Void> task, LongAdder written, AtomicBoolean cancelled,
+                             CompletableFuture<Void> finished) {
+    }
+
+    public ZipJob submit(List<String> filenames, Integer level) {
+        FileService.checkLevel(level);
+        if (filenames.isEmpty()) {
+            throw new InvalidFileQueryException("No files to zip.");
+        }
+        // Unknown files are reported now rather than as a failed job
+        var totalBytes = 0L;
+        for (var filename : filenames) {
+            try {
+                totalBytes += fileService.loadAsResource(filename).contentLength();
+            } catch (IOException e) {
+                throw new StorageException("Could not read file: %s".formatted(filename), e);
+            }
+        }
+        var job = zipJobStore.create(filenames, level, totalBytes);
+        start(job);
+        return job;
+    }
+
+    /**
+     * The job, with the bytes written so far while it runs. Polling a finished job keeps it from being evicted.
+     */
+    public ZipJob get(String id) {
+        var job = zipJobStore.get(id);
+        var execution = executions.get(id);
+        if (execution != null && job.status() == ZipJob.Status.RUNNING) {
+            return job.withProgress(execution.written().sum());
+        }
+        return job.finished() ? touch(job) : job;
+    }
+
+    public Resource loadArchive(String id) {
+        var job = zipJobStore.get(id);
+        if (job.status() != ZipJob.Status.DONE) {
+            throw new ZipJobNotReadyException("Zip job is %s.".formatted(job.status()));
+        }
+        touch(job);
+        return zipJobStore.loadArchive(id);
+    }
+
+    private ZipJob touch(ZipJob job) {
+        var now = Instant.now();
+        if (!job.updatedAt().plus(TOUCH_INTERVAL).isBefore(now)) {
+            return job;
+        }
+        var touched = job.touched(now);
+        zipJobStore.save(touched);
+        return touched;
+    }
+
+    /**
+     * Cancels the job if it is still queued or running, then removes it and its archive.
+     */
+    public void delete(String id) {
+        zipJobStore.get(id);
+        var execution = executions.get(id);
+        if (execution != null) {
+            execution.cancelled().set(true);
+            execution.task().cancel(true);
+            execution.finished().join();
+        }
+        zipJobStore.delete(id);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void resume() {
+        var unfinished = zipJobStore.list().stream()
+                .filter(job -> !job.finished())
+                .toList();
+        if (!unfinished.isEmpty()) {
+            log.info("Resuming {} zip jobs", unfinished.size());
+            unfinished.forEach(this::start);
+        }
+    }
+
+    private void start(ZipJob job) {
+        var execution = new Execution(new FutureTask<>(() -> {
+            run(job);
+            return null;
+        }), new LongAdder(), new AtomicBoolean(), new CompletableFuture<>());
+        // Registered before it runs, so a quick job cannot finish before it is found
+        executions.put(job.id(), execution);
+        executor.execute(() -> {
+            try {
+                execution.task().run();
+            } finally {
+                executions.remove(job.id());
+                execution.finished().complete(null);
+            }
+        });
+    }
+
+    private void run(ZipJob job) throws InterruptedException {
+        var execution = executions.get(job.id());
+        permits.acquire();
+        var running = job.running(Instant.now());
+        try {
+            zipJobStore.save(running);
+            try (var outputStream = new ProgressOutputStream(zipJobStore.openArchive(job.id()), execution)) {
+                fileService.zipFiles(job.filenames().stream(), job.level()).writeTo(outputStream);
+            }
+            var size = zipJobStore.commitArchive(job.id());
+            zipJobStore.save(running.done(size, Instant.now()));
+        } catch (IOException | RuntimeException e) {
+            if (execution.cancelled().get() || executor.isShutdown()) {
+                // Deleted, or left running for the next start to resume
+                return;
+            }
+            log.warn("Zip job {} failed", job.id(), e);
+            zipJobStore.save(running.withProgress(execution.written().sum())
+                    .failed(Objects.toString(e.getMessage(), e.getClass().getSimpleName()), Instant.now()));
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class ProgressOutputStream extends FilterOutputStream {
+
+        private final Execution execution;
+
+        private ProgressOutputStream(OutputStream outputStream, Execution execution) {
+            super(outputStream);
+            this.execution = execution;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            // Stops at the next write even when the archive engine does not react to the interrupt
+            if (execution.cancelled().get()) {
+                throw new InterruptedIOException("Zip job cancelled");
+            }
+            out.write(bytes, offset, length);
+            execution.written().add(length);
+        }
+    }
+}
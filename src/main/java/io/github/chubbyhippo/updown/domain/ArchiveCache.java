@@ -0,0 +1,17 @@
+package io.github.chubbyhippo.updown.domain;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+
+public interface ArchiveCache {
+
+    boolean enabled();
+
+    /**
+     * Streams the archive cached under {@code key}, or the one written by {@code builder}, keeping a copy as it
+     * is written. The key must change whenever a member does; a {@link FileStoredEvent} for a member drops the
+     * archive too.
+     */
+    StreamingResponseBody get(String key, List<String> filenames, StreamingResponseBody builder);
+}
@@ -0,0 +1,15 @@
+package io.github.chubbyhippo.updown.domain;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * A stored file whose SHA-256 digest was computed while it was written.
+ */
+public interface DigestedResource extends Resource {
+
+    /**
+     * Lower-case hex SHA-256 of the content, or {@code null} when it is not known, e.g. for files copied into
+     * storage behind the service's back.
+     */
+    String sha256();
+}
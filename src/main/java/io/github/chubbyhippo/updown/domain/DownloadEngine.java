@@ -0,0 +1,19 @@
+package io.github.chubbyhippo.updown.domain;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface DownloadEngine {
+
+    /**
+     * Hands the region over to the servlet container so it can send it without passing through the JVM.
+     *
+     * @return {@code true} if the container will write the body once the response is committed
+     */
+    boolean offload(Resource resource, long position, long count, HttpServletRequest request);
+
+    void transfer(Resource resource, long position, long count, OutputStream outputStream) throws IOException;
+}
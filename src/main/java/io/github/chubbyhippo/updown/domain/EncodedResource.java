@@ -0,0 +1,19 @@
+package io.github.chubbyhippo.updown.domain;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * A stored file kept in a content coding; reading it yields the decoded content.
+ */
+public interface EncodedResource extends Resource {
+
+    /**
+     * The HTTP content coding of the stored bytes, e.g. {@code gzip}.
+     */
+    String encoding();
+
+    /**
+     * The stored bytes as they are, for clients that accept {@link #encoding()}.
+     */
+    Resource encoded();
+}
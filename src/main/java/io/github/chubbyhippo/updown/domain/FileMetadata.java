@@ -0,0 +1,6 @@
+package io.github.chubbyhippo.updown.domain;
+
+import java.time.Instant;
+
+public record FileMetadata(String name, long size, Instant lastModified, String contentType) {
+}
@@ -0,0 +1,8 @@
+package io.github.chubbyhippo.updown.domain;
+
+/**
+ * Published after {@link StorageService} writes a file, so anything derived from its previous content can be
+ * dropped.
+ */
+public record FileStoredEvent(String filename) {
+}
@@ -0,0 +1,9 @@
+package io.github.chubbyhippo.updown.domain;
+
+public class InvalidFileQueryException extends RuntimeException {
+
+    public InvalidFileQueryException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,8 @@
+package io.github.chubbyhippo.updown.domain;
+
+public class InvalidFilenameException extends StorageException {
+
+    public InvalidFilenameException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.chubbyhippo.updown.domain;
+
+import org.springframework.core.io.Resource;
+
+import java.util.function.Function;
+
+public interface ResourceCache {
+
+    /**
+     * Returns the cached resource for {@code filename}, or the one produced by {@code loader}, caching it if
+     * it qualifies.
+     */
+    Resource get(String filename, Function<String, Resource> loader);
+}
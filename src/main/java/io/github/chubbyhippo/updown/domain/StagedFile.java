@@ -0,0 +1,28 @@
+package io.github.chubbyhippo.updown.domain;
+
+/**
+ * Content written by {@link StorageService#stage} but not yet visible under its filename.
+ */
+public interface StagedFile {
+
+    String filename();
+
+    long size();
+
+    /**
+     * Makes the content visible under {@link #filename()}, replacing any previous file. What it replaces is kept
+     * until {@link #discard()}.
+     */
+    void commit() throws StorageException;
+
+    /**
+     * Puts back the file the commit replaced, or removes the committed one if there was none. Does nothing unless
+     * committed, or once another store replaced the committed content.
+     */
+    void rollback() throws StorageException;
+
+    /**
+     * Drops the staged content, or after a commit the file it replaced.
+     */
+    void discard();
+}
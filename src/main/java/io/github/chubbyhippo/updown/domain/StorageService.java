@@ -4,6 +4,7 @@ import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Stream;
@@ -11,13 +12,56 @@ import java.util.stream.Stream;
 public interface StorageService {
     void init() throws StorageException;
 
+    /**
+     * Prepares storage that already holds files, serving requests as soon as possible.
+     */
+    default void restore() throws StorageException {
+        init();
+    }
+
     void store(MultipartFile file) throws EmptyFileException, StorageException;
 
+    void store(String filename, InputStream inputStream) throws EmptyFileException, StorageException;
+
+    /**
+     * Checks that a file could be stored under {@code filename} without storing anything.
+     */
+    void validateFilename(String filename) throws InvalidFilenameException;
+
+    /**
+     * Writes the content aside; nothing is visible under {@code filename} until the result is committed.
+     */
+    StagedFile stage(String filename, InputStream inputStream) throws EmptyFileException, StorageException;
+
     Stream<Path> loadAll() throws StorageException;
 
+    /**
+     * Metadata of stored files ordered by name, starting at the first name not before {@code from}.
+     */
+    Stream<FileMetadata> loadMetadata(String from) throws StorageException;
+
     Resource loadAsResource(String filename) throws StorageFileNotFoundException;
 
-    StreamingResponseBody zipFiles(Stream<String> filenames);
+    /**
+     * Tells this version of a stored file from others without reading it: its SHA-256 where known, its size and
+     * modification time otherwise.
+     */
+    String version(String filename) throws StorageFileNotFoundException;
+
+    default StreamingResponseBody zipFiles(Stream<String> filenames) {
+        return zipFiles(filenames, null);
+    }
+
+    /**
+     * @param level deflate level 0-9, or {@code null} for the configured default
+     */
+    StreamingResponseBody zipFiles(Stream<String> filenames, Integer level);
+
+    /**
+     * An archive of the files stored without compression, whose length is known up front and any range of
+     * which can be read on its own.
+     */
+    Resource storedZip(List<String> filenames) throws StorageFileNotFoundException;
 
     void deleteAll();
 }
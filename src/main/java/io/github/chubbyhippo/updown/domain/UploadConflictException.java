@@ -0,0 +1,9 @@
+package io.github.chubbyhippo.updown.domain;
+
+public class UploadConflictException extends StorageException {
+
+    public UploadConflictException(String message) {
+        super(message);
+    }
+
+}
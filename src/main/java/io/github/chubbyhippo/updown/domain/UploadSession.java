@@ -0,0 +1,44 @@
+package io.github.chubbyhippo.updown.domain;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public record UploadSession(String id,
+                            String filename,
+                            long length,
+                            long committedOffset,
+                            List<Range> received,
+                            Instant createdAt,
+                            Instant updatedAt) {
+
+    public record Range(long start, long end) {
+    }
+
+    public static UploadSession create(String id, String filename, long length, Instant now) {
+        return new UploadSession(id, filename, length, 0, List.of(), now, now);
+    }
+
+    public UploadSession withReceived(long start, long end, Instant now) {
+        // Keep the received ranges sorted and coalesced so chunks can arrive in any order
+        var merged = new ArrayList<Range>(received.size() + 1);
+        var current = new Range(start, end);
+        for (var range : received) {
+            if (range.end() < current.start()) {
+                merged.add(range);
+            } else if (current.end() < range.start()) {
+                merged.add(current);
+                current = range;
+            } else {
+                current = new Range(Math.min(range.start(), current.start()), Math.max(range.end(), current.end()));
+            }
+        }
+        merged.add(current);
+        var committed = merged.getFirst().start() == 0 ? merged.getFirst().end() : 0;
+        return new UploadSession(id, filename, length, committed, List.copyOf(merged), createdAt, now);
+    }
+
+    public boolean complete() {
+        return committedOffset == length;
+    }
+}
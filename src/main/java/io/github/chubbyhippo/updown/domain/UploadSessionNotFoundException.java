@@ -0,0 +1,9 @@
+package io.github.chubbyhippo.updown.domain;
+
+public class UploadSessionNotFoundException extends StorageException {
+
+    public UploadSessionNotFoundException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,28 @@
+package io.github.chubbyhippo.updown.domain;
+
+import java.io.InputStream;
+import java.time.Duration;
+
+public interface UploadSessionStore {
+
+    UploadSession create(String filename, long length) throws StorageException;
+
+    UploadSession get(String id) throws UploadSessionNotFoundException;
+
+    UploadSession write(String id, long offset, InputStream inputStream)
+            throws UploadSessionNotFoundException, UploadConflictException;
+
+    /**
+     * Takes the session for completion or removal once no chunk is being written to it. Until it is released or
+     * deleted, writes and other claims are refused.
+     */
+    UploadSession claim(String id) throws UploadSessionNotFoundException, UploadConflictException;
+
+    void release(String id);
+
+    InputStream openData(String id) throws UploadSessionNotFoundException;
+
+    void delete(String id) throws StorageException;
+
+    int purgeIdle(Duration maxIdle) throws StorageException;
+}
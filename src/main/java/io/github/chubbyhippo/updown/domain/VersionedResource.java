@@ -0,0 +1,15 @@
+package io.github.chubbyhippo.updown.domain;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * A representation built from several stored files, e.g. an archive, whose version follows from the files it is
+ * built from rather than from a digest of its own bytes.
+ */
+public interface VersionedResource extends Resource {
+
+    /**
+     * Opaque tag that changes whenever any file the representation is built from changes.
+     */
+    String version();
+}
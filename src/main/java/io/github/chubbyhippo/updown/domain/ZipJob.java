@@ -0,0 +1,57 @@
+package io.github.chubbyhippo.updown.domain;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A zip archive built in the background.
+ *
+ * @param totalBytes   size of the files going into the archive
+ * @param writtenBytes archive bytes written so far; the archive size once {@link Status#DONE}
+ * @param updatedAt    last change or download, which decides what the archive cache evicts first
+ */
+public record ZipJob(String id,
+                     List<String> filenames,
+                     Integer level,
+                     Status status,
+                     long totalBytes,
+                     long writtenBytes,
+                     String error,
+                     Instant createdAt,
+                     Instant updatedAt) {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    public static ZipJob create(String id, List<String> filenames, Integer level, long totalBytes, Instant now) {
+        return new ZipJob(id, List.copyOf(filenames), level, Status.QUEUED, totalBytes, 0, null, now, now);
+    }
+
+    public ZipJob running(Instant now) {
+        return new ZipJob(id, filenames, level, Status.RUNNING, totalBytes, 0, null, createdAt, now);
+    }
+
+    public ZipJob withProgress(long writtenBytes) {
+        return new ZipJob(id, filenames, level, status, totalBytes, writtenBytes, error, createdAt, updatedAt);
+    }
+
+    public ZipJob done(long size, Instant now) {
+        return new ZipJob(id, filenames, level, Status.DONE, totalBytes, size, null, createdAt, now);
+    }
+
+    public ZipJob failed(String error, Instant now) {
+        return new ZipJob(id, filenames, level, Status.FAILED, totalBytes, writtenBytes, error, createdAt, now);
+    }
+
+    public ZipJob touched(Instant now) {
+        return new ZipJob(id, filenames, level, status, totalBytes, writtenBytes, error, createdAt, now);
+    }
+
+    public boolean finished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.chubbyhippo.updown.domain;
+
+public class ZipJobNotFoundException extends StorageException {
+
+    public ZipJobNotFoundException(String message) {
+        super(message);
+    }
+
+}
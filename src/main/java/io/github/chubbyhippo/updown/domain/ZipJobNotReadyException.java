@@ -0,0 +1,9 @@
+package io.github.chubbyhippo.updown.domain;
+
+public class ZipJobNotReadyException extends StorageException {
+
+    public ZipJobNotReadyException(String message) {
+        super(message);
+    }
+
+}
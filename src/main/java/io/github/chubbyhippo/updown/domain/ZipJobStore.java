@@ -0,0 +1,31 @@
+package io.github.chubbyhippo.updown.domain;
+
+import org.springframework.core.io.Resource;
+
+import java.io.OutputStream;
+import java.util.List;
+
+public interface ZipJobStore {
+
+    ZipJob create(List<String> filenames, Integer level, long totalBytes) throws StorageException;
+
+    ZipJob get(String id) throws ZipJobNotFoundException;
+
+    List<ZipJob> list() throws StorageException;
+
+    void save(ZipJob job) throws StorageException;
+
+    /**
+     * Where the archive is written; it only becomes the job's archive once {@link #commitArchive committed}.
+     */
+    OutputStream openArchive(String id) throws ZipJobNotFoundException;
+
+    /**
+     * @return the size of the archive
+     */
+    long commitArchive(String id) throws ZipJobNotFoundException;
+
+    Resource loadArchive(String id) throws ZipJobNotFoundException;
+
+    void delete(String id) throws StorageException;
+}
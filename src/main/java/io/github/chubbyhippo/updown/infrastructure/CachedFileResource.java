@@ -0,0 +1,95 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.DigestedResource;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A file body held in a read-only direct buffer, outside the heap.
+ */
+final class CachedFileResource extends AbstractResource implements DigestedResource {
+
+    private final String filename;
+    private final ByteBuffer body;
+    private final long lastModified;
+    private final String sha256;
+
+    CachedFileResource(String filename, ByteBuffer body, long lastModified, String sha256) {
+        this.filename = filename;
+        this.body = body.asReadOnlyBuffer();
+        this.lastModified = lastModified;
+        this.sha256 = sha256;
+    }
+
+    ByteBuffer slice(long position, long count) {
+        return body.slice(Math.toIntExact(position), Math.toIntExact(count));
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public long contentLength() {
+        return body.capacity();
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String sha256() {
+        return sha256;
+    }
+
+    @Override
+    public String getDescription() {
+        return "cached file [%s]".formatted(filename);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        var buffer = body.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (length == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                var read = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, read);
+                return read;
+            }
+
+            @Override
+            public long skip(long n) {
+                var skipped = (int) Math.clamp(n, 0, buffer.remaining());
+                buffer.position(buffer.position() + skipped);
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+}
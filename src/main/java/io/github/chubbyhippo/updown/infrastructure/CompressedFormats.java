@@ -0,0 +1,84 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Recognises content that is already compressed, by leading magic bytes or, failing that, by extension.
+ */
+final class CompressedFormats {
+
+    private static final Set<String> EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "avif",
+            "mp4", "m4v", "mov", "mkv", "webm", "avi",
+            "mp3", "aac", "m4a", "ogg", "opus", "flac",
+            "zip", "jar", "war", "apk", "epub", "docx", "xlsx", "pptx", "odt", "ods",
+            "gz", "tgz", "bz2", "xz", "zst", "lz4", "br", "7z", "rar");
+
+    private static final byte[][] MAGIC = {
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},                    // JPEG
+            {(byte) 0x89, 'P', 'N', 'G'},                               // PNG
+            {'G', 'I', 'F', '8'},                                       // GIF
+            {'P', 'K', 0x03, 0x04},                                     // zip, jar, docx, ...
+            {0x1F, (byte) 0x8B},                                        // gzip
+            {'B', 'Z', 'h'},                                            // bzip2
+            {(byte) 0xFD, '7', 'z', 'X', 'Z', 0x00},                    // xz
+            {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD},                     // zstd
+            {'7', 'z', (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C},           // 7z
+            {'R', 'a', 'r', '!'},                                       // rar
+            {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3},                     // mkv, webm
+            {'I', 'D', '3'},                                            // mp3
+            {'O', 'g', 'g', 'S'},                                       // ogg, opus
+            {'f', 'L', 'a', 'C'},                                       // flac
+    };
+
+    private static final byte[] FTYP = "ftyp".getBytes(StandardCharsets.US_ASCII);   // mp4, mov, heic at offset 4
+    private static final byte[] RIFF = "RIFF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WEBP = "WEBP".getBytes(StandardCharsets.US_ASCII);
+
+    private CompressedFormats() {
+    }
+
+    static boolean isCompressed(String name, byte[] head) {
+        for (var magic : MAGIC) {
+            if (startsWith(head, 0, magic)) {
+                return true;
+            }
+        }
+        if (startsWith(head, 4, FTYP) || (startsWith(head, 0, RIFF) && startsWith(head, 8, WEBP))) {
+            return true;
+        }
+        var dot = name.lastIndexOf('.');
+        return dot >= 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Compressed size over original size of the first {@code length} bytes at the fastest deflate level.
+     */
+    static double sampleRatio(byte[] sample, int length) {
+        if (length == 0) {
+            return 1.0;
+        }
+        var deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            var buffer = new byte[length + 64];
+            var compressed = 0L;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(buffer);
+            }
+            return (double) compressed / length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+        return bytes.length >= offset + prefix.length
+                && Arrays.equals(bytes, offset, offset + prefix.length, prefix, 0, prefix.length);
+    }
+}
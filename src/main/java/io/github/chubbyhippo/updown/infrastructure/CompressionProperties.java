@@ -0,0 +1,20 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Compression at rest for the filesystem backend.
+ *
+ * @param minSize    files smaller than this are stored as sent
+ * @param sampleSize how much of a file is trial-compressed to decide
+ * @param maxRatio   files whose sample compresses to more than this fraction of its size are stored as sent
+ */
+@ConfigurationProperties("storage.compression")
+public record CompressionProperties(@DefaultValue("false") boolean enabled,
+                                    @DefaultValue("6") int level,
+                                    @DefaultValue("4KB") DataSize minSize,
+                                    @DefaultValue("64KB") DataSize sampleSize,
+                                    @DefaultValue("0.8") double maxRatio) {
+}
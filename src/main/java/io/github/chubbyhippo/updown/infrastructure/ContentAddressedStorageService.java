@@ -0,0 +1,505 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import io.github.chubbyhippo.updown.domain.FileStoredEvent;
+import io.github.chubbyhippo.updown.domain.InvalidFilenameException;
+import io.github.chubbyhippo.updown.domain.StagedFile;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.StorageFileNotFoundException;
+import io.github.chubbyhippo.updown.domain.StorageService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Stores each distinct content once under its SHA-256 digest; filenames are small reference files pointing at
+ * a blob. Blobs whose reference count drops to zero are removed by {@link #collectGarbage()}.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "content-addressed")
+public class ContentAddressedStorageService implements StorageService, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentAddressedStorageService.class);
+    private static final int LOCK_STRIPES = 64;
+
+    private final Path rootLocation;
+    private final Path blobs;
+    private final Path refs;
+    private final Path temporary;
+    private final ZipArchiveEngine zipArchiveEngine;
+    private final FileCommitter fileCommitter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ConcurrentHashMap<String, Blob> blobIndex = new ConcurrentHashMap<>();
+    // Separate stripes so a filename lock and a digest lock can never be the same lock taken in opposite orders
+    private final ReentrantLock[] filenameLocks = stripes();
+    private final ReentrantLock[] digestLocks = stripes();
+    // Until the reference counts are rebuilt every blob looks unreferenced, so collection waits for init()
+    private volatile boolean initialized;
+
+    public ContentAddressedStorageService(StorageProperties properties, ZipArchiveEngine zipArchiveEngine,
+                                          FileCommitter fileCommitter, ApplicationEventPublisher eventPublisher) {
+
+        if (properties.location().trim().isEmpty()) {
+            throw new StorageException("File upload location can not be Empty.");
+        }
+
+        this.rootLocation = Paths.get(properties.location());
+        this.blobs = rootLocation.resolve("blobs");
+        this.refs = rootLocation.resolve("refs");
+        this.temporary = rootLocation.resolve("tmp");
+        this.zipArchiveEngine = zipArchiveEngine;
+        this.fileCommitter = fileCommitter;
+        this.eventPublisher = eventPublisher;
+    }
+
+    private static final class Blob {
+        private final long size;
+        private volatile int references;
+
+        private Blob(long size) {
+            this.size = size;
+        }
+    }
+
+    public record DedupStats(long files, long blobs, long logicalBytes, long physicalBytes) {
+
+        public double ratio() {
+            return physicalBytes == 0 ? 1.0 : (double) logicalBytes / physicalBytes;
+        }
+    }
+
+    @Override
+    public synchronized void init() throws StorageException {
+        initialized = false;
+        try {
+            Files.createDirectories(blobs);
+            Files.createDirectories(refs);
+            FileSystemUtils.deleteRecursively(temporary);
+            Files.createDirectories(temporary);
+            blobIndex.clear();
+            try (var references = Files.list(refs)) {
+                for (var ref : references.toList()) {
+                    var digest = Files.readString(ref);
+                    var blob = blobPath(digest);
+                    if (Files.isRegularFile(blob)) {
+                        blobIndex.computeIfAbsent(digest, key -> new Blob(size(blob))).references++;
+                    } else {
+                        log.warn("Reference {} points at missing blob {}", ref.getFileName(), digest);
+                    }
+                }
+            }
+            initialized = true;
+        } catch (IOException e) {
+            throw new StorageException("Could not initialize storage", e);
+        }
+    }
+
+    @Override
+    public void store(MultipartFile file) throws EmptyFileException, StorageException {
+        if (file.isEmpty()) {
+            throw new EmptyFileException("Failed to store empty file.");
+        }
+        var filename = Objects.requireNonNull(file.getOriginalFilename());
+        try (var inputStream = file.getInputStream()) {
+            store(filename, inputStream);
+        } catch (IOException e) {
+            throw new StorageException("Failed to store file.", e);
+        }
+    }
+
+    @Override
+    public void store(String filename, InputStream inputStream) throws EmptyFileException, StorageException {
+        var staged = stage(filename, inputStream);
+        try {
+            staged.commit();
+        } finally {
+            staged.discard();
+        }
+    }
+
+    @Override
+    public StagedFile stage(String filename, InputStream inputStream) throws EmptyFileException, StorageException {
+        var ref = resolveTarget(filename);
+        Path staged = null;
+        try {
+            // Content is hashed while it is staged; known content is discarded before it ever reaches blobs/,
+            // usually while still in the page cache, so a duplicate costs the hash plus one reference write
+            staged = Files.createTempFile(temporary, "blob-", ".tmp");
+            var messageDigest = sha256();
+            long size;
+            try (var outputStream = Files.newOutputStream(staged)) {
+                size = new DigestInputStream(inputStream, messageDigest).transferTo(outputStream);
+            }
+            if (size == 0) {
+                throw new EmptyFileException("Failed to store empty file.");
+            }
+            var stagedBlob = new StagedBlob(ref, staged, HexFormat.of().formatHex(messageDigest.digest()), size);
+            staged = null;
+            return stagedBlob;
+        } catch (IOException e) {
+            throw new StorageException("Failed to store file.", e);
+        } finally {
+            deleteStaged(staged);
+        }
+    }
+
+    private final class StagedBlob implements StagedFile {
+
+        private final Path ref;
+        private final Path staged;
+        private final String digest;
+        private final long size;
+        private boolean committed;
+        private String previous;
+
+        private StagedBlob(Path ref, Path staged, String digest, long size) {
+            this.ref = ref;
+            this.staged = staged;
+            this.digest = digest;
+            this.size = size;
+        }
+
+        @Override
+        public String filename() {
+            return ref.getFileName().toString();
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void commit() throws StorageException {
+            var filenameLock = stripe(filenameLocks, filename());
+            filenameLock.lock();
+            try {
+                acquire(digest, staged, size);
+                var previous = Files.isRegularFile(ref) ? Files.readString(ref) : null;
+                var stagedRef = Files.createTempFile(temporary, "ref-", ".tmp");
+                Files.writeString(stagedRef, digest);
+                fileCommitter.commit(stagedRef, ref);
+                // The replaced content stays referenced until discard, so a rollback can point back at it
+                this.previous = previous;
+                committed = true;
+            } catch (IOException e) {
+                throw new StorageException("Failed to store file.", e);
+            } finally {
+                filenameLock.unlock();
+            }
+            eventPublisher.publishEvent(new FileStoredEvent(filename()));
+        }
+
+        @Override
+        public void rollback() throws StorageException {
+            var filenameLock = stripe(filenameLocks, filename());
+            filenameLock.lock();
+            try {
+                if (!committed) {
+                    return;
+                }
+                committed = false;
+                if (!Files.isRegularFile(ref) || !digest.equals(Files.readString(ref))) {
+                    // Stored again since, which released this commit's reference; the replaced one goes too
+                    releasePrevious();
+                    return;
+                }
+                if (previous != null) {
+                    var stagedRef = Files.createTempFile(temporary, "ref-", ".tmp");
+                    Files.writeString(stagedRef, previous);
+                    fileCommitter.commit(stagedRef, ref);
+                    previous = null;
+                } else {
+                    Files.deleteIfExists(ref);
+                }
+                release(digest);
+            } catch (IOException e) {
+                throw new StorageException("Failed to roll back file.", e);
+            } finally {
+                filenameLock.unlock();
+            }
+            eventPublisher.publishEvent(new FileStoredEvent(filename()));
+        }
+
+        @Override
+        public void discard() {
+            // The blob was moved into blobs/ if it was new, or is a duplicate no longer needed
+            deleteStaged(staged);
+            releasePrevious();
+        }
+
+        private void releasePrevious() {
+            if (previous != null) {
+                release(previous);
+                previous = null;
+            }
+        }
+    }
+
+    private void acquire(String digest, Path staged, long size) throws IOException {
+        var lock = stripe(digestLocks, digest);
+        lock.lock();
+        try {
+            var blob = blobPath(digest);
+            if (!Files.isRegularFile(blob)) {
+                Files.createDirectories(blob.getParent());
+                fileCommitter.commit(staged, blob);
+            }
+            // Counted before the reference is written, so a concurrent collection never sees it unreferenced
+            blobIndex.computeIfAbsent(digest, key -> new Blob(size)).references++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(String digest) {
+        var lock = stripe(digestLocks, digest);
+        lock.lock();
+        try {
+            var blob = blobIndex.get(digest);
+            if (blob != null && blob.references > 0) {
+                blob.references--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes blobs with no references, including any left behind by an interrupted store. Does nothing before
+     * {@link #init()} has counted the references.
+     *
+     * @return the number of blobs deleted
+     */
+    public synchronized int collectGarbage() throws StorageException {
+        if (!initialized || !Files.isDirectory(blobs)) {
+            return 0;
+        }
+        var collected = 0;
+        try (var files = Files.walk(blobs, 2)) {
+            for (var path : files.filter(Files::isRegularFile).toList()) {
+                var digest = path.getFileName().toString();
+                var lock = stripe(digestLocks, digest);
+                lock.lock();
+                try {
+                    var blob = blobIndex.get(digest);
+                    if (blob == null || blob.references == 0) {
+                        Files.deleteIfExists(path);
+                        blobIndex.remove(digest);
+                        collected++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            throw new StorageException("Could not collect unreferenced blobs", e);
+        }
+        return collected;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.dedup.gc-interval:PT1H}",
+            initialDelayString = "${storage.dedup.gc-interval:PT1H}")
+    void collectGarbageOnSchedule() {
+        var collected = collectGarbage();
+        if (collected > 0) {
+            log.info("Collected {} unreferenced blobs", collected);
+        }
+    }
+
+    public DedupStats stats() {
+        long files = 0;
+        long blobCount = 0;
+        long logicalBytes = 0;
+        long physicalBytes = 0;
+        for (var blob : blobIndex.values()) {
+            var references = blob.references;
+            files += references;
+            blobCount++;
+            logicalBytes += references * blob.size;
+            physicalBytes += blob.size;
+        }
+        return new DedupStats(files, blobCount, logicalBytes, physicalBytes);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("storage.dedup.logical", this, service -> service.stats().logicalBytes())
+                .description("Bytes referenced by stored filenames")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("storage.dedup.physical", this, service -> service.stats().physicalBytes())
+                .description("Bytes held in distinct blobs")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("storage.dedup.ratio", this, service -> service.stats().ratio())
+                .description("Logical bytes per physical byte")
+                .register(registry);
+    }
+
+    @SuppressWarnings("resource")
+    @Override
+    public Stream<Path> loadAll() throws StorageException {
+        try {
+            return Files.list(refs).map(refs::relativize);
+        } catch (IOException e) {
+            throw new StorageException("Failed to read stored files", e);
+        }
+    }
+
+    @Override
+    public Stream<FileMetadata> loadMetadata(String from) throws StorageException {
+        List<String> names;
+        try (var references = Files.list(refs)) {
+            names = references.map(ref -> ref.getFileName().toString())
+                    .filter(name -> name.compareTo(from) >= 0)
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new StorageException("Failed to read stored files", e);
+        }
+        return names.stream().<FileMetadata>mapMulti((name, downstream) -> {
+            try {
+                var lastModified = Files.getLastModifiedTime(refs.resolve(name)).toInstant();
+                var blob = blobIndex.get(readRef(name));
+                if (blob != null) {
+                    downstream.accept(new FileMetadata(name, blob.size, lastModified, FileMetadataIndex.contentType(name)));
+                }
+            } catch (IOException | StorageFileNotFoundException e) {
+                // Removed since the listing was taken
+            }
+        });
+    }
+
+    @Override
+    public Resource loadAsResource(String filename) throws StorageFileNotFoundException {
+        var digest = readRef(filename);
+        return new DigestedFileResource(blobPath(digest), filename, digest);
+    }
+
+    @Override
+    public String version(String filename) throws StorageFileNotFoundException {
+        return readRef(filename);
+    }
+
+    @Override
+    public StreamingResponseBody zipFiles(Stream<String> filenames, Integer level) {
+        return outputStream -> zipArchiveEngine.write(
+                filenames.map(filename -> ZipArchiveEngine.Source.of(filename, blobPath(readRef(filename)))),
+                outputStream, level);
+    }
+
+    @Override
+    public Resource storedZip(List<String> filenames) {
+        return zipArchiveEngine.storedArchive(filenames.stream()
+                .map(filename -> ZipArchiveEngine.Source.of(filename, blobPath(readRef(filename))))
+                .toList());
+    }
+
+    @Override
+    public synchronized void deleteAll() {
+        initialized = false;
+        FileSystemUtils.deleteRecursively(rootLocation.toFile());
+        blobIndex.clear();
+    }
+
+    private String readRef(String filename) throws StorageFileNotFoundException {
+        var ref = refs.resolve(filename).normalize();
+        try {
+            if (ref.getParent().equals(refs.normalize()) && Files.isRegularFile(ref)) {
+                return Files.readString(ref);
+            }
+        } catch (IOException e) {
+            throw new StorageFileNotFoundException("Could not read file: %s".formatted(filename), e);
+        }
+        throw new StorageFileNotFoundException("Could not read file: %s".formatted(filename));
+    }
+
+    @Override
+    public void validateFilename(String filename) throws InvalidFilenameException {
+        resolveTarget(filename);
+    }
+
+    private Path resolveTarget(String filename) throws InvalidFilenameException {
+        if (filename == null || filename.isBlank()) {
+            throw new InvalidFilenameException("Filename is required.");
+        }
+        var path = refs.resolve(Path.of(filename))
+                .normalize().toAbsolutePath();
+        if (!path.getParent().equals(refs.toAbsolutePath())) {
+            // This is a security check
+            throw new InvalidFilenameException(
+                    "Cannot store file outside current directory.");
+        }
+        return path;
+    }
+
+    private Path blobPath(String digest) {
+        return blobs.resolve(digest.substring(0, 2)).resolve(digest);
+    }
+
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            throw new StorageException("Could not read blob: %s".formatted(path.getFileName()), e);
+        }
+    }
+
+    private static void deleteStaged(Path staged) {
+        if (staged == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(staged);
+        } catch (IOException e) {
+            log.warn("Could not delete staged blob {}", staged, e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ReentrantLock[] stripes() {
+        var locks = new ReentrantLock[LOCK_STRIPES];
+        for (var i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private static ReentrantLock stripe(ReentrantLock[] locks, String key) {
+        return locks[Math.floorMod(key.hashCode(), locks.length)];
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.DigestedResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Path;
+
+/**
+ * A stored file that reports its digest and, for content-addressed blobs, the filename it was requested under.
+ */
+final class DigestedFileResource extends FileSystemResource implements DigestedResource {
+
+    private final String filename;
+    private final String sha256;
+
+    DigestedFileResource(Path path, String filename, String sha256) {
+        super(path);
+        this.filename = filename;
+        this.sha256 = sha256;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String sha256() {
+        return sha256;
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties("storage.download")
+public record DownloadProperties(@DefaultValue("auto") Mode mode,
+                                 @DefaultValue("48KB") DataSize sendfileThreshold,
+                                 @DefaultValue("4MB") DataSize mappedWindowSize) {
+
+    public enum Mode {
+        /**
+         * Container sendfile when available, then memory-mapped writes, then a plain stream copy.
+         */
+        AUTO,
+        MAPPED,
+        /**
+         * {@code FileChannel.transferTo} into the response stream.
+         */
+        CHANNEL,
+        /**
+         * Copies {@link org.springframework.core.io.Resource#getInputStream()} through a heap buffer.
+         */
+        STREAM
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * @param groupWindow how long a group commit waits for more renames before syncing their directory
+ */
+@ConfigurationProperties("storage.durability")
+public record DurabilityProperties(@DefaultValue("none") Mode mode,
+                                   @DefaultValue("2ms") Duration groupWindow) {
+
+    public enum Mode {
+        /**
+         * Atomic rename only; a crash can lose recent files but never leaves a torn one.
+         */
+        NONE,
+        /**
+         * Each file and its directory entry are synced before the store returns.
+         */
+        FSYNC,
+        /**
+         * Each file is synced, and concurrent stores share one directory sync per window.
+         */
+        GROUP
+    }
+}
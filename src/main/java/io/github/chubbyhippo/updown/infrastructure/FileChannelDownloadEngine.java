@@ -0,0 +1,109 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.DownloadEngine;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+@Component
+public class FileChannelDownloadEngine implements DownloadEngine {
+
+    static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private final DownloadProperties properties;
+
+    public FileChannelDownloadEngine(DownloadProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean offload(Resource resource, long position, long count, HttpServletRequest request) {
+        if (properties.mode() != DownloadProperties.Mode.AUTO
+                || !resource.isFile()
+                || count < properties.sendfileThreshold().toBytes()
+                || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            return false;
+        }
+        try {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, resource.getFile().getAbsolutePath());
+        } catch (IOException e) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_START_ATTRIBUTE, position);
+        request.setAttribute(SENDFILE_END_ATTRIBUTE, position + count);
+        return true;
+    }
+
+    @Override
+    public void transfer(Resource resource, long position, long count,
+                         OutputStream outputStream) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        var mode = properties.mode();
+        var servletOutputStream = outputStream instanceof ServletOutputStream servlet ? servlet : null;
+        if (resource instanceof CachedFileResource cached) {
+            var body = cached.slice(position, count);
+            if (servletOutputStream != null) {
+                servletOutputStream.write(body);
+            } else {
+                var target = Channels.newChannel(outputStream);
+                while (body.hasRemaining()) {
+                    target.write(body);
+                }
+            }
+            return;
+        }
+        if (!resource.isFile()
+                || mode == DownloadProperties.Mode.STREAM
+                || (mode == DownloadProperties.Mode.AUTO && servletOutputStream == null)) {
+            try (var inputStream = resource.getInputStream()) {
+                StreamUtils.copyRange(inputStream, outputStream, position, position + count - 1);
+            }
+            return;
+        }
+        try (var channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+            if (mode == DownloadProperties.Mode.CHANNEL || servletOutputStream == null) {
+                writeChannel(channel, position, count, outputStream);
+            } else {
+                writeMapped(channel, position, count, servletOutputStream);
+            }
+        }
+    }
+
+    private void writeMapped(FileChannel channel, long position, long count,
+                             ServletOutputStream outputStream) throws IOException {
+        // The container copies straight from the page cache into its socket buffer, no heap byte[] in between
+        var windowSize = properties.mappedWindowSize().toBytes();
+        var end = position + count;
+        for (var offset = position; offset < end; offset += windowSize) {
+            var mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, end - offset));
+            outputStream.write(mapped);
+        }
+    }
+
+    private static void writeChannel(FileChannel channel, long position, long count,
+                                     OutputStream outputStream) throws IOException {
+        var target = Channels.newChannel(outputStream);
+        var transferred = 0L;
+        while (transferred < count) {
+            var written = channel.transferTo(position + transferred, count - transferred, target);
+            if (written <= 0) {
+                throw new StorageException("File truncated during transfer.");
+            }
+            transferred += written;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves fully written files into place with an atomic rename, syncing them as {@link DurabilityProperties}
+ * asks. Readers see either the previous file or the complete new one, never a partial write.
+ */
+@Component
+public class FileCommitter implements MeterBinder {
+
+    private final DurabilityProperties properties;
+    private final LongAdder fileSyncs = new LongAdder();
+    private final LongAdder directorySyncs = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+
+    // Group commit state: renames are numbered, and a store returns once a directory sync covered its number
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private final Set<Path> pendingDirectories = new HashSet<>();
+    private long renamed;
+    private long durable;
+    private boolean syncing;
+
+    public FileCommitter(DurabilityProperties properties) {
+        this.properties = properties;
+    }
+
+    public void commit(Path staged, Path target) throws IOException {
+        var mode = properties.mode();
+        if (mode != DurabilityProperties.Mode.NONE) {
+            sync(staged, StandardOpenOption.WRITE);
+            fileSyncs.increment();
+        }
+        Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        commits.increment();
+        switch (mode) {
+            case NONE -> {
+            }
+            case FSYNC -> {
+                sync(target.getParent(), StandardOpenOption.READ);
+                directorySyncs.increment();
+            }
+            case GROUP -> awaitGroupSync(target.getParent());
+        }
+    }
+
+    /**
+     * Creates the missing directories up to {@code directory}. Unless durability is off, each one is synced into
+     * its parent, so a committed file cannot lose the path leading to it.
+     */
+    public void createDirectories(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        var parent = directory.getParent();
+        if (parent != null) {
+            createDirectories(parent);
+        }
+        try {
+            Files.createDirectory(directory);
+        } catch (FileAlreadyExistsException e) {
+            // Created concurrently; synced below all the same, the other store may not have got that far
+        }
+        if (properties.mode() != DurabilityProperties.Mode.NONE && parent != null) {
+            sync(parent, StandardOpenOption.READ);
+            directorySyncs.increment();
+        }
+    }
+
+    private void awaitGroupSync(Path directory) throws IOException {
+        lock.lock();
+        try {
+            pendingDirectories.add(directory);
+            var ticket = ++renamed;
+            while (durable < ticket) {
+                if (syncing) {
+                    synced.await();
+                    continue;
+                }
+                // Lead this group: give concurrent stores the window to join, then sync every directory once
+                syncing = true;
+                try {
+                    synced.await(properties.groupWindow().toNanos(), TimeUnit.NANOSECONDS);
+                    var covered = renamed;
+                    var directories = Set.copyOf(pendingDirectories);
+                    pendingDirectories.clear();
+                    IOException failure = null;
+                    lock.unlock();
+                    try {
+                        for (var pending : directories) {
+                            sync(pending, StandardOpenOption.READ);
+                            directorySyncs.increment();
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    } finally {
+                        lock.lock();
+                    }
+                    if (failure != null) {
+                        // The next leader retries these for the stores still waiting
+                        pendingDirectories.addAll(directories);
+                        throw failure;
+                    }
+                    durable = Math.max(durable, covered);
+                } finally {
+                    syncing = false;
+                    synced.signalAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a group commit");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void sync(Path path, StandardOpenOption option) throws IOException {
+        try (var channel = FileChannel.open(path, option)) {
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("storage.durability.commits", commits, LongAdder::sum)
+                .description("Files renamed into place")
+                .register(registry);
+        FunctionCounter.builder("storage.durability.syncs", fileSyncs, LongAdder::sum)
+                .tag("target", "file")
+                .description("fsync calls on file contents")
+                .register(registry);
+        FunctionCounter.builder("storage.durability.syncs", directorySyncs, LongAdder::sum)
+                .tag("target", "directory")
+                .description("fsync calls on directories")
+                .register(registry);
+    }
+}
@@ -0,0 +1,330 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Name-ordered metadata for the regular files stored in a {@link StorageLayout}. Writes through the storage
+ * service update it immediately; changes made behind its back arrive through a {@link WatchService} on a flat
+ * root and the periodic {@link #reconcile()}.
+ * <p>
+ * Once its journal is open, the index persists itself under {@code .index} in the root: a {@link #snapshot()}
+ * of every entry, and a journal of the changes made since. {@link #load()} restores both without reading the
+ * tree, so a restart does not have to wait for a scan.
+ */
+final class FileMetadataIndex implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FileMetadataIndex.class);
+    private static final int SNAPSHOT_MAGIC = 0x55444958;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final byte JOURNAL_PUT = 'P';
+    private static final byte JOURNAL_REMOVE = 'R';
+    // Past this the journal is folded into a new snapshot rather than waiting for the next reconcile
+    private static final long MAX_JOURNAL_SIZE = 16L << 20;
+
+    private final Path rootLocation;
+    private final StorageLayout layout;
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final ConcurrentSkipListMap<String, FileMetadata> entries = new ConcurrentSkipListMap<>();
+    private final Object journalLock = new Object();
+    private WatchService watchService;
+    private FileChannel journal;
+
+    FileMetadataIndex(Path rootLocation, StorageLayout layout) {
+        this.rootLocation = rootLocation;
+        this.layout = layout;
+        // Not a shard directory, so walks of the layout never list it
+        var directory = rootLocation.resolve(".index");
+        this.snapshotFile = directory.resolve("snapshot");
+        this.journalFile = directory.resolve("journal");
+    }
+
+    Stream<FileMetadata> stream() {
+        return entries.values().stream();
+    }
+
+    Stream<FileMetadata> streamFrom(String name) {
+        return entries.tailMap(name, true).values().stream();
+    }
+
+    /**
+     * Looks a name up in the index, falling back to a single stat so files that were just copied in are found
+     * before the watcher reports them.
+     */
+    Optional<FileMetadata> get(String name) {
+        var metadata = entries.get(name);
+        if (metadata != null) {
+            return Optional.of(metadata);
+        }
+        return isPlainName(name) ? Optional.ofNullable(refresh(name)) : Optional.empty();
+    }
+
+    FileMetadata refresh(String name) {
+        try {
+            var attributes = Files.readAttributes(layout.resolve(name), BasicFileAttributes.class);
+            if (attributes.isRegularFile()) {
+                var metadata = metadata(name, attributes);
+                if (!metadata.equals(entries.put(name, metadata))) {
+                    append(JOURNAL_PUT, metadata);
+                }
+                return metadata;
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted; fall through and drop it
+        } catch (IOException e) {
+            log.warn("Could not read attributes of {}", name, e);
+        }
+        var removed = entries.remove(name);
+        if (removed != null) {
+            append(JOURNAL_REMOVE, removed);
+        }
+        return null;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    void reconcile() throws IOException {
+        if (!Files.isDirectory(rootLocation)) {
+            entries.clear();
+            return;
+        }
+        // Only names indexed before the scan may be dropped, so files stored while it runs are kept
+        var stale = new HashSet<>(entries.keySet());
+        var misplaced = layout.walk((path, attributes) -> {
+            var name = path.getFileName().toString();
+            entries.put(name, metadata(name, attributes));
+            stale.remove(name);
+        });
+        stale.forEach(entries::remove);
+        if (misplaced > 0) {
+            log.warn("Ignoring {} files under {} that are not in the configured layout; see StorageLayoutMigration",
+                    misplaced, rootLocation);
+        }
+    }
+
+    /**
+     * Starts recording changes in the journal, after any earlier journal has been {@link #load() loaded}.
+     */
+    void openJournal() throws IOException {
+        synchronized (journalLock) {
+            closeJournal();
+            Files.createDirectories(journalFile.getParent());
+            journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Restores the last snapshot and replays the journal over it. Entries already indexed are kept, since they
+     * were read from the tree after the snapshot was taken.
+     *
+     * @return the number of entries restored, or {@code -1} if there was no usable snapshot
+     */
+    long load() {
+        var restored = new TreeMap<String, FileMetadata>();
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION) {
+                log.warn("Ignoring index snapshot {} in an unknown format", snapshotFile);
+                return -1;
+            }
+            var count = input.readLong();
+            for (var i = 0L; i < count; i++) {
+                var metadata = readMetadata(input);
+                restored.put(metadata.name(), metadata);
+            }
+        } catch (NoSuchFileException e) {
+            return -1;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable index snapshot {}", snapshotFile, e);
+            return -1;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+            while (true) {
+                var operation = input.readByte();
+                var metadata = readMetadata(input);
+                if (operation == JOURNAL_REMOVE) {
+                    restored.remove(metadata.name());
+                } else {
+                    restored.put(metadata.name(), metadata);
+                }
+            }
+        } catch (NoSuchFileException | EOFException e) {
+            // No changes since the snapshot, or the end of the journal, possibly cut short by a crash
+        } catch (IOException e) {
+            log.warn("Stopped replaying unreadable index journal {}", journalFile, e);
+        }
+        restored.forEach(entries::putIfAbsent);
+        return restored.size();
+    }
+
+    /**
+     * Writes every entry to a new snapshot and empties the journal; does nothing while the journal is closed.
+     */
+    void snapshot() throws IOException {
+        synchronized (journalLock) {
+            if (journal == null) {
+                return;
+            }
+            Files.createDirectories(snapshotFile.getParent());
+            var temporary = Files.createTempFile(snapshotFile.getParent(), "snapshot-", ".tmp");
+            try {
+                try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                    var snapshot = List.copyOf(entries.values());
+                    output.writeInt(SNAPSHOT_MAGIC);
+                    output.writeInt(SNAPSHOT_VERSION);
+                    output.writeLong(snapshot.size());
+                    for (var metadata : snapshot) {
+                        writeMetadata(output, metadata);
+                    }
+                }
+                Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            // A change racing the copy is either in it or waiting on the lock to be journalled after this
+            journal.truncate(0);
+        }
+    }
+
+    private void append(byte operation, FileMetadata metadata) {
+        synchronized (journalLock) {
+            if (journal == null) {
+                return;
+            }
+            try {
+                var bytes = new ByteArrayOutputStream(64);
+                var output = new DataOutputStream(bytes);
+                output.writeByte(operation);
+                writeMetadata(output, metadata);
+                // One write per record, so a crash leaves at most the last record torn
+                journal.write(ByteBuffer.wrap(bytes.toByteArray()));
+                if (journal.size() > MAX_JOURNAL_SIZE) {
+                    snapshot();
+                }
+            } catch (IOException e) {
+                log.warn("Could not journal index change of {}; the next reconcile catches up", metadata.name(), e);
+            }
+        }
+    }
+
+    private static void writeMetadata(DataOutputStream output, FileMetadata metadata) throws IOException {
+        output.writeUTF(metadata.name());
+        output.writeLong(metadata.size());
+        output.writeLong(metadata.lastModified().getEpochSecond());
+        output.writeInt(metadata.lastModified().getNano());
+    }
+
+    private static FileMetadata readMetadata(DataInputStream input) throws IOException {
+        var name = input.readUTF();
+        var size = input.readLong();
+        var lastModified = Instant.ofEpochSecond(input.readLong(), input.readInt());
+        return new FileMetadata(name, size, lastModified, contentType(name));
+    }
+
+    synchronized void watch() throws IOException {
+        closeWatchService();
+        if (layout.sharded()) {
+            // A watch per shard directory would exhaust the inotify limit; reconciliation covers outside changes
+            return;
+        }
+        var service = rootLocation.getFileSystem().newWatchService();
+        rootLocation.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watchService = service;
+        Thread.ofVirtual().name("file-metadata-watcher").start(() -> processEvents(service));
+    }
+
+    private void processEvents(WatchService service) {
+        try {
+            while (true) {
+                var key = service.take();
+                for (var event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        reconcile();
+                    } else {
+                        refresh(event.context().toString());
+                    }
+                }
+                if (!key.reset()) {
+                    // The root itself went away; init() registers a new watcher
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Replaced or shut down
+        } catch (IOException e) {
+            log.warn("File metadata watcher stopped; relying on periodic reconciliation", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeWatchService();
+        synchronized (journalLock) {
+            closeJournal();
+        }
+    }
+
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void closeWatchService() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+    }
+
+    private static boolean isPlainName(String name) {
+        var fileName = Path.of(name).getFileName();
+        return fileName != null && fileName.toString().equals(name) && !name.equals("..") && !name.equals(".");
+    }
+
+    private static FileMetadata metadata(String name, BasicFileAttributes attributes) {
+        return new FileMetadata(name, attributes.size(), attributes.lastModifiedTime().toInstant(), contentType(name));
+    }
+
+    static String contentType(String name) {
+        return MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+}
@@ -0,0 +1,239 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * What the service knows about each stored file beyond a stat, kept in one small file per name in the same
+ * layout as the files. A sidecar records the size and modification time of the bytes it describes and is ignored once
+ * those no longer match, so it can be written before the content is renamed into place and never vouches for
+ * other bytes. Without a matching sidecar the file itself is inspected, so encoded bytes are never taken for plain
+ * content.
+ */
+final class FileSidecars {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSidecars.class);
+    private static final Duration PRUNE_GRACE = Duration.ofMinutes(1);
+
+    /**
+     * @param sha256        digest of the content, {@code null} for a cached miss
+     * @param size          size on disk
+     * @param encoding      {@code identity} or the content coding the bytes on disk are stored with
+     * @param length        size of the content once decoded
+     * @param encodedSha256 digest of the bytes on disk when they are encoded
+     * @param crc           CRC-32 of the content, as zip entries need it, {@code null} when not known
+     */
+    record Sidecar(String sha256, long size, long lastModified, String encoding, long length, String encodedSha256,
+                   Long crc) {
+
+        static final String IDENTITY = "identity";
+        static final String UNKNOWN = "unknown";
+
+        static Sidecar identity(String sha256, Long crc, long size, long lastModified) {
+            return new Sidecar(sha256, size, lastModified, IDENTITY, size, sha256, crc);
+        }
+
+        static Sidecar unknown(long size, long lastModified) {
+            return new Sidecar(null, size, lastModified, UNKNOWN, size, null, null);
+        }
+
+        static Sidecar parse(String line) {
+            var parts = line.strip().split(" ");
+            var sha256 = parts[0];
+            var size = Long.parseLong(parts[1]);
+            var lastModified = Long.parseLong(parts[2]);
+            if (parts.length == 3) {
+                return identity(sha256, null, size, lastModified);
+            }
+            // Sidecars written before CRCs were recorded have six fields
+            var crc = parts.length > 6 ? Long.valueOf(Long.parseLong(parts[6], 16)) : null;
+            return new Sidecar(sha256, size, lastModified, parts[3], Long.parseLong(parts[4]), parts[5], crc);
+        }
+
+        String format() {
+            var line = "%s %d %d %s %d %s".formatted(sha256, size, lastModified, encoding, length, encodedSha256);
+            return crc == null ? line : "%s %08x".formatted(line, crc);
+        }
+
+        boolean encoded() {
+            return !IDENTITY.equals(encoding);
+        }
+
+        /**
+         * Whether the encoding of the bytes on disk could be told at all.
+         */
+        boolean known() {
+            return !UNKNOWN.equals(encoding);
+        }
+
+        boolean describes(FileMetadata metadata) {
+            return size == metadata.size() && lastModified == metadata.lastModified().toEpochMilli();
+        }
+    }
+
+    private final StorageLayout layout;
+    private final StorageLayout files;
+    private final Path staging;
+    private final FileCommitter fileCommitter;
+    private final ConcurrentHashMap<String, Sidecar> sidecars = new ConcurrentHashMap<>();
+
+    FileSidecars(StorageLayout layout, StorageLayout files, Path staging, FileCommitter fileCommitter) {
+        this.layout = layout;
+        this.files = files;
+        this.staging = staging;
+        this.fileCommitter = fileCommitter;
+    }
+
+    /**
+     * Commits like the files themselves, so a synced file never lands without the sidecar written before it.
+     */
+    void write(String name, Sidecar sidecar) throws IOException {
+        var target = layout.resolve(name);
+        fileCommitter.createDirectories(target.getParent());
+        var staged = Files.writeString(Files.createTempFile(staging, "sidecar-", ".tmp"), sidecar.format());
+        try {
+            fileCommitter.commit(staged, target);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+        sidecars.put(name, sidecar);
+    }
+
+    /**
+     * The sidecar describing the file as it is now; its digests are {@code null} when they are not known.
+     */
+    Sidecar get(FileMetadata metadata) {
+        var sidecar = sidecars.get(metadata.name());
+        return sidecar != null && sidecar.describes(metadata) ? sidecar : read(metadata);
+    }
+
+    /**
+     * The metadata a client should see: the decoded size for files stored encoded.
+     */
+    FileMetadata describe(FileMetadata metadata) {
+        var sidecar = get(metadata);
+        if (!sidecar.known() || !sidecar.encoded()) {
+            return metadata;
+        }
+        return new FileMetadata(metadata.name(), sidecar.length(), metadata.lastModified(), metadata.contentType());
+    }
+
+    private Sidecar read(FileMetadata metadata) {
+        var name = metadata.name();
+        Sidecar stored;
+        try {
+            stored = Sidecar.parse(Files.readString(layout.resolve(name)));
+        } catch (NoSuchFileException e) {
+            stored = null;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable sidecar of {}", name, e);
+            stored = null;
+        }
+        // Remembered for this version of the file, so listings do not look again
+        var sidecar = stored != null && stored.describes(metadata) ? stored : inspect(metadata, stored);
+        sidecars.put(name, sidecar);
+        return sidecar;
+    }
+
+    /**
+     * Tells from the file itself what it holds when no sidecar matches it: a touch, a restore that did not keep
+     * modification times or a crash before the sidecar reached the disk all leave one behind.
+     */
+    private Sidecar inspect(FileMetadata metadata, Sidecar stale) {
+        var name = metadata.name();
+        var size = metadata.size();
+        var lastModified = metadata.lastModified().toEpochMilli();
+        var file = files.resolve(name);
+        try {
+            switch (StoredGzip.probe(file)) {
+                case STORED -> {
+                    return rebuild(metadata, file);
+                }
+                case FOREIGN -> {
+                    if (stale != null && stale.encoded()) {
+                        // Encoded before stored files were marked, or replaced by a client's own gzip
+                        log.warn("Cannot tell whether {} is stored encoded; refusing to serve it", name);
+                        return Sidecar.unknown(size, lastModified);
+                    }
+                }
+                case PLAIN -> {
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted meanwhile; there is nothing left to serve wrongly
+        } catch (IOException e) {
+            log.warn("Could not inspect {}; refusing to serve it", name, e);
+            return Sidecar.unknown(size, lastModified);
+        }
+        return Sidecar.identity(null, null, size, lastModified);
+    }
+
+    /**
+     * Reads a file the service encoded once to record its digests, CRC and decoded length again.
+     */
+    private Sidecar rebuild(FileMetadata metadata, Path file) throws IOException {
+        var messageDigest = messageDigest();
+        var encodedDigest = messageDigest();
+        var crc = new CRC32();
+        long length;
+        try (var encoded = new DigestInputStream(Files.newInputStream(file), encodedDigest);
+             var decoded = new CheckedInputStream(
+                     new DigestInputStream(new GZIPInputStream(encoded, 64 * 1024), messageDigest), crc)) {
+            length = decoded.transferTo(OutputStream.nullOutputStream());
+            encoded.transferTo(OutputStream.nullOutputStream());
+        }
+        var lastModified = metadata.lastModified().toEpochMilli();
+        if (Files.size(file) != metadata.size() || Files.getLastModifiedTime(file).toMillis() != lastModified) {
+            throw new IOException("%s changed while it was read".formatted(file));
+        }
+        var sidecar = new Sidecar(HexFormat.of().formatHex(messageDigest.digest()), metadata.size(), lastModified,
+                GzipFileResource.ENCODING, length, HexFormat.of().formatHex(encodedDigest.digest()), crc.getValue());
+        write(metadata.name(), sidecar);
+        log.info("Rebuilt the sidecar of {}", metadata.name());
+        return sidecar;
+    }
+
+    /**
+     * Drops the sidecars of files that no longer exist. Recent sidecars are kept since their file
+     * may be about to be renamed into place.
+     */
+    void prune() throws IOException {
+        var cutoff = Instant.now().minus(PRUNE_GRACE);
+        layout.walk((path, attributes) -> {
+            var name = path.getFileName().toString();
+            if (!Files.exists(files.resolve(name)) && attributes.lastModifiedTime().toInstant().isBefore(cutoff)) {
+                Files.deleteIfExists(path);
+                sidecars.remove(name);
+            }
+        });
+    }
+
+    void clear() {
+        sidecars.clear();
+    }
+
+    static MessageDigest messageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
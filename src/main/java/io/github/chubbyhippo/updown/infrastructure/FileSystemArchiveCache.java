@@ -0,0 +1,214 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.github.chubbyhippo.updown.domain.ArchiveCache;
+import io.github.chubbyhippo.updown.domain.FileStoredEvent;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps archives built for {@code POST /zip} on disk, so the same files in the same versions are zipped once. An
+ * archive is spooled while it streams to the first client and only kept if it was written in full and none of
+ * its files was stored again meanwhile.
+ */
+@Component
+public class FileSystemArchiveCache implements ArchiveCache, MeterBinder {
+
+    static final String CACHE_NAME = "zip-archives";
+
+    private static final Logger log = LoggerFactory.getLogger(FileSystemArchiveCache.class);
+
+    private final ZipCacheProperties properties;
+    private final Path location;
+    private final Cache<String, CachedArchive> cache;
+    private final Set<Build> builds = ConcurrentHashMap.newKeySet();
+
+    public FileSystemArchiveCache(ZipCacheProperties properties) {
+        this.properties = properties;
+        this.location = Paths.get(properties.location());
+        this.cache = Caffeine.newBuilder()
+                // Weighed in kilobytes, so archives beyond 2GB still fit an int
+                .maximumWeight(Math.max(properties.maxSize().toKilobytes(), 1))
+                .weigher((String key, CachedArchive archive) -> (int) Math.min(archive.size() / 1024 + 1,
+                        Integer.MAX_VALUE))
+                .removalListener((String key, CachedArchive archive, RemovalCause cause) -> {
+                    if (archive != null) {
+                        deleteQuietly(archive.path());
+                    }
+                })
+                .recordStats()
+                .build();
+        if (properties.enabled()) {
+            try {
+                FileSystemUtils.deleteRecursively(location);
+            } catch (IOException e) {
+                throw new StorageException("Could not clear zip cache", e);
+            }
+        }
+    }
+
+    private record CachedArchive(Path path, long size, List<String> filenames) {
+    }
+
+    private record Build(List<String> filenames, AtomicBoolean stale) {
+    }
+
+    @Override
+    public boolean enabled() {
+        return properties.enabled();
+    }
+
+    @Override
+    public StreamingResponseBody get(String key, List<String> filenames, StreamingResponseBody builder) {
+        var cached = cache.getIfPresent(key);
+        if (cached == null) {
+            return outputStream -> build(key, filenames, builder, outputStream);
+        }
+        return outputStream -> {
+            try {
+                Files.copy(cached.path(), outputStream);
+            } catch (NoSuchFileException e) {
+                // Evicted between the lookup and the copy, before anything was written
+                build(key, filenames, builder, outputStream);
+            }
+        };
+    }
+
+    private void build(String key, List<String> filenames, StreamingResponseBody builder,
+                       OutputStream outputStream) throws IOException {
+        var build = new Build(List.copyOf(filenames), new AtomicBoolean());
+        builds.add(build);
+        Path spool = null;
+        try {
+            Files.createDirectories(location);
+            spool = Files.createTempFile(location, key, ".zip");
+            var tee = new TeeOutputStream(outputStream, Files.newOutputStream(spool));
+            try (tee) {
+                builder.writeTo(tee);
+                tee.flush();
+            }
+            if (!tee.spoolFailed && !build.stale().get()) {
+                cache.put(key, new CachedArchive(spool, Files.size(spool), build.filenames()));
+                spool = null;
+                // A member stored between the check and the put was missed by the listener
+                if (build.stale().get()) {
+                    cache.invalidate(key);
+                }
+            }
+        } finally {
+            builds.remove(build);
+            if (spool != null) {
+                deleteQuietly(spool);
+            }
+        }
+    }
+
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        cache.asMap().values().removeIf(archive -> archive.filenames().contains(event.filename()));
+        builds.stream()
+                .filter(build -> build.filenames().contains(event.filename()))
+                .forEach(build -> build.stale().set(true));
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cached archive {}", path, e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME, Tags.empty());
+        Gauge.builder("storage.zip.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Share of archive requests served from the cache")
+                .register(registry);
+        Gauge.builder("storage.zip.cache.size", cache, c -> c.asMap().values().stream()
+                        .mapToLong(CachedArchive::size)
+                        .sum())
+                .description("Bytes of cached archives")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    /**
+     * Copies what the client is sent into the spool file. The client is served even when the spool cannot be
+     * written; the archive is just not cached then.
+     */
+    private static final class TeeOutputStream extends OutputStream {
+
+        private final OutputStream client;
+        private final OutputStream spool;
+        private boolean spoolFailed;
+
+        private TeeOutputStream(OutputStream client, OutputStream spool) {
+            this.client = client;
+            this.spool = spool;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            client.write(bytes, offset, length);
+            if (!spoolFailed) {
+                try {
+                    spool.write(bytes, offset, length);
+                } catch (IOException e) {
+                    spoolFailed = true;
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            client.flush();
+            if (!spoolFailed) {
+                try {
+                    spool.flush();
+                } catch (IOException e) {
+                    spoolFailed = true;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The client stream belongs to the container
+            try {
+                spool.close();
+            } catch (IOException e) {
+                spoolFailed = true;
+            }
+        }
+    }
+}
@@ -1,127 +1,454 @@
 package io.github.chubbyhippo.updown.infrastructure;
 
 import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import io.github.chubbyhippo.updown.domain.FileStoredEvent;
+import io.github.chubbyhippo.updown.domain.InvalidFilenameException;
+import io.github.chubbyhippo.updown.domain.StagedFile;
 import io.github.chubbyhippo.updown.domain.StorageException;
 import io.github.chubbyhippo.updown.domain.StorageFileNotFoundException;
 import io.github.chubbyhippo.updown.domain.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 @Service
-public class FileSystemStorageService implements StorageService {
+@ConditionalOnProperty(name = "storage.backend", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemStorageService implements StorageService, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSystemStorageService.class);
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final int LOCK_STRIPES = 64;
+    // Directories the service keeps next to the files in the root
+    private static final Set<String> RESERVED_NAMES = Set.of(".staging", ".index", ".digests");
 
     private final Path rootLocation;
+    private final Path staging;
+    private final StorageLayout layout;
+    private final ZipArchiveEngine zipArchiveEngine;
+    private final FileCommitter fileCommitter;
+    private final FileMetadataIndex index;
+    private final FileSidecars sidecars;
+    private final CompressionProperties compression;
+    private final ApplicationEventPublisher eventPublisher;
+    // Commits of one name are serialized, so the sidecar of one upload never lands next to the file of another
+    private final ReentrantLock[] filenameLocks = new ReentrantLock[LOCK_STRIPES];
 
-    public FileSystemStorageService(StorageProperties properties) {
+    public FileSystemStorageService(StorageProperties properties, ZipArchiveEngine zipArchiveEngine,
+                                    FileCommitter fileCommitter, CompressionProperties compression,
+                                    LayoutProperties layoutProperties, ApplicationEventPublisher eventPublisher) {
 
         if (properties.location().trim().isEmpty()) {
             throw new StorageException("File upload location can not be Empty.");
         }
 
         this.rootLocation = Paths.get(properties.location());
+        // Inside the root so a commit is a rename on the same file store; the index only lists regular files
+        this.staging = rootLocation.resolve(".staging");
+        this.zipArchiveEngine = zipArchiveEngine;
+        this.fileCommitter = fileCommitter;
+        this.layout = StorageLayout.of(rootLocation, layoutProperties);
+        this.index = new FileMetadataIndex(rootLocation, layout);
+        this.sidecars = new FileSidecars(layout.relocate(rootLocation.resolve(".digests")), layout, staging,
+                fileCommitter);
+        this.compression = compression;
+        this.eventPublisher = eventPublisher;
+        Arrays.setAll(filenameLocks, i -> new ReentrantLock());
     }
 
     public void init() throws StorageException {
         try {
             Files.createDirectories(rootLocation);
+            FileSystemUtils.deleteRecursively(staging);
+            Files.createDirectories(staging);
+            index.reconcile();
+            index.openJournal();
+            index.snapshot();
+            index.watch();
         } catch (IOException e) {
             throw new StorageException("Could not initialize storage", e);
         }
     }
 
+    /**
+     * Restores the index from its snapshot and journal rather than scanning the root, then reconciles it on a
+     * background thread. Without a snapshot this scans like {@link #init()}.
+     */
     @Override
-    public void store(MultipartFile file) throws EmptyFileException, StorageException {
+    public void restore() throws StorageException {
+        long restored;
         try {
-            if (file.isEmpty()) {
-                throw new EmptyFileException("Failed to store empty file.");
-            }
-            var path = rootLocation.resolve(
-                            Path.of(Objects.requireNonNull(file.getOriginalFilename())))
-                    .normalize().toAbsolutePath();
-            if (!path.getParent().equals(rootLocation.toAbsolutePath())) {
-                // This is a security check
-                throw new StorageException(
-                        "Cannot store file outside current directory.");
-            }
-            try (var inputStream = file.getInputStream()) {
-                Files.copy(inputStream, path, StandardCopyOption.REPLACE_EXISTING);
+            Files.createDirectories(rootLocation);
+            FileSystemUtils.deleteRecursively(staging);
+            Files.createDirectories(staging);
+            restored = index.load();
+            index.openJournal();
+            index.watch();
+        } catch (IOException e) {
+            throw new StorageException("Could not restore storage", e);
+        }
+        if (restored < 0) {
+            log.info("No index snapshot under {}, scanned the stored files", rootLocation);
+            reconcile();
+            return;
+        }
+        log.info("Restored {} index entries under {}, reconciling in the background", restored, rootLocation);
+        Thread.ofVirtual().name("storage-reconcile").start(() -> {
+            var started = System.nanoTime();
+            try {
+                reconcile();
+                log.info("Reconciled the restored index in {} ms", (System.nanoTime() - started) / 1_000_000);
+            } catch (StorageException e) {
+                log.warn("Could not reconcile the restored index; the scheduled reconcile retries", e);
             }
+        });
+    }
+
+    @Override
+    public void store(MultipartFile file) throws EmptyFileException, StorageException {
+        if (file.isEmpty()) {
+            throw new EmptyFileException("Failed to store empty file.");
+        }
+        var filename = Objects.requireNonNull(file.getOriginalFilename());
+        try (var inputStream = file.getInputStream()) {
+            store(filename, inputStream);
         } catch (IOException e) {
             throw new StorageException("Failed to store file.", e);
         }
     }
 
-    @SuppressWarnings("resource")
     @Override
-    public Stream<Path> loadAll() throws StorageException {
-        var directoryTraversalDepth = 1;
+    public void store(String filename, InputStream inputStream) throws EmptyFileException, StorageException {
+        // Staged without the name's lock, so a slow upload never holds up others; the commit takes it
+        var staged = stage(filename, inputStream);
         try {
-            return Files.walk(rootLocation, directoryTraversalDepth)
-                    .filter(path -> !path.equals(rootLocation))
-                    .map(rootLocation::relativize);
-        } catch (IOException e) {
-            throw new StorageException("Failed to read stored files", e);
+            staged.commit();
+        } finally {
+            staged.discard();
         }
+    }
 
+    private ReentrantLock filenameLock(String name) {
+        return filenameLocks[Math.floorMod(name.hashCode(), LOCK_STRIPES)];
     }
 
     @Override
-    public Resource loadAsResource(String filename) throws StorageFileNotFoundException {
+    public StagedFile stage(String filename, InputStream inputStream) throws EmptyFileException, StorageException {
+        var path = resolveTarget(filename);
+        Path staged = null;
         try {
-            var path = rootLocation.resolve(filename);
-            var resource = new UrlResource(path.toUri());
-            if (resource.exists() || resource.isReadable()) {
-                return resource;
-            } else {
-                throw new StorageFileNotFoundException(
-                        "Could not read file: %s".formatted(filename));
-
+            Files.createDirectories(staging);
+            staged = Files.createTempFile(staging, "upload-", ".tmp");
+            var head = compression.enabled()
+                    ? inputStream.readNBytes((int) compression.sampleSize().toBytes())
+                    : new byte[0];
+            var compress = worthCompressing(path.getFileName().toString(), head);
+            var content = new SequenceInputStream(new ByteArrayInputStream(head), inputStream);
+            // Hashed on the way to disk, so the digests cost no second read
+            var messageDigest = FileSidecars.messageDigest();
+            var encodedDigest = FileSidecars.messageDigest();
+            var crc = new CRC32();
+            long length;
+            try (var outputStream = Files.newOutputStream(staged)) {
+                var digestInputStream = new CheckedInputStream(new DigestInputStream(content, messageDigest), crc);
+                if (compress) {
+                    try (var gzip = StoredGzip.output(new DigestOutputStream(outputStream, encodedDigest),
+                            compression.level(), GZIP_BUFFER_SIZE)) {
+                        length = digestInputStream.transferTo(gzip);
+                    }
+                } else {
+                    length = digestInputStream.transferTo(outputStream);
+                }
+            }
+            if (length == 0) {
+                throw new EmptyFileException("Failed to store empty file.");
             }
-        } catch (MalformedURLException e) {
-            throw new StorageFileNotFoundException("Could not read file: %s".formatted(filename), e);
+            var sha256 = HexFormat.of().formatHex(messageDigest.digest());
+            var stagedUpload = new StagedUpload(path, staged, length, sha256, crc.getValue(),
+                    compress ? HexFormat.of().formatHex(encodedDigest.digest()) : null);
+            staged = null;
+            return stagedUpload;
+        } catch (IOException e) {
+            throw new StorageException("Failed to store file.", e);
+        } finally {
+            deleteStaged(staged);
         }
     }
 
-    @Override
-    public StreamingResponseBody zipFiles(Stream<String> filenames) {
-        return outputStream -> {
-            try (var zos = new ZipOutputStream(outputStream)) {
-                filenames.forEach(filename -> {
-                    var filePath = rootLocation.resolve(filename);
-                    try (var fis = Files.newInputStream(filePath)) {
-                        zos.putNextEntry(new ZipEntry(filename));
-                        var buffer = new byte[4096];
-                        int len;
-                        while ((len = fis.read(buffer)) != -1) {
-                            zos.write(buffer, 0, len);
-                        }
-                        zos.closeEntry();
-                    } catch (IOException e) {
-                        throw new StorageException("Failed to read file: %s".formatted(filename), e);
+    private final class StagedUpload implements StagedFile {
+
+        private final Path target;
+        private final Path staged;
+        private final long size;
+        private final String sha256;
+        private final long crc;
+        private final String gzipSha256;
+        private FileMetadata committed;
+        private Path previous;
+        private FileSidecars.Sidecar previousSidecar;
+
+        private StagedUpload(Path target, Path staged, long size, String sha256, long crc, String gzipSha256) {
+            this.target = target;
+            this.staged = staged;
+            this.size = size;
+            this.sha256 = sha256;
+            this.crc = crc;
+            this.gzipSha256 = gzipSha256;
+        }
+
+        @Override
+        public String filename() {
+            return target.getFileName().toString();
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void commit() throws StorageException {
+            var lock = filenameLock(filename());
+            lock.lock();
+            try {
+                var existing = index.get(filename());
+                if (existing.isPresent()) {
+                    previousSidecar = sidecars.get(existing.get());
+                    previous = keep(target);
+                }
+                // The rename keeps the modification time, so the sidecar matches the moment the file lands
+                var lastModified = Files.getLastModifiedTime(staged).toMillis();
+                sidecars.write(filename(), gzipSha256 == null
+                        ? FileSidecars.Sidecar.identity(sha256, crc, size, lastModified)
+                        : new FileSidecars.Sidecar(sha256, Files.size(staged), lastModified,
+                        GzipFileResource.ENCODING, size, gzipSha256, crc));
+                fileCommitter.createDirectories(target.getParent());
+                fileCommitter.commit(staged, target);
+                committed = index.refresh(filename());
+            } catch (IOException e) {
+                throw new StorageException("Failed to store file.", e);
+            } finally {
+                lock.unlock();
+            }
+            eventPublisher.publishEvent(new FileStoredEvent(filename()));
+        }
+
+        @Override
+        public void rollback() throws StorageException {
+            var lock = filenameLock(filename());
+            lock.lock();
+            try {
+                if (committed == null) {
+                    return;
+                }
+                var current = index.get(filename()).orElse(null);
+                if (!committed.equals(current)) {
+                    // Stored again since; that content is newer than what this commit replaced
+                    committed = null;
+                    return;
+                }
+                if (previous != null) {
+                    fileCommitter.commit(previous, target);
+                    previous = null;
+                    if (previousSidecar != null && previousSidecar.sha256() != null) {
+                        sidecars.write(filename(), previousSidecar);
                     }
-                });
+                } else {
+                    Files.deleteIfExists(target);
+                }
+                committed = null;
+                index.refresh(filename());
+            } catch (IOException e) {
+                throw new StorageException("Failed to roll back file.", e);
+            } finally {
+                lock.unlock();
             }
-        };
+            eventPublisher.publishEvent(new FileStoredEvent(filename()));
+        }
+
+        @Override
+        public void discard() {
+            deleteStaged(staged);
+            deleteStaged(previous);
+        }
+    }
+
+    /**
+     * A second name in staging for the file at {@code target}, so it survives being replaced by an atomic rename.
+     */
+    private Path keep(Path target) throws IOException {
+        var kept = staging.resolve("previous-%s.tmp".formatted(UUID.randomUUID()));
+        try {
+            return Files.createLink(kept, target);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // No hard links on this file store
+            return Files.copy(target, kept, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private boolean worthCompressing(String filename, byte[] head) {
+        return compression.enabled()
+                && head.length >= compression.minSize().toBytes()
+                && !CompressedFormats.isCompressed(filename, head)
+                && CompressedFormats.sampleRatio(head, head.length) <= compression.maxRatio();
+    }
+
+    private static void deleteStaged(Path staged) {
+        if (staged == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(staged);
+        } catch (IOException e) {
+            log.warn("Could not delete staged file {}", staged, e);
+        }
+    }
+
+    @Override
+    public void validateFilename(String filename) throws InvalidFilenameException {
+        resolveTarget(filename);
+    }
+
+    private Path resolveTarget(String filename) throws InvalidFilenameException {
+        if (filename == null || filename.isBlank()) {
+            throw new InvalidFilenameException("Filename is required.");
+        }
+        var path = rootLocation.resolve(Path.of(filename))
+                .normalize().toAbsolutePath();
+        if (!path.getParent().equals(rootLocation.toAbsolutePath())) {
+            // This is a security check
+            throw new InvalidFilenameException(
+                    "Cannot store file outside current directory.");
+        }
+        var name = path.getFileName().toString();
+        if (RESERVED_NAMES.contains(name)) {
+            throw new InvalidFilenameException("Cannot store file under a reserved name: %s".formatted(name));
+        }
+        return layout.resolve(name);
+    }
+
+    @Override
+    public Stream<Path> loadAll() throws StorageException {
+        return index.stream().map(metadata -> Path.of(metadata.name()));
+    }
+
+    @Override
+    public Stream<FileMetadata> loadMetadata(String from) throws StorageException {
+        return index.streamFrom(from).map(sidecars::describe);
+    }
+
+    @Override
+    public Resource loadAsResource(String filename) throws StorageFileNotFoundException {
+        var metadata = index.get(filename)
+                .orElseThrow(() -> new StorageFileNotFoundException("Could not read file: %s".formatted(filename)));
+        var path = layout.resolve(metadata.name());
+        var sidecar = sidecar(metadata);
+        if (sidecar.encoded()) {
+            return new GzipFileResource(path, metadata.name(), sidecar.length(),
+                    metadata.lastModified().toEpochMilli(), sidecar.sha256(), sidecar.encodedSha256());
+        }
+        // FileSystemResource reads through a FileChannel, so range requests seek instead of skipping bytes
+        return new DigestedFileResource(path, metadata.name(), sidecar.sha256());
+    }
+
+    @Override
+    public String version(String filename) throws StorageFileNotFoundException {
+        var metadata = index.get(filename)
+                .orElseThrow(() -> new StorageFileNotFoundException("Could not read file: %s".formatted(filename)));
+        var sha256 = sidecars.get(metadata).sha256();
+        return sha256 != null ? sha256 : "%d:%d".formatted(metadata.size(), metadata.lastModified().toEpochMilli());
+    }
+
+    @Override
+    public StreamingResponseBody zipFiles(Stream<String> filenames, Integer level) {
+        return outputStream -> zipArchiveEngine.write(filenames.map(this::zipSource), outputStream, level);
+    }
+
+    @Override
+    public Resource storedZip(List<String> filenames) {
+        return zipArchiveEngine.storedArchive(filenames.stream().map(this::zipSource).toList());
+    }
+
+    private ZipArchiveEngine.Source zipSource(String filename) {
+        var metadata = index.get(filename)
+                .orElseThrow(() -> new StorageFileNotFoundException("Could not read file: %s".formatted(filename)));
+        var sidecar = sidecar(metadata);
+        return new ZipArchiveEngine.Source(filename, layout.resolve(metadata.name()), sidecar.length(),
+                metadata.lastModified().toEpochMilli(), sidecar.encoded(), sidecar.crc());
+    }
+
+    private FileSidecars.Sidecar sidecar(FileMetadata metadata) {
+        var sidecar = sidecars.get(metadata);
+        if (!sidecar.known()) {
+            throw new StorageException("Cannot tell how %s is stored.".formatted(metadata.name()));
+        }
+        return sidecar;
+    }
+
+    /**
+     * Picks up changes made to the storage root behind the service's back that the watcher missed.
+     */
+    // Startup already reconciles, in init() or behind restore()
+    @Scheduled(fixedDelayString = "${storage.index.reconcile-interval:PT5M}",
+            initialDelayString = "${storage.index.reconcile-interval:PT5M}")
+    public void reconcile() throws StorageException {
+        try {
+            index.reconcile();
+            index.snapshot();
+            sidecars.prune();
+        } catch (IOException e) {
+            throw new StorageException("Failed to read stored files", e);
+        }
     }
 
     @Override
     public void deleteAll() {
         FileSystemUtils.deleteRecursively(rootLocation.toFile());
+        index.clear();
+        sidecars.clear();
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        try {
+            index.snapshot();
+        } finally {
+            index.close();
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,293 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.UploadConflictException;
+import io.github.chubbyhippo.updown.domain.UploadSession;
+import io.github.chubbyhippo.updown.domain.UploadSessionNotFoundException;
+import io.github.chubbyhippo.updown.domain.UploadSessionStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Component
+public class FileSystemUploadSessionStore implements UploadSessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSystemUploadSessionStore.class);
+    private static final String DATA_FILE = "data";
+    private static final String SESSION_FILE = "session.json";
+    private static final int CHUNK_BUFFER_SIZE = 64 * 1024;
+
+    private final Path location;
+    private final UploadProperties properties;
+    private final JsonMapper jsonMapper;
+    private final ConcurrentHashMap<String, Activity> activities = new ConcurrentHashMap<>();
+
+    /**
+     * What is going on with a session in this process, guarded by its lock.
+     */
+    private static final class Activity {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int writers;
+        private boolean claimed;
+    }
+
+    public FileSystemUploadSessionStore(UploadProperties properties, JsonMapper jsonMapper) {
+        this.location = Paths.get(properties.location());
+        this.properties = properties;
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    public UploadSession create(String filename, long length) throws StorageException {
+        var session = UploadSession.create(UUID.randomUUID().toString(), filename, length, Instant.now());
+        try {
+            var directory = Files.createDirectories(location.resolve(session.id()));
+            Files.createFile(directory.resolve(DATA_FILE));
+            save(session);
+        } catch (IOException e) {
+            throw new StorageException("Could not create upload session", e);
+        }
+        return session;
+    }
+
+    @Override
+    public UploadSession get(String id) throws UploadSessionNotFoundException {
+        var sessionFile = directory(id).resolve(SESSION_FILE);
+        if (!Files.isRegularFile(sessionFile)) {
+            throw new UploadSessionNotFoundException("Upload session not found: %s".formatted(id));
+        }
+        try {
+            return jsonMapper.readValue(sessionFile, UploadSession.class);
+        } catch (JacksonException e) {
+            throw new StorageException("Could not read upload session: %s".formatted(id), e);
+        }
+    }
+
+    @Override
+    public UploadSession write(String id, long offset, InputStream inputStream)
+            throws UploadSessionNotFoundException, UploadConflictException {
+        var activity = activity(id);
+        UploadSession session;
+        activity.lock.lock();
+        try {
+            if (activity.claimed) {
+                throw new UploadConflictException("Upload is being completed or aborted.");
+            }
+            session = get(id);
+            activity.writers++;
+        } finally {
+            activity.lock.unlock();
+        }
+        try {
+            return write(session, offset, inputStream);
+        } finally {
+            activity.lock.lock();
+            try {
+                activity.writers--;
+            } finally {
+                activity.lock.unlock();
+            }
+        }
+    }
+
+    private UploadSession write(UploadSession session, long offset, InputStream inputStream) {
+        var id = session.id();
+        if (offset < 0 || offset > session.length()) {
+            throw new UploadConflictException(
+                    "Offset %d is outside the upload length %d.".formatted(offset, session.length()));
+        }
+        var position = offset;
+        // Chunks for the same session may be written in parallel; positional writes don't share channel state
+        try (var channel = FileChannel.open(directory(id).resolve(DATA_FILE), StandardOpenOption.WRITE)) {
+            var buffer = new byte[CHUNK_BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                if (position + read > session.length()) {
+                    throw new UploadConflictException(
+                            "Chunk exceeds the upload length %d.".formatted(session.length()));
+                }
+                var byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                while (byteBuffer.hasRemaining()) {
+                    position += channel.write(byteBuffer, position);
+                }
+            }
+        } catch (UploadConflictException e) {
+            record(id, offset, position);
+            throw e;
+        } catch (IOException e) {
+            // Whatever arrived before the connection dropped is kept, so the client resumes from there
+            record(id, offset, position);
+            throw new StorageException("Failed to write upload chunk.", e);
+        }
+        return record(id, offset, position);
+    }
+
+    private UploadSession record(String id, long start, long end) {
+        var activity = activity(id);
+        activity.lock.lock();
+        try {
+            var session = get(id);
+            if (end > start) {
+                session = session.withReceived(start, end, Instant.now());
+                save(session);
+            }
+            return session;
+        } finally {
+            activity.lock.unlock();
+        }
+    }
+
+    @Override
+    public UploadSession claim(String id) throws UploadSessionNotFoundException, UploadConflictException {
+        var activity = activity(id);
+        activity.lock.lock();
+        try {
+            var session = get(id);
+            if (activity.claimed) {
+                throw new UploadConflictException("Upload is being completed or aborted.");
+            }
+            if (activity.writers > 0) {
+                throw new UploadConflictException("Chunks are still being written.");
+            }
+            activity.claimed = true;
+            return session;
+        } finally {
+            activity.lock.unlock();
+        }
+    }
+
+    @Override
+    public void release(String id) {
+        var activity = activities.get(key(id));
+        if (activity == null) {
+            return;
+        }
+        activity.lock.lock();
+        try {
+            activity.claimed = false;
+        } finally {
+            activity.lock.unlock();
+        }
+    }
+
+    private Activity activity(String id) {
+        var key = key(id);
+        // Only sessions that exist get an entry, which delete() removes again
+        get(key);
+        return activities.computeIfAbsent(key, ignored -> new Activity());
+    }
+
+    @Override
+    public InputStream openData(String id) throws UploadSessionNotFoundException {
+        get(id);
+        try {
+            return Files.newInputStream(directory(id).resolve(DATA_FILE));
+        } catch (IOException e) {
+            throw new StorageException("Could not read upload data: %s".formatted(id), e);
+        }
+    }
+
+    @Override
+    public void delete(String id) throws StorageException {
+        var key = key(id);
+        try {
+            FileSystemUtils.deleteRecursively(location.resolve(key));
+        } catch (IOException e) {
+            throw new StorageException("Could not delete upload session: %s".formatted(id), e);
+        } finally {
+            activities.remove(key);
+        }
+    }
+
+    @Override
+    public int purgeIdle(Duration maxIdle) throws StorageException {
+        if (!Files.isDirectory(location)) {
+            return 0;
+        }
+        var cutoff = Instant.now().minus(maxIdle);
+        var purged = 0;
+        try (var directories = Files.list(location)) {
+            for (var directory : directories.toList()) {
+                var id = directory.getFileName().toString();
+                var sessionFile = directory.resolve(SESSION_FILE);
+                var lastActivity = Files.isRegularFile(sessionFile)
+                        ? Files.getLastModifiedTime(sessionFile).toInstant()
+                        : Files.getLastModifiedTime(directory).toInstant();
+                if (lastActivity.isBefore(cutoff) && purge(id)) {
+                    purged++;
+                }
+            }
+        } catch (IOException e) {
+            throw new StorageException("Could not purge upload sessions", e);
+        }
+        return purged;
+    }
+
+    private boolean purge(String id) {
+        // A slow chunk or a completion in progress keeps an old session alive
+        var activity = activities.computeIfAbsent(key(id), ignored -> new Activity());
+        activity.lock.lock();
+        try {
+            if (activity.writers > 0 || activity.claimed) {
+                return false;
+            }
+            delete(id);
+            return true;
+        } finally {
+            activity.lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.uploads.cleanup-interval:PT10M}")
+    void purgeIdleSessions() {
+        var purged = purgeIdle(properties.maxIdle());
+        if (purged > 0) {
+            log.info("Purged {} idle upload sessions", purged);
+        }
+    }
+
+    private void save(UploadSession session) {
+        var directory = directory(session.id());
+        var temporary = directory.resolve(SESSION_FILE + ".tmp");
+        try {
+            jsonMapper.writeValue(temporary, session);
+            Files.move(temporary, directory.resolve(SESSION_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | JacksonException e) {
+            throw new StorageException("Could not save upload session: %s".formatted(session.id()), e);
+        }
+    }
+
+    private Path directory(String id) {
+        return location.resolve(key(id));
+    }
+
+    private static String key(String id) {
+        try {
+            // Session ids are UUIDs; parsing them keeps arbitrary path segments out of the uploads directory and
+            // gives every spelling of an id the same activity
+            return UUID.fromString(id).toString();
+        } catch (IllegalArgumentException e) {
+            throw new UploadSessionNotFoundException("Upload session not found: %s".formatted(id));
+        }
+    }
+}
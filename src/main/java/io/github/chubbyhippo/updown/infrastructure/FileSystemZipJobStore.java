@@ -0,0 +1,205 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.ZipJob;
+import io.github.chubbyhippo.updown.domain.ZipJobNotFoundException;
+import io.github.chubbyhippo.updown.domain.ZipJobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One directory per job holding {@code job.json} and, once finished, {@code archive.zip}. Finished archives form
+ * a cache bounded by {@link ZipJobCacheProperties#maxSize()}, evicted least recently used first.
+ */
+@Component
+public class FileSystemZipJobStore implements ZipJobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSystemZipJobStore.class);
+    private static final String JOB_FILE = "job.json";
+    private static final String ARCHIVE_FILE = "archive.zip";
+    private static final String PARTIAL_ARCHIVE_FILE = "archive.zip.part";
+
+    private final Path location;
+    private final ZipJobCacheProperties properties;
+    private final JsonMapper jsonMapper;
+
+    public FileSystemZipJobStore(ZipJobCacheProperties properties, JsonMapper jsonMapper) {
+        this.location = Paths.get(properties.location());
+        this.properties = properties;
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    public ZipJob create(List<String> filenames, Integer level, long totalBytes) throws StorageException {
+        var job = ZipJob.create(UUID.randomUUID().toString(), filenames, level, totalBytes, Instant.now());
+        try {
+            Files.createDirectories(location.resolve(job.id()));
+        } catch (IOException e) {
+            throw new StorageException("Could not create zip job", e);
+        }
+        save(job);
+        return job;
+    }
+
+    @Override
+    public ZipJob get(String id) throws ZipJobNotFoundException {
+        var jobFile = directory(id).resolve(JOB_FILE);
+        if (!Files.isRegularFile(jobFile)) {
+            throw new ZipJobNotFoundException("Zip job not found: %s".formatted(id));
+        }
+        try {
+            return jsonMapper.readValue(jobFile, ZipJob.class);
+        } catch (JacksonException e) {
+            throw new StorageException("Could not read zip job: %s".formatted(id), e);
+        }
+    }
+
+    @Override
+    public List<ZipJob> list() throws StorageException {
+        if (!Files.isDirectory(location)) {
+            return List.of();
+        }
+        var jobs = new ArrayList<ZipJob>();
+        try (var directories = Files.list(location)) {
+            for (var directory : directories.toList()) {
+                try {
+                    jobs.add(get(directory.getFileName().toString()));
+                } catch (ZipJobNotFoundException e) {
+                    // Deleted meanwhile, or not a job directory
+                }
+            }
+        } catch (IOException e) {
+            throw new StorageException("Could not list zip jobs", e);
+        }
+        return jobs;
+    }
+
+    @Override
+    public void save(ZipJob job) throws StorageException {
+        var directory = directory(job.id());
+        try {
+            // A download touching the job may save it while the job itself does
+            var temporary = Files.createTempFile(directory, JOB_FILE, ".tmp");
+            jsonMapper.writeValue(temporary, job);
+            Files.move(temporary, directory.resolve(JOB_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | JacksonException e) {
+            throw new StorageException("Could not save zip job: %s".formatted(job.id()), e);
+        }
+    }
+
+    @Override
+    public OutputStream openArchive(String id) throws ZipJobNotFoundException {
+        get(id);
+        try {
+            return Files.newOutputStream(directory(id).resolve(PARTIAL_ARCHIVE_FILE));
+        } catch (IOException e) {
+            throw new StorageException("Could not write zip archive: %s".formatted(id), e);
+        }
+    }
+
+    @Override
+    public long commitArchive(String id) throws ZipJobNotFoundException {
+        get(id);
+        var archive = directory(id).resolve(ARCHIVE_FILE);
+        long size;
+        try {
+            Files.move(directory(id).resolve(PARTIAL_ARCHIVE_FILE), archive,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            size = Files.size(archive);
+        } catch (IOException e) {
+            throw new StorageException("Could not commit zip archive: %s".formatted(id), e);
+        }
+        evict();
+        return size;
+    }
+
+    @Override
+    public Resource loadArchive(String id) throws ZipJobNotFoundException {
+        var archive = directory(id).resolve(ARCHIVE_FILE);
+        if (!Files.isRegularFile(archive)) {
+            throw new ZipJobNotFoundException("Zip archive not found: %s".formatted(id));
+        }
+        return new FileSystemResource(archive);
+    }
+
+    @Override
+    public void delete(String id) throws StorageException {
+        try {
+            FileSystemUtils.deleteRecursively(directory(id));
+        } catch (IOException e) {
+            throw new StorageException("Could not delete zip job: %s".formatted(id), e);
+        }
+    }
+
+    /**
+     * Removes finished jobs idle for longer than the maximum, then the least recently used archives until the
+     * rest fit the maximum size. Jobs still queued or running are never removed.
+     *
+     * @return how many jobs were removed
+     */
+    synchronized int evict() throws StorageException {
+        var cutoff = Instant.now().minus(properties.maxIdle());
+        var jobs = list();
+        // An archive just committed counts before its job is saved as done
+        var total = jobs.stream().mapToLong(job -> archiveSize(job.id())).sum();
+        var finished = jobs.stream()
+                .filter(ZipJob::finished)
+                .sorted(Comparator.comparing(ZipJob::updatedAt))
+                .toList();
+        var evicted = 0;
+        for (var job : finished) {
+            var size = archiveSize(job.id());
+            if (job.updatedAt().isBefore(cutoff) || (size > 0 && total > properties.maxSize().toBytes())) {
+                total -= size;
+                delete(job.id());
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.zip-jobs.cache.cleanup-interval:PT10M}")
+    void evictArchives() {
+        var evicted = evict();
+        if (evicted > 0) {
+            log.info("Evicted {} zip jobs", evicted);
+        }
+    }
+
+    private long archiveSize(String id) {
+        try {
+            return Files.size(directory(id).resolve(ARCHIVE_FILE));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private Path directory(String id) {
+        try {
+            // Job ids are UUIDs; parsing them keeps arbitrary path segments out of the jobs directory
+            return location.resolve(UUID.fromString(id).toString());
+        } catch (IllegalArgumentException e) {
+            throw new ZipJobNotFoundException("Zip job not found: %s".formatted(id));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.DigestedResource;
+import io.github.chubbyhippo.updown.domain.EncodedResource;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A file stored gzip-compressed, read as its decoded content.
+ */
+final class GzipFileResource extends AbstractResource implements EncodedResource, DigestedResource {
+
+    static final String ENCODING = "gzip";
+
+    private final Path path;
+    private final String filename;
+    private final long length;
+    private final long lastModified;
+    private final String sha256;
+    private final String encodedSha256;
+
+    GzipFileResource(Path path, String filename, long length, long lastModified, String sha256,
+                     String encodedSha256) {
+        this.path = path;
+        this.filename = filename;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.sha256 = sha256;
+        this.encodedSha256 = encodedSha256;
+    }
+
+    @Override
+    public String encoding() {
+        return ENCODING;
+    }
+
+    @Override
+    public Resource encoded() {
+        return new DigestedFileResource(path, filename, encodedSha256);
+    }
+
+    @Override
+    public String sha256() {
+        return sha256;
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String getDescription() {
+        return "gzip file [%s]".formatted(path);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new GZIPInputStream(Files.newInputStream(path), 64 * 1024);
+    }
+}
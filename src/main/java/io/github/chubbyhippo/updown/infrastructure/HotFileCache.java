@@ -0,0 +1,108 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.chubbyhippo.updown.domain.DigestedResource;
+import io.github.chubbyhippo.updown.domain.FileStoredEvent;
+import io.github.chubbyhippo.updown.domain.ResourceCache;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+
+/**
+ * Keeps small, frequently downloaded files in direct buffers. Caffeine's W-TinyLFU policy only admits a new
+ * file over an eviction candidate once it has been requested more often, so a scan of cold files cannot flush
+ * the hot set.
+ */
+@Component
+public class HotFileCache implements ResourceCache, MeterBinder {
+
+    static final String CACHE_NAME = "hot-files";
+
+    private final HotFileCacheProperties properties;
+    private final Cache<String, CachedFileResource> cache;
+
+    public HotFileCache(HotFileCacheProperties properties) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.maxSize().toBytes())
+                .weigher((String filename, CachedFileResource resource) -> (int) resource.contentLength())
+                .expireAfterWrite(properties.ttl())
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Resource get(String filename, Function<String, Resource> loader) {
+        if (!properties.enabled()) {
+            return loader.apply(filename);
+        }
+        var uncached = new Resource[1];
+        try {
+            // Loading inside the mapping function means a concurrent invalidate waits for it, so a load that
+            // raced a store is dropped rather than kept
+            var cached = cache.get(filename, key -> {
+                var resource = loader.apply(key);
+                if (!cacheable(resource)) {
+                    uncached[0] = resource;
+                    return null;
+                }
+                return read(key, resource);
+            });
+            return cached != null ? cached : uncached[0];
+        } catch (UncheckedIOException e) {
+            throw new StorageException("Failed to read file: %s".formatted(filename), e.getCause());
+        }
+    }
+
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        cache.invalidate(event.filename());
+    }
+
+    private boolean cacheable(Resource resource) {
+        try {
+            var length = resource.contentLength();
+            return resource.isFile() && length > 0 && length <= properties.maxEntrySize().toBytes();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static CachedFileResource read(String filename, Resource resource) {
+        try (var channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+            var body = ByteBuffer.allocateDirect(Math.toIntExact(channel.size()));
+            while (body.hasRemaining() && channel.read(body) >= 0) {
+                // Keep reading until the buffer is full or the file turns out to be shorter
+            }
+            var sha256 = resource instanceof DigestedResource digested ? digested.sha256() : null;
+            return new CachedFileResource(filename, body.flip().slice(), resource.lastModified(), sha256);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME, Tags.empty());
+        Gauge.builder("storage.cache.size", cache, c -> c.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0))
+                        .orElse(0L))
+                .description("Bytes of file bodies held off-heap")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * @param maxSize      total bytes of file bodies held off-heap
+ * @param maxEntrySize larger files are always served from storage
+ * @param ttl          bounds how long a change made outside the service can go unnoticed
+ */
+@ConfigurationProperties("storage.cache")
+public record HotFileCacheProperties(@DefaultValue("false") boolean enabled,
+                                     @DefaultValue("256MB") DataSize maxSize,
+                                     @DefaultValue("1MB") DataSize maxEntrySize,
+                                     @DefaultValue("10m") Duration ttl) {
+}
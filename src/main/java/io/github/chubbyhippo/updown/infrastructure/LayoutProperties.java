@@ -0,0 +1,25 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * On-disk layout of the filesystem backend.
+ *
+ * @param levels directory levels of 256 shards each below the root when sharded
+ */
+@ConfigurationProperties("storage.layout")
+public record LayoutProperties(@DefaultValue("flat") Mode mode,
+                               @DefaultValue("2") int levels) {
+
+    public enum Mode {
+        /**
+         * Every file directly in the storage root.
+         */
+        FLAT,
+        /**
+         * Files spread over directories named after the hash of their name.
+         */
+        SHARDED
+    }
+}
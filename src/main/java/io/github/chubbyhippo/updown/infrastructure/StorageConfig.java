@@ -4,12 +4,18 @@ import io.github.chubbyhippo.updown.domain.StorageService;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @Configuration
+@ImportRuntimeHints(StorageRuntimeHints.class)
 public class StorageConfig {
     @Bean
-    ApplicationRunner applicationRunner(StorageService storageService) {
+    ApplicationRunner applicationRunner(StorageService storageService, StartupProperties startupProperties) {
         return args -> {
+            if (startupProperties.mode() == StartupProperties.Mode.KEEP) {
+                storageService.restore();
+                return;
+            }
             storageService.deleteAll();
             storageService.init();
         };
@@ -0,0 +1,117 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Where a stored name lives below a root: directly in it, or under one directory per level named after
+ * successive bytes of the CRC32C of the name. Two levels spread a million files over 65536 directories of about
+ * fifteen entries, so creates and lookups never search a huge directory.
+ */
+final class StorageLayout {
+
+    static final int MAX_LEVELS = 4;
+
+    private final Path root;
+    private final int levels;
+
+    StorageLayout(Path root, int levels) {
+        if (levels < 0 || levels > MAX_LEVELS) {
+            throw new IllegalArgumentException("Layout levels must be between 0 and %d.".formatted(MAX_LEVELS));
+        }
+        this.root = root;
+        this.levels = levels;
+    }
+
+    static StorageLayout of(Path root, LayoutProperties properties) {
+        return new StorageLayout(root, properties.mode() == LayoutProperties.Mode.SHARDED ? properties.levels() : 0);
+    }
+
+    /**
+     * The same layout below another root, e.g. for the sidecars of the files.
+     */
+    StorageLayout relocate(Path root) {
+        return new StorageLayout(root, levels);
+    }
+
+    boolean sharded() {
+        return levels > 0;
+    }
+
+    Path resolve(String name) {
+        if (levels == 0) {
+            return root.resolve(name);
+        }
+        var crc = new CRC32C();
+        crc.update(name.getBytes(StandardCharsets.UTF_8));
+        var hash = (int) crc.getValue();
+        var directory = root;
+        for (var level = 0; level < levels; level++) {
+            directory = directory.resolve(HexFormat.of().toHexDigits((byte) (hash >>> (24 - 8 * level))));
+        }
+        return directory.resolve(name);
+    }
+
+    interface FileVisitor {
+        void visit(Path path, BasicFileAttributes attributes) throws IOException;
+    }
+
+    /**
+     * Visits the regular files stored in this layout; files deleted while walking are skipped.
+     *
+     * @return how many regular files were found where this layout would not put them
+     */
+    long walk(FileVisitor visitor) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        var misplaced = new long[1];
+        Files.walkFileTree(root, Set.of(FileVisitOption.FOLLOW_LINKS), levels + 1, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                // Only shard directories are descended into, never .staging or .digests
+                return directory.equals(root) || isShard(directory.getFileName().toString())
+                        ? FileVisitResult.CONTINUE
+                        : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (!attributes.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (file.equals(resolve(file.getFileName().toString()))) {
+                    visitor.visit(file, attributes);
+                } else {
+                    misplaced[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException || e instanceof FileSystemLoopException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        });
+        return misplaced[0];
+    }
+
+    static boolean isShard(String name) {
+        return name.length() == 2 && HexFormat.isHexDigit(name.charAt(0)) && HexFormat.isHexDigit(name.charAt(1))
+                && name.equals(name.toLowerCase());
+    }
+}
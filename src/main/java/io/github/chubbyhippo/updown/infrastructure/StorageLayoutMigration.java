@@ -0,0 +1,110 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Moves the files of a flat storage root, and their sidecars, into the sharded layout. Every file is renamed on
+ * its own, so an interrupted run is finished by starting it again. Files named like a shard directory are parked
+ * in a {@code .migrating} directory first, as they would be in its way. Run it while the service is stopped,
+ * before switching {@code storage.layout.mode} to {@code sharded}:
+ * <pre>
+ * scripts/migrate-layout.sh &lt;storage.location&gt; [levels]
+ * </pre>
+ */
+public final class StorageLayoutMigration {
+
+    private static final String PARKING_PREFIX = ".migrating";
+
+    private StorageLayoutMigration() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: StorageLayoutMigration <storage.location> [levels]");
+            System.exit(2);
+        }
+        var root = Path.of(args[0]);
+        var levels = args.length == 2 ? Integer.parseInt(args[1]) : 2;
+        var started = System.nanoTime();
+        var moved = migrate(root, levels);
+        System.out.printf("Moved %d files under %s into %d shard levels in %d ms%n",
+                moved, root, levels, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * @return how many files were moved, sidecars not counted
+     */
+    static long migrate(Path root, int levels) throws IOException {
+        var layout = new StorageLayout(root, levels);
+        var moved = moveAll(root, layout);
+        var digests = root.resolve(".digests");
+        if (Files.isDirectory(digests)) {
+            // Renames keep the modification time, so the sidecars still describe their files
+            moveAll(digests, layout.relocate(digests));
+        }
+        return moved;
+    }
+
+    private static long moveAll(Path directory, StorageLayout layout) throws IOException {
+        park(directory);
+        var moved = moveFiles(directory, layout);
+        // Also finishes the parking directories of an interrupted run
+        try (var parkings = Files.newDirectoryStream(directory, PARKING_PREFIX + "*")) {
+            for (var parking : parkings) {
+                if (!Files.isDirectory(parking, LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                moved += moveFiles(parking, layout);
+                try {
+                    Files.delete(parking);
+                } catch (DirectoryNotEmptyException e) {
+                    System.err.printf("Keeping %s, it still holds skipped files%n", parking);
+                }
+            }
+        }
+        return moved;
+    }
+
+    private static void park(Path directory) throws IOException {
+        Path parking = null;
+        try (var paths = Files.list(directory)) {
+            for (var path : (Iterable<Path>) paths::iterator) {
+                if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)
+                        || !StorageLayout.isShard(path.getFileName().toString())) {
+                    continue;
+                }
+                if (parking == null) {
+                    // Given a name no stored file has, since the names are picked until one is free
+                    parking = Files.createTempDirectory(directory, PARKING_PREFIX);
+                }
+                Files.move(path, parking.resolve(path.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    private static long moveFiles(Path directory, StorageLayout layout) throws IOException {
+        var moved = 0L;
+        try (var paths = Files.list(directory)) {
+            for (var path : (Iterable<Path>) paths::iterator) {
+                if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                var target = layout.resolve(path.getFileName().toString());
+                if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                    // Stored again after the layout was switched; the sharded copy is the newer one
+                    System.err.printf("Skipping %s, %s already exists%n", path, target);
+                    continue;
+                }
+                Files.createDirectories(target.getParent());
+                Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+                moved++;
+            }
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.UploadSession;
+import io.github.chubbyhippo.updown.domain.ZipJob;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * What a native image cannot see from the bean definitions: the records the stores write to disk as JSON, and
+ * the table behind {@link org.springframework.http.MediaTypeFactory}.
+ */
+class StorageRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                ZipJob.class, UploadSession.class);
+        hints.resources().registerPattern("org/springframework/http/mime.types");
+    }
+}
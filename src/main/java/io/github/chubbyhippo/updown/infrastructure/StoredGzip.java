@@ -0,0 +1,100 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * The gzip format the filesystem backend stores compressible files in. The header carries an extra field no other
+ * writer sets, so a stored file tells by itself whether the service encoded it, even when its sidecar is gone or no
+ * longer matches after a touch, a restore or a crash.
+ */
+final class StoredGzip {
+
+    // ID1 ID2 CM=deflate FLG=FEXTRA MTIME=0 XFL=0 OS=unknown XLEN=4, then subfield "UD" of length 0
+    private static final byte[] HEADER = {
+            0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF, 4, 0, 'U', 'D', 0, 0};
+    private static final byte[] GZIP_MAGIC = {0x1F, (byte) 0x8B};
+
+    enum Kind {
+        /**
+         * Written by {@link #output}.
+         */
+        STORED,
+        /**
+         * Gzip from elsewhere, e.g. an uploaded {@code .gz} kept as it is.
+         */
+        FOREIGN,
+        /**
+         * Not gzip at all.
+         */
+        PLAIN
+    }
+
+    private StoredGzip() {
+    }
+
+    static OutputStream output(OutputStream outputStream, int level, int bufferSize) throws IOException {
+        return new Output(outputStream, new Deflater(level, true), bufferSize);
+    }
+
+    static Kind probe(Path path) throws IOException {
+        byte[] head;
+        try (var inputStream = Files.newInputStream(path)) {
+            head = inputStream.readNBytes(HEADER.length);
+        }
+        if (Arrays.equals(head, HEADER)) {
+            return Kind.STORED;
+        }
+        return head.length >= GZIP_MAGIC.length && Arrays.equals(head, 0, GZIP_MAGIC.length, GZIP_MAGIC, 0,
+                GZIP_MAGIC.length) ? Kind.FOREIGN : Kind.PLAIN;
+    }
+
+    private static final class Output extends DeflaterOutputStream {
+
+        private final CRC32 crc = new CRC32();
+
+        private Output(OutputStream outputStream, Deflater deflater, int bufferSize) throws IOException {
+            super(outputStream, deflater, bufferSize);
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            super.write(bytes, offset, length);
+            crc.update(bytes, offset, length);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (def.finished()) {
+                return;
+            }
+            super.finish();
+            var trailer = new byte[8];
+            writeInt(trailer, 0, (int) crc.getValue());
+            writeInt(trailer, 4, (int) def.getBytesRead());
+            out.write(trailer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+
+        private static void writeInt(byte[] bytes, int offset, int value) {
+            for (var i = 0; i < 4; i++) {
+                bytes[offset + i] = (byte) (value >>> (8 * i));
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.VersionedResource;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A zip archive of stored entries, laid out from the sizes of its files before any of them is read. Its length is
+ * known up front, and a range of it is read by mapping the offsets back to headers and files. The entries' CRCs are
+ * only needed, and asked for, once bytes are read: with the CRCs the storage recorded when the files were stored,
+ * only the files a range covers are opened, while a file whose CRC is not known is read in full first.
+ */
+final class StoredZipResource extends AbstractResource implements VersionedResource {
+
+    interface Crcs {
+        long[] of(List<ZipArchiveEngine.Source> sources) throws IOException;
+    }
+
+    /**
+     * Part of the archive starting at {@code start}: header bytes, or the data of a file.
+     */
+    private record Segment(long start, long length, byte[] bytes, ZipArchiveEngine.Source source) {
+
+        long end() {
+            return start + length;
+        }
+    }
+
+    private final List<ZipArchiveEngine.Source> sources;
+    private final Crcs crcs;
+    private final long contentLength;
+    private final long lastModified;
+    private final String version;
+
+    StoredZipResource(List<ZipArchiveEngine.Source> sources, Crcs crcs) throws IOException {
+        this.sources = List.copyOf(sources);
+        this.crcs = crcs;
+        // CRCs change header bytes but never their length
+        var segments = layout(this.sources, new long[this.sources.size()]);
+        this.contentLength = segments.isEmpty() ? 0 : segments.getLast().end();
+        this.lastModified = sources.stream().mapToLong(ZipArchiveEngine.Source::lastModified).max().orElse(0);
+        this.version = version(this.sources);
+    }
+
+    /**
+     * Digest of every entry's name, size and modification time in order, so replacing any file changes it even
+     * when the newest modification time and the total length stay the same.
+     */
+    private static String version(List<ZipArchiveEngine.Source> sources) {
+        var messageDigest = FileSidecars.messageDigest();
+        for (var source : sources) {
+            var name = source.name().getBytes(StandardCharsets.UTF_8);
+            messageDigest.update(ByteBuffer.allocate(Integer.BYTES + name.length + 2 * Long.BYTES)
+                    .putInt(name.length)
+                    .put(name)
+                    .putLong(source.size())
+                    .putLong(source.lastModified())
+                    .flip());
+        }
+        return HexFormat.of().formatHex(messageDigest.digest());
+    }
+
+    private static List<Segment> layout(List<ZipArchiveEngine.Source> sources, long[] crcs) throws IOException {
+        var recorder = new SegmentRecorder();
+        var writer = new ZipArchiveWriter(recorder);
+        for (var i = 0; i < sources.size(); i++) {
+            var source = sources.get(i);
+            writer.beginEntry(source.name(), ZipArchiveWriter.STORED, source.lastModified(),
+                    crcs[i], source.size(), source.size());
+            writer.skip(source.size());
+            recorder.data(source);
+            writer.endEntry(crcs[i], source.size());
+        }
+        writer.finish();
+        return recorder.segments();
+    }
+
+    @Override
+    public String getDescription() {
+        return "stored zip archive of %d files".formatted(sources.size());
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String version() {
+        return version;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new ArchiveInputStream(layout(sources, crcs.of(sources)));
+    }
+
+    private static final class SegmentRecorder extends OutputStream {
+
+        private final List<Segment> segments = new ArrayList<>();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private long offset;
+
+        @Override
+        public void write(int b) {
+            pending.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            pending.write(bytes, offset, length);
+        }
+
+        void data(ZipArchiveEngine.Source source) {
+            flushPending();
+            if (source.size() > 0) {
+                segments.add(new Segment(offset, source.size(), null, source));
+                offset += source.size();
+            }
+        }
+
+        List<Segment> segments() {
+            flushPending();
+            return segments;
+        }
+
+        private void flushPending() {
+            if (pending.size() > 0) {
+                segments.add(new Segment(offset, pending.size(), pending.toByteArray(), null));
+                offset += pending.size();
+                pending.reset();
+            }
+        }
+    }
+
+    /**
+     * Skipping only moves the position, so a range read starts at the file it covers without reading the ones
+     * before it.
+     */
+    private static final class ArchiveInputStream extends InputStream {
+
+        private final List<Segment> segments;
+        private final long[] starts;
+        private final long length;
+        private long position;
+        private int index;
+        private InputStream file;
+        private int fileIndex = -1;
+        private long filePosition;
+
+        private ArchiveInputStream(List<Segment> segments) {
+            this.segments = segments;
+            this.starts = segments.stream().mapToLong(Segment::start).toArray();
+            this.length = segments.isEmpty() ? 0 : segments.getLast().end();
+        }
+
+        @Override
+        public int read() throws IOException {
+            var single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= this.length) {
+                return -1;
+            }
+            var segment = segment();
+            var count = (int) Math.min(length, segment.end() - position);
+            if (segment.bytes() != null) {
+                System.arraycopy(segment.bytes(), (int) (position - segment.start()), bytes, offset, count);
+            } else {
+                count = readFile(segment, bytes, offset, count);
+            }
+            position += count;
+            return count;
+        }
+
+        private Segment segment() {
+            if (segments.get(index).end() <= position || segments.get(index).start() > position) {
+                var found = Arrays.binarySearch(starts, position);
+                index = found >= 0 ? found : -found - 2;
+            }
+            return segments.get(index);
+        }
+
+        private int readFile(Segment segment, byte[] bytes, int offset, int count) throws IOException {
+            var source = segment.source();
+            if (file == null || fileIndex != index || filePosition != position) {
+                closeFile();
+                file = source.open(position - segment.start());
+                fileIndex = index;
+            }
+            var read = file.read(bytes, offset, count);
+            if (read < 0) {
+                throw new IOException("File changed while zipping: %s".formatted(source.name()));
+            }
+            filePosition = position + read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            var skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeFile();
+        }
+
+        private void closeFile() throws IOException {
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+        }
+    }
+}
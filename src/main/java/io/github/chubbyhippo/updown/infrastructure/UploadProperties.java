@@ -0,0 +1,11 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("storage.uploads")
+public record UploadProperties(@DefaultValue("uploads") String location,
+                               @DefaultValue("24h") Duration maxIdle) {
+}
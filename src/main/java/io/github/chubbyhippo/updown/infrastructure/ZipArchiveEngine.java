@@ -0,0 +1,521 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@Component
+public class ZipArchiveEngine implements DisposableBean, MeterBinder {
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_CACHED_CRCS = 100_000;
+
+    private final ZipProperties properties;
+    private final ForkJoinPool pool;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final LongAdder storedEntries = new LongAdder();
+    private final LongAdder deflatedEntries = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder deflatedBytes = new LongAdder();
+    private final LongAdder deflateNanos = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+    private final Cache<CrcKey, Long> crcs = Caffeine.newBuilder().maximumSize(MAX_CACHED_CRCS).build();
+
+    public ZipArchiveEngine(ZipProperties properties) {
+        this.properties = properties;
+        var parallelism = properties.parallelism() > 0
+                ? properties.parallelism()
+                : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * @param size decoded size of the entry
+     * @param gzip whether the file is kept gzip-encoded and has to be inflated on the way into the archive
+     * @param crc  CRC-32 of the decoded content when the storage already knows it, {@code null} to compute it
+     */
+    public record Source(String name, Path path, long size, long lastModified, boolean gzip, Long crc) {
+
+        public Source(String name, Path path, long size, long lastModified) {
+            this(name, path, size, lastModified, false, null);
+        }
+
+        InputStream open() throws IOException {
+            var inputStream = Files.newInputStream(path);
+            return gzip ? new GZIPInputStream(inputStream, COPY_BUFFER_SIZE) : inputStream;
+        }
+
+        /**
+         * Opens the decoded content at {@code offset}; only gzip-encoded files have to be read up to it.
+         */
+        InputStream open(long offset) throws IOException {
+            if (gzip) {
+                var inputStream = open();
+                try {
+                    inputStream.skipNBytes(offset);
+                } catch (IOException e) {
+                    inputStream.close();
+                    throw e;
+                }
+                return inputStream;
+            }
+            var channel = FileChannel.open(path, StandardOpenOption.READ);
+            channel.position(offset);
+            return Channels.newInputStream(channel);
+        }
+
+        public static Source of(String name, Path path) throws StorageException {
+            try {
+                return new Source(name, path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+            } catch (IOException e) {
+                throw new StorageException("Failed to read file: %s".formatted(name), e);
+            }
+        }
+    }
+
+    public void write(Stream<Source> sources, OutputStream outputStream) throws IOException {
+        write(sources, outputStream, null);
+    }
+
+    /**
+     * @param level deflate level for entries that are worth compressing, {@code 0} stores every entry and
+     *              {@code null} uses the configured level
+     */
+    public void write(Stream<Source> sources, OutputStream outputStream, Integer level) throws IOException {
+        if (level == null) {
+            writeArchive(sources, outputStream, properties.level());
+        } else {
+            writeArchive(sources, outputStream, level);
+        }
+    }
+
+    private void writeArchive(Stream<Source> sources, OutputStream outputStream, int level) throws IOException {
+        if (properties.mode() == ZipProperties.Mode.SERIAL) {
+            writeSerial(sources, outputStream, level);
+        } else {
+            writeParallel(sources, outputStream, level);
+        }
+    }
+
+    private void writeSerial(Stream<Source> sources, OutputStream outputStream, int level) throws IOException {
+        try (var zos = new TimedZipOutputStream(outputStream)) {
+            sources.forEach(source -> {
+                try {
+                    var entry = new ZipEntry(source.name());
+                    entry.setTime(source.lastModified());
+                    if (worthDeflating(source, readSample(source), level)) {
+                        zos.setLevel(level);
+                        zos.putNextEntry(entry);
+                        try (var fis = source.open()) {
+                            fis.transferTo(zos);
+                        }
+                        zos.closeEntry();
+                        recordDeflated(source.size(), zos.takeDeflateNanos());
+                    } else {
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setSize(source.size());
+                        entry.setCompressedSize(source.size());
+                        entry.setCrc(source.crc() != null ? source.crc() : crc(source));
+                        zos.putNextEntry(entry);
+                        copy(source, zos::write);
+                        zos.closeEntry();
+                    }
+                } catch (IOException e) {
+                    throw new StorageException("Failed to read file: %s".formatted(source.name()), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Times the deflater alone: reading the file and writing the compressed bytes to the client are left out.
+     */
+    private static final class TimedZipOutputStream extends ZipOutputStream {
+
+        private long deflateNanos;
+
+        private TimedZipOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        protected void deflate() throws IOException {
+            var start = cpuTime();
+            var length = def.deflate(buf, 0, buf.length);
+            deflateNanos += cpuTime() - start;
+            if (length > 0) {
+                out.write(buf, 0, length);
+            }
+        }
+
+        long takeDeflateNanos() {
+            var nanos = deflateNanos;
+            deflateNanos = 0;
+            return nanos;
+        }
+    }
+
+    /**
+     * A version of a file; a store replaces the file, which changes its modification time.
+     */
+    private record CrcKey(Path path, long size, long lastModified, boolean gzip) {
+
+        static CrcKey of(Source source) {
+            return new CrcKey(source.path(), source.size(), source.lastModified(), source.gzip());
+        }
+    }
+
+    /**
+     * An archive of the sources stored without compression, whose length is known before it is read and any
+     * range of which can be read on its own. See {@link StoredZipResource}.
+     */
+    public Resource storedArchive(List<Source> sources) throws StorageException {
+        try {
+            return new StoredZipResource(sources, this::crcs);
+        } catch (IOException e) {
+            throw new StorageException("Failed to lay out zip archive", e);
+        }
+    }
+
+    /**
+     * The CRCs of the sources: the ones the storage recorded, then the ones computed before, and the rest
+     * computed on the shared pool.
+     */
+    private long[] crcs(List<Source> sources) throws IOException {
+        var futures = new ArrayList<Future<Long>>(sources.size());
+        for (var source : sources) {
+            var known = source.crc() != null ? source.crc() : crcs.getIfPresent(CrcKey.of(source));
+            futures.add(known != null ? CompletableFuture.completedFuture(known) : pool.submit(() -> crc(source)));
+        }
+        var values = new long[sources.size()];
+        try {
+            for (var i = 0; i < values.length; i++) {
+                values[i] = await(futures.get(i));
+                crcs.put(CrcKey.of(sources.get(i)), values[i]);
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return values;
+    }
+
+    private interface PendingWrite {
+        void writeTo(ZipArchiveWriter writer) throws IOException;
+
+        /**
+         * Whether this write holds a pool task, and so counts against the in-flight window.
+         */
+        default boolean inFlight() {
+            return false;
+        }
+    }
+
+    private record CompressedChunk(Future<byte[]> future) implements PendingWrite {
+        @Override
+        public void writeTo(ZipArchiveWriter writer) throws IOException {
+            writer.write(await(future));
+        }
+
+        @Override
+        public boolean inFlight() {
+            return true;
+        }
+    }
+
+    private record StoredEntry(Source source, Future<Long> crc) implements PendingWrite {
+        @Override
+        public void writeTo(ZipArchiveWriter writer) throws IOException {
+            var crcValue = await(crc);
+            writer.beginEntry(source.name(), ZipArchiveWriter.STORED, source.lastModified(),
+                    crcValue, source.size(), source.size());
+            copy(source, writer::write);
+            writer.endEntry(crcValue, source.size());
+        }
+
+        @Override
+        public boolean inFlight() {
+            return true;
+        }
+    }
+
+    private void writeParallel(Stream<Source> sources, OutputStream outputStream, int level) throws IOException {
+        var chunkSize = (int) properties.chunkSize().toBytes();
+        // Each in-flight chunk holds its input and, at worst, a compressed copy of the same size
+        var window = Math.max(1, (int) (properties.maxBuffered().toBytes() / (2L * chunkSize)));
+        var writer = new ZipArchiveWriter(outputStream);
+        var pending = new ArrayDeque<PendingWrite>();
+        var inFlight = 0;
+        try {
+            for (var source : (Iterable<Source>) sources::iterator) {
+                try (var inputStream = source.open()) {
+                    var chunk = inputStream.readNBytes(chunkSize);
+                    if (!worthDeflating(source, chunk, level)) {
+                        // Stored entries need their CRC in the local header, so it is computed up front
+                        pending.add(new StoredEntry(source, source.crc() != null
+                                ? CompletableFuture.completedFuture(source.crc())
+                                : pool.submit(() -> crc(source))));
+                        inFlight++;
+                    } else {
+                        pending.add(archive -> archive.beginEntry(source.name(), ZipArchiveWriter.DEFLATED,
+                                source.lastModified(), source.size()));
+                        var crc = new CRC32();
+                        var total = 0L;
+                        byte[] dictionary = null;
+                        boolean last;
+                        do {
+                            var input = chunk;
+                            last = input.length < chunkSize;
+                            crc.update(input);
+                            total += input.length;
+                            var primer = dictionary;
+                            var finish = last;
+                            pending.add(new CompressedChunk(pool.submit(() -> deflate(input, primer, finish, level))));
+                            inFlight++;
+                            inFlight -= drain(pending, writer, inFlight - window);
+                            if (!last) {
+                                dictionary = Arrays.copyOfRange(input, Math.max(0, input.length - DICTIONARY_SIZE), input.length);
+                                chunk = inputStream.readNBytes(chunkSize);
+                            }
+                        } while (!last);
+
+                        var crcValue = crc.getValue();
+                        var uncompressedSize = total;
+                        pending.add(archive -> archive.endEntry(crcValue, uncompressedSize));
+                    }
+                    inFlight -= drain(pending, writer, inFlight - window);
+                } catch (IOException e) {
+                    throw new StorageException("Failed to read file: %s".formatted(source.name()), e);
+                }
+            }
+            while (!pending.isEmpty()) {
+                pending.remove().writeTo(writer);
+            }
+            writer.finish();
+        } finally {
+            pending.forEach(write -> {
+                if (write instanceof CompressedChunk(var future)) {
+                    future.cancel(true);
+                } else if (write instanceof StoredEntry stored) {
+                    stored.crc().cancel(true);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes pending entries in order until {@code excess} in-flight writes have completed.
+     *
+     * @return the number of in-flight writes completed
+     */
+    private static int drain(ArrayDeque<PendingWrite> pending, ZipArchiveWriter writer, int excess) throws IOException {
+        var drained = 0;
+        while (drained < excess) {
+            var write = pending.remove();
+            write.writeTo(writer);
+            if (write.inFlight()) {
+                drained++;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Decides on the leading bytes of an entry whether deflating it will pay off: known compressed formats are
+     * stored outright, anything else has a sample trial-compressed at the fastest level.
+     */
+    private boolean worthDeflating(Source source, byte[] head, int level) {
+        if (level == Deflater.NO_COMPRESSION || source.size() == 0) {
+            recordStored(source.size(), 0);
+            return false;
+        }
+        if (!properties.adaptive()) {
+            deflatedEntries.increment();
+            return true;
+        }
+        if (CompressedFormats.isCompressed(source.name(), head)) {
+            recordStored(source.size(), averageDeflateCost());
+            return false;
+        }
+        var sample = Math.min(head.length, (int) properties.sampleSize().toBytes());
+        var start = cpuTime();
+        var ratio = CompressedFormats.sampleRatio(head, sample);
+        var elapsed = cpuTime() - start;
+        if (ratio < properties.storeRatio()) {
+            deflatedEntries.increment();
+            return true;
+        }
+        recordStored(source.size(), sample == 0 ? 0 : (double) elapsed / sample);
+        return false;
+    }
+
+    private byte[] readSample(Source source) throws IOException {
+        try (var inputStream = source.open()) {
+            return inputStream.readNBytes((int) properties.sampleSize().toBytes());
+        }
+    }
+
+    private byte[] deflate(byte[] chunk, byte[] dictionary, boolean finish, int level) {
+        var deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        var start = cpuTime();
+        try {
+            deflater.setLevel(level);
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(chunk);
+            if (finish) {
+                deflater.finish();
+            }
+            var buffer = new byte[chunk.length + (chunk.length >> 8) + 64];
+            var length = 0;
+            // SYNC_FLUSH ends a chunk on a byte boundary without a final block, so chunks concatenate into one stream
+            do {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length,
+                        finish ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            } while (finish ? !deflater.finished() : length == buffer.length);
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+            recordDeflated(chunk.length, cpuTime() - start);
+        }
+    }
+
+    private static long crc(Source source) throws IOException {
+        var crc = new CRC32();
+        copy(source, crc::update);
+        return crc.getValue();
+    }
+
+    private interface ByteSink {
+        void write(byte[] bytes, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Feeds exactly {@code source.size()} bytes, so the data always matches the size already written to the
+     * archive even if the file is being replaced.
+     */
+    private static void copy(Source source, ByteSink sink) throws IOException {
+        try (InputStream inputStream = source.open()) {
+            var buffer = new byte[COPY_BUFFER_SIZE];
+            var remaining = source.size();
+            while (remaining > 0) {
+                var read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("File changed while zipping: %s".formatted(source.name()));
+                }
+                sink.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("Failed to compress", e.getCause());
+        }
+    }
+
+    private void recordDeflated(long bytes, long nanos) {
+        deflatedBytes.add(bytes);
+        deflateNanos.add(nanos);
+    }
+
+    private void recordStored(long bytes, double nanosPerByte) {
+        storedEntries.increment();
+        storedBytes.add(bytes);
+        savedNanos.add((long) (bytes * nanosPerByte));
+    }
+
+    private double averageDeflateCost() {
+        var bytes = deflatedBytes.sum();
+        return bytes == 0 ? 0 : (double) deflateNanos.sum() / bytes;
+    }
+
+    /**
+     * CPU time of the current thread where the JVM measures it; virtual threads fall back to wall time, which is
+     * close since only calls that never block, into the deflater or the sampler, are timed.
+     */
+    private static long cpuTime() {
+        var cpuTime = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+        return cpuTime >= 0 ? cpuTime : System.nanoTime();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("storage.zip.entries", storedEntries, LongAdder::sum)
+                .tag("method", "stored")
+                .description("Zip entries written without compression")
+                .register(registry);
+        FunctionCounter.builder("storage.zip.entries", deflatedEntries, LongAdder::sum)
+                .tag("method", "deflated")
+                .description("Deflated zip entries")
+                .register(registry);
+        FunctionCounter.builder("storage.zip.stored", storedBytes, LongAdder::sum)
+                .baseUnit("bytes")
+                .description("Bytes stored instead of deflated")
+                .register(registry);
+        FunctionCounter.builder("storage.zip.deflate.cpu", deflateNanos, adder -> adder.sum() / 1e9)
+                .baseUnit("seconds")
+                .description("CPU time spent deflating")
+                .register(registry);
+        FunctionCounter.builder("storage.zip.cpu.saved", savedNanos, adder -> adder.sum() / 1e9)
+                .baseUnit("seconds")
+                .description("Estimated deflate CPU time avoided by storing entries")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+}
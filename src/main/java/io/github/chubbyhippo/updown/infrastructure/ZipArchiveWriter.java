@@ -0,0 +1,276 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a zip archive whose entry data is produced by the caller, so entries can be compressed elsewhere
+ * (for example on other threads) and written here in order. Zip64 records are emitted only where needed.
+ */
+public class ZipArchiveWriter {
+
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    // Data-descriptor entries above this size get Zip64 sizes up front, leaving room for deflate expansion
+    private static final long ZIP64_DESCRIPTOR_THRESHOLD = ZIP64_MAGIC - (16L << 20);
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+
+    private final OutputStream out;
+    private final List<Entry> entries = new ArrayList<>();
+    private final ByteBuffer scratch = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+    private long offset;
+    private Entry current;
+
+    public ZipArchiveWriter(OutputStream outputStream) {
+        this.out = new BufferedOutputStream(outputStream, 64 * 1024);
+    }
+
+    private static final class Entry {
+        private final byte[] name;
+        private final int method;
+        private final long dosTime;
+        private final boolean dataDescriptor;
+        private final boolean zip64Local;
+        private final long localHeaderOffset;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long expectedCompressedSize;
+
+        private Entry(byte[] name, int method, long dosTime, boolean dataDescriptor, boolean zip64Local,
+                      long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.dataDescriptor = dataDescriptor;
+            this.zip64Local = zip64Local;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        private boolean zip64Central() {
+            return zip64Local || size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC || localHeaderOffset >= ZIP64_MAGIC;
+        }
+    }
+
+    /**
+     * Starts an entry whose CRC and sizes are only known after its data has been written.
+     */
+    public void beginEntry(String name, int method, long lastModified, long expectedSize) throws IOException {
+        begin(name, method, lastModified, true, expectedSize >= ZIP64_DESCRIPTOR_THRESHOLD, 0, 0, 0);
+    }
+
+    /**
+     * Starts an entry whose CRC and sizes are known before its data is written.
+     */
+    public void beginEntry(String name, int method, long lastModified,
+                           long crc, long compressedSize, long size) throws IOException {
+        begin(name, method, lastModified, false, size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC,
+                crc, compressedSize, size);
+    }
+
+    private void begin(String name, int method, long lastModified, boolean dataDescriptor, boolean zip64,
+                       long crc, long compressedSize, long size) throws IOException {
+        if (current != null) {
+            throw new IllegalStateException("Entry %s is still open".formatted(new String(current.name, StandardCharsets.UTF_8)));
+        }
+        current = new Entry(name.getBytes(StandardCharsets.UTF_8), method, dosTime(lastModified),
+                dataDescriptor, zip64, offset);
+        current.crc = crc;
+        current.compressedSize = compressedSize;
+        current.size = size;
+
+        var header = scratch.clear()
+                .putInt(0x04034b50)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT))
+                .putShort((short) (FLAG_UTF8 | (dataDescriptor ? FLAG_DATA_DESCRIPTOR : 0)))
+                .putShort((short) method)
+                .putInt((int) current.dosTime)
+                .putInt((int) crc)
+                .putInt((int) (zip64 ? ZIP64_MAGIC : compressedSize))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : size))
+                .putShort((short) current.name.length)
+                .putShort((short) (zip64 ? 20 : 0));
+        writeScratch(header);
+        writeBytes(current.name, 0, current.name.length);
+        if (zip64) {
+            writeScratch(scratch.clear()
+                    .putShort((short) 0x0001)
+                    .putShort((short) 16)
+                    .putLong(size)
+                    .putLong(compressedSize));
+        }
+        entries.add(current);
+        // The compressed size is counted from the data actually written
+        current.compressedSize = 0;
+        if (dataDescriptor) {
+            current.size = 0;
+        }
+        current.expectedCompressedSize = dataDescriptor ? -1 : compressedSize;
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        writeBytes(bytes, offset, length);
+        current.compressedSize += length;
+    }
+
+    public void write(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Accounts for entry data that the caller puts into the underlying stream itself, after everything written
+     * so far has been flushed to it.
+     */
+    public void skip(long length) throws IOException {
+        out.flush();
+        offset += length;
+        current.compressedSize += length;
+    }
+
+    /**
+     * Completes the current entry, writing a data descriptor if its sizes were not known up front.
+     */
+    public void endEntry(long crc, long size) throws IOException {
+        var entry = current;
+        current = null;
+        if (!entry.dataDescriptor) {
+            if (entry.compressedSize != entry.expectedCompressedSize) {
+                throw new IOException("Entry %s declared %d bytes but %d were written".formatted(
+                        new String(entry.name, StandardCharsets.UTF_8), entry.expectedCompressedSize,
+                        entry.compressedSize));
+            }
+            return;
+        }
+        entry.crc = crc;
+        entry.size = size;
+        scratch.clear().putInt(0x08074b50).putInt((int) crc);
+        if (entry.zip64Local) {
+            scratch.putLong(entry.compressedSize).putLong(size);
+        } else {
+            scratch.putInt((int) entry.compressedSize).putInt((int) size);
+        }
+        writeScratch(scratch);
+    }
+
+    /**
+     * Writes the central directory and flushes, leaving the underlying stream open.
+     */
+    public void finish() throws IOException {
+        if (current != null) {
+            throw new IllegalStateException("Entry %s is still open".formatted(new String(current.name, StandardCharsets.UTF_8)));
+        }
+        var centralDirectoryOffset = offset;
+        for (var entry : entries) {
+            writeCentralHeader(entry);
+        }
+        var centralDirectorySize = offset - centralDirectoryOffset;
+        var zip64 = entries.size() >= ZIP64_MAGIC_COUNT
+                || centralDirectoryOffset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC;
+        if (zip64) {
+            var zip64EndOffset = offset;
+            writeScratch(scratch.clear()
+                    .putInt(0x06064b50)
+                    .putLong(44)
+                    .putShort((short) VERSION_ZIP64)
+                    .putShort((short) VERSION_ZIP64)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(entries.size())
+                    .putLong(entries.size())
+                    .putLong(centralDirectorySize)
+                    .putLong(centralDirectoryOffset));
+            writeScratch(scratch.clear()
+                    .putInt(0x07064b50)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1));
+        }
+        writeScratch(scratch.clear()
+                .putInt(0x06054b50)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(entries.size(), ZIP64_MAGIC_COUNT))
+                .putShort((short) Math.min(entries.size(), ZIP64_MAGIC_COUNT))
+                .putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC))
+                .putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC))
+                .putShort((short) 0));
+        out.flush();
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        var zip64 = entry.zip64Central();
+        var zip64Size = zip64 && entry.size >= ZIP64_MAGIC;
+        var zip64CompressedSize = zip64 && entry.compressedSize >= ZIP64_MAGIC;
+        var zip64Offset = zip64 && entry.localHeaderOffset >= ZIP64_MAGIC;
+        var zip64ExtraLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+
+        writeScratch(scratch.clear()
+                .putInt(0x02014b50)
+                .putShort((short) VERSION_ZIP64)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT))
+                .putShort((short) (FLAG_UTF8 | (entry.dataDescriptor ? FLAG_DATA_DESCRIPTOR : 0)))
+                .putShort((short) entry.method)
+                .putInt((int) entry.dosTime)
+                .putInt((int) entry.crc)
+                .putInt((int) (zip64CompressedSize ? ZIP64_MAGIC : entry.compressedSize))
+                .putInt((int) (zip64Size ? ZIP64_MAGIC : entry.size))
+                .putShort((short) entry.name.length)
+                .putShort((short) (zip64ExtraLength > 0 ? zip64ExtraLength + 4 : 0))
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(0)
+                .putInt((int) (zip64Offset ? ZIP64_MAGIC : entry.localHeaderOffset)));
+        writeBytes(entry.name, 0, entry.name.length);
+        if (zip64ExtraLength > 0) {
+            scratch.clear().putShort((short) 0x0001).putShort((short) zip64ExtraLength);
+            if (zip64Size) {
+                scratch.putLong(entry.size);
+            }
+            if (zip64CompressedSize) {
+                scratch.putLong(entry.compressedSize);
+            }
+            if (zip64Offset) {
+                scratch.putLong(entry.localHeaderOffset);
+            }
+            writeScratch(scratch);
+        }
+    }
+
+    private void writeScratch(ByteBuffer buffer) throws IOException {
+        writeBytes(buffer.array(), 0, buffer.position());
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+        this.offset += length;
+    }
+
+    static long dosTime(long lastModified) {
+        var time = LocalDateTime.ofInstant(Instant.ofEpochMilli(lastModified), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (time.getYear() - 1980) << 25
+                | (long) time.getMonthValue() << 21
+                | (long) time.getDayOfMonth() << 16
+                | (long) time.getHour() << 11
+                | (long) time.getMinute() << 5
+                | (long) time.getSecond() >> 1;
+    }
+}
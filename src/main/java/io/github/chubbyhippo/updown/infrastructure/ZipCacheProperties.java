@@ -0,0 +1,15 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * @param location cleared at startup, since what is cached is only known in memory
+ * @param maxSize  total bytes of cached archives
+ */
+@ConfigurationProperties("storage.zip.cache")
+public record ZipCacheProperties(@DefaultValue("false") boolean enabled,
+                                 @DefaultValue("zip-cache") String location,
+                                 @DefaultValue("1GB") DataSize maxSize) {
+}
@@ -0,0 +1,17 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * @param maxSize finished archives kept in total; the least recently used go first
+ * @param maxIdle finished jobs not polled or downloaded for this long are removed
+ */
+@ConfigurationProperties("storage.zip-jobs.cache")
+public record ZipJobCacheProperties(@DefaultValue("zip-jobs") String location,
+                                    @DefaultValue("10GB") DataSize maxSize,
+                                    @DefaultValue("24h") Duration maxIdle) {
+}
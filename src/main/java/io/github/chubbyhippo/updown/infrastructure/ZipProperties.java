@@ -0,0 +1,35 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * @param parallelism compression workers shared by all archives, {@code 0} for one per available processor
+ * @param maxBuffered upper bound on uncompressed plus compressed chunk bytes held per archive
+ * @param level       default deflate level, {@code -1} for zlib's default; requests may override it
+ * @param adaptive    store entries that are already compressed or whose sample barely shrinks
+ * @param sampleSize  how much of an entry is trial-compressed
+ * @param storeRatio  samples compressing to more than this fraction of their size are stored
+ */
+@ConfigurationProperties("storage.zip")
+public record ZipProperties(@DefaultValue("parallel") Mode mode,
+                            @DefaultValue("0") int parallelism,
+                            @DefaultValue("1MB") DataSize chunkSize,
+                            @DefaultValue("64MB") DataSize maxBuffered,
+                            @DefaultValue("-1") int level,
+                            @DefaultValue("true") boolean adaptive,
+                            @DefaultValue("64KB") DataSize sampleSize,
+                            @DefaultValue("0.9") double storeRatio) {
+
+    public enum Mode {
+        /**
+         * One {@link java.util.zip.ZipOutputStream} on the request thread.
+         */
+        SERIAL,
+        /**
+         * Chunks are deflated concurrently and written in order, each primed with the previous chunk as dictionary.
+         */
+        PARALLEL
+    }
+}
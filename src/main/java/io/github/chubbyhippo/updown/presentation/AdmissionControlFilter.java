@@ -0,0 +1,173 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the concurrent uploads, downloads and zip archives, so that the transfers let in keep their speed instead
+ * of every transfer slowing down together. A request over the limit waits briefly for a slot and is otherwise
+ * turned away with {@code 503 Service Unavailable} and {@code Retry-After}. Streamed bodies hold their slot until
+ * the async request completes; sendfile is withheld from admitted requests, since the container would send the
+ * body only after the slot had been given back.
+ */
+@Component
+@Order(TransferMetricsFilter.ORDER - 1)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+
+    private final AdmissionProperties properties;
+    private final Map<String, ConcurrencyLimiter> limiters;
+    private final Map<String, LongAdder> rejected = Map.of(TransferMetricsFilter.UPLOAD, new LongAdder(),
+            TransferMetricsFilter.DOWNLOAD, new LongAdder(), TransferMetricsFilter.ZIP, new LongAdder());
+
+    public AdmissionControlFilter(AdmissionProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        var limits = properties.limits();
+        this.limiters = Map.of(
+                TransferMetricsFilter.UPLOAD, limiter(limits.upload()),
+                TransferMetricsFilter.DOWNLOAD, limiter(limits.download()),
+                TransferMetricsFilter.ZIP, limiter(limits.zip()));
+        limiters.forEach((operation, limiter) -> {
+            Gauge.builder("storage.admission.limit", limiter, ConcurrencyLimiter::limit)
+                    .tag("operation", operation)
+                    .description("Concurrent transfers currently allowed")
+                    .register(registry);
+            Gauge.builder("storage.admission.queued", limiter, ConcurrencyLimiter::queued)
+                    .tag("operation", operation)
+                    .description("Requests waiting for a slot")
+                    .register(registry);
+        });
+        rejected.forEach((operation, count) -> FunctionCounter.builder("storage.admission.rejected", count,
+                        LongAdder::sum)
+                .tag("operation", operation)
+                .description("Requests turned away with 503")
+                .register(registry));
+    }
+
+    private ConcurrencyLimiter limiter(int limit) {
+        return new ConcurrencyLimiter(limit, properties.adaptive(), properties.tolerance());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.enabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        var operation = TransferMetricsFilter.operation(request);
+        if (operation == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        var limiter = limiters.get(operation);
+        boolean admitted;
+        try {
+            admitted = limiter.acquire(properties.queueTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            rejected.get(operation).increment();
+            reject(response, operation);
+            return;
+        }
+        var permit = new Permit(limiter, request, response);
+        try {
+            filterChain.doFilter(new AdmittedRequest(request), response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            permit.release(true);
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(permit);
+        } else {
+            permit.release(false);
+        }
+    }
+
+    private void reject(HttpServletResponse response, String operation) throws IOException {
+        var seconds = Math.max(1, (properties.retryAfter().toMillis() + 999) / 1000);
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write("Too many concurrent %ss, retry in %d s.".formatted(operation, seconds));
+    }
+
+    private static final class AdmittedRequest extends HttpServletRequestWrapper {
+
+        private AdmittedRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return name.equals(SENDFILE_SUPPORT_ATTRIBUTE) ? Boolean.FALSE : super.getAttribute(name);
+        }
+    }
+
+    private static final class Permit implements AsyncListener {
+
+        private final ConcurrencyLimiter limiter;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(ConcurrencyLimiter limiter, HttpServletRequest request, HttpServletResponse response) {
+            this.limiter = limiter;
+            this.request = request;
+            this.response = response;
+        }
+
+        void release(boolean failed) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            // Counted by the metrics filter inside this one
+            var bytes = request.getAttribute(TransferMetricsFilter.BYTES_ATTRIBUTE) instanceof Long count ? count : 0;
+            limiter.release(System.nanoTime() - start, bytes, failed || response.getStatus() >= 500);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(false);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release(true);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release(true);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Concurrency limits in front of the transfer endpoints.
+ *
+ * @param queueTimeout how long a request over the limit waits for a slot before it is rejected
+ * @param retryAfter   sent as {@code Retry-After} with the {@code 503}
+ * @param adaptive     lower the limits while transfers slow down and raise them again when they recover
+ * @param tolerance    how much slower than the best recently seen a transfer may be before the limit is lowered
+ */
+@ConfigurationProperties("storage.admission")
+public record AdmissionProperties(@DefaultValue("false") boolean enabled,
+                                  @DefaultValue Limits limits,
+                                  @DefaultValue("100ms") Duration queueTimeout,
+                                  @DefaultValue("1s") Duration retryAfter,
+                                  @DefaultValue("false") boolean adaptive,
+                                  @DefaultValue("2.0") double tolerance) {
+
+    /**
+     * Concurrent transfers allowed per operation; the upper bound when adaptive.
+     */
+    public record Limits(@DefaultValue("64") int upload,
+                         @DefaultValue("512") int download,
+                         @DefaultValue("8") int zip) {
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Bandwidth limits per second for uploads and for downloads and zip archives.
+ *
+ * @param burst how far a client that was idle may run ahead of its rate
+ */
+@ConfigurationProperties("storage.bandwidth")
+public record BandwidthProperties(@DefaultValue("false") boolean enabled,
+                                  @DefaultValue Limits upload,
+                                  @DefaultValue Limits download,
+                                  @DefaultValue("1MB") DataSize burst) {
+
+    /**
+     * Bytes per second, zero for no limit.
+     *
+     * @param perClient shared by all transfers from one remote address
+     * @param global    shared by all transfers
+     */
+    public record Limits(@DefaultValue("0") DataSize perClient,
+                         @DefaultValue("0") DataSize global) {
+    }
+}
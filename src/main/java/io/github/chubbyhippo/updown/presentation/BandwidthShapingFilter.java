@@ -0,0 +1,306 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Paces upload and download bodies to per-client and global rates, so that one fast client cannot take the whole
+ * link. Bodies are paced in chunks against lock-free token buckets; a transfer ahead of its rate sleeps, which
+ * only parks its virtual thread. Shaped downloads skip sendfile, since the container would send those bytes
+ * past the stream.
+ */
+@Component
+@Order(TransferMetricsFilter.ORDER + 1)
+public class BandwidthShapingFilter extends OncePerRequestFilter {
+
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // Long enough that an idle client's bucket has refilled before it is dropped
+    private static final Duration CLIENT_IDLE = Duration.ofMinutes(5);
+
+    private final BandwidthProperties properties;
+    private final Direction upload;
+    private final Direction download;
+
+    public BandwidthShapingFilter(BandwidthProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.upload = new Direction("upload", properties.upload(), registry);
+        this.download = new Direction("download", properties.download(), registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.enabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        var operation = TransferMetricsFilter.operation(request);
+        if (operation == null) {
+            filterChain.doFilter(request, response);
+        } else if (operation.equals(TransferMetricsFilter.UPLOAD)) {
+            var throttle = upload.throttle(request);
+            filterChain.doFilter(throttle == null ? request : new ShapedRequest(request, throttle), response);
+        } else {
+            var throttle = download.throttle(request);
+            if (throttle == null) {
+                filterChain.doFilter(request, response);
+            } else {
+                filterChain.doFilter(new ShapedRequest(request, null), new ShapedResponse(response, throttle));
+            }
+        }
+    }
+
+    private final class Direction {
+
+        private final TokenBucket global;
+        private final Cache<String, TokenBucket> clients;
+        private final long perClient;
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder delayed = new LongAdder();
+        private final LongAdder waits = new LongAdder();
+        private final LongAdder waitedNanos = new LongAdder();
+
+        private Direction(String name, BandwidthProperties.Limits limits, MeterRegistry registry) {
+            var burst = properties.burst().toBytes();
+            this.global = limits.global().toBytes() > 0 ? new TokenBucket(limits.global().toBytes(), burst) : null;
+            this.perClient = limits.perClient().toBytes();
+            this.clients = perClient > 0 ? Caffeine.newBuilder().expireAfterAccess(CLIENT_IDLE).build() : null;
+            FunctionCounter.builder("storage.bandwidth.bytes", bytes, LongAdder::sum)
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag("direction", name)
+                    .description("Bytes paced by the bandwidth limits")
+                    .register(registry);
+            FunctionCounter.builder("storage.bandwidth.delayed", delayed, LongAdder::sum)
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag("direction", name)
+                    .description("Bytes held back because a client or the server was over its rate")
+                    .register(registry);
+            FunctionTimer.builder("storage.bandwidth.wait", this, direction -> direction.waits.sum(),
+                            direction -> direction.waitedNanos.sum(), TimeUnit.NANOSECONDS)
+                    .tag("direction", name)
+                    .description("Time transfers slept to stay within their rate")
+                    .register(registry);
+        }
+
+        Throttle throttle(HttpServletRequest request) {
+            if (global == null && clients == null) {
+                return null;
+            }
+            var client = clients == null ? null : clients.get(request.getRemoteAddr(),
+                    ignored -> new TokenBucket(perClient, properties.burst().toBytes()));
+            return new Throttle(this, client, global);
+        }
+    }
+
+    private record Throttle(Direction direction, TokenBucket client, TokenBucket global) {
+
+        void pay(int count) throws IOException {
+            var wait = Math.max(client == null ? 0 : client.take(count), global == null ? 0 : global.take(count));
+            direction.bytes.add(count);
+            if (wait <= 0) {
+                return;
+            }
+            direction.delayed.add(count);
+            direction.waits.increment();
+            direction.waitedNanos.add(wait);
+            try {
+                Thread.sleep(Duration.ofNanos(wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while pacing a transfer.");
+            }
+        }
+    }
+
+    private static final class ShapedRequest extends HttpServletRequestWrapper {
+
+        private final Throttle throttle;
+        private ServletInputStream inputStream;
+
+        private ShapedRequest(HttpServletRequest request, Throttle throttle) {
+            super(request);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            // Keeps the download engine from handing the body to sendfile, which would bypass the pacing
+            return name.equals(SENDFILE_SUPPORT_ATTRIBUTE) ? Boolean.FALSE : super.getAttribute(name);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (throttle == null) {
+                return super.getInputStream();
+            }
+            if (inputStream == null) {
+                inputStream = new ShapedInputStream(super.getInputStream(), throttle);
+            }
+            return inputStream;
+        }
+    }
+
+    private static final class ShapedResponse extends HttpServletResponseWrapper {
+
+        private final Throttle throttle;
+        private ServletOutputStream outputStream;
+
+        private ShapedResponse(HttpServletResponse response, Throttle throttle) {
+            super(response);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new ShapedOutputStream(super.getOutputStream(), throttle);
+            }
+            return outputStream;
+        }
+    }
+
+    private static final class ShapedInputStream extends ServletInputStream {
+
+        private final ServletInputStream delegate;
+        private final Throttle throttle;
+
+        private ShapedInputStream(ServletInputStream delegate, Throttle throttle) {
+            this.delegate = delegate;
+            this.throttle = throttle;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var read = delegate.read();
+            if (read >= 0) {
+                throttle.pay(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            // Paid after reading, so a chunk at most runs ahead of the rate
+            var read = delegate.read(bytes, offset, Math.min(length, CHUNK_SIZE));
+            if (read > 0) {
+                throttle.pay(read);
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return delegate.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return delegate.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            delegate.setReadListener(readListener);
+        }
+    }
+
+    private static final class ShapedOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+        private final Throttle throttle;
+
+        private ShapedOutputStream(ServletOutputStream delegate, Throttle throttle) {
+            this.delegate = delegate;
+            this.throttle = throttle;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            throttle.pay(1);
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            for (var written = 0; written < length; ) {
+                var chunk = Math.min(length - written, CHUNK_SIZE);
+                throttle.pay(chunk);
+                delegate.write(bytes, offset + written, chunk);
+                written += chunk;
+            }
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) throws IOException {
+            // Narrows the limit instead of slicing, so mapped downloads stay zero-copy and allocate nothing
+            var limit = buffer.limit();
+            try {
+                while (buffer.hasRemaining()) {
+                    var chunk = Math.min(buffer.remaining(), CHUNK_SIZE);
+                    throttle.pay(chunk);
+                    buffer.limit(buffer.position() + chunk);
+                    delegate.write(buffer);
+                    buffer.limit(limit);
+                }
+            } finally {
+                buffer.limit(limit);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
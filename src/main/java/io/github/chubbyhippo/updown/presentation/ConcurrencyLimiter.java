@@ -0,0 +1,118 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrency limit with a short wait for a slot. When adaptive, the limit follows AIMD: it shrinks by a tenth
+ * whenever a transfer fails or runs slower than {@code tolerance} times the best time per byte seen lately, and
+ * grows by about one for every limit's worth of fast transfers that ran with at least half the slots taken.
+ */
+final class ConcurrencyLimiter {
+
+    private static final double BACKOFF = 0.9;
+    // Small transfers are measured as if they were this long, so their fixed costs do not look like slowness
+    private static final long MIN_SAMPLE_BYTES = 64 * 1024;
+    // How fast the baseline creeps back up, so that it follows a disk that got slower for good
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int maxLimit;
+    private final boolean adaptive;
+    private final double tolerance;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private double baseline;
+    private int inFlight;
+    private int queued;
+
+    ConcurrencyLimiter(int maxLimit, boolean adaptive, double tolerance) {
+        if (maxLimit < 1) {
+            throw new IllegalArgumentException("Concurrency limit must be at least 1.");
+        }
+        this.maxLimit = maxLimit;
+        this.adaptive = adaptive;
+        this.tolerance = tolerance;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Takes a slot, waiting up to {@code timeout} behind at most as many others as the limit.
+     *
+     * @return whether a slot was taken; if so it must be given back with {@link #release}
+     */
+    boolean acquire(Duration timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            if (queued >= (int) limit) {
+                return false;
+            }
+            queued++;
+            try {
+                var remaining = timeout.toNanos();
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlight++;
+                return true;
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(long nanos, long bytes, boolean failed) {
+        lock.lock();
+        try {
+            var busy = inFlight * 2 >= limit;
+            inFlight--;
+            if (adaptive) {
+                adjust((double) nanos / Math.max(bytes, MIN_SAMPLE_BYTES), failed, busy);
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(double nanosPerByte, boolean failed, boolean busy) {
+        if (baseline == 0 || nanosPerByte < baseline) {
+            baseline = nanosPerByte;
+        } else {
+            baseline += (nanosPerByte - baseline) * BASELINE_DRIFT;
+        }
+        if (failed || nanosPerByte > baseline * tolerance) {
+            limit = Math.max(1, limit * BACKOFF);
+        } else if (busy) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.github.chubbyhippo.updown.application.FileService;
+import io.github.chubbyhippo.updown.domain.DigestedResource;
+import io.github.chubbyhippo.updown.domain.EncodedResource;
+import io.github.chubbyhippo.updown.domain.VersionedResource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+final class DownloadResponses {
+
+    static final String REPR_DIGEST = "Repr-Digest";
+    static final String DIGEST = "Digest";
+
+    private final FileService fileService;
+
+    DownloadResponses(FileService fileService) {
+        this.fileService = fileService;
+    }
+
+    ResponseEntity<StreamingResponseBody> serve(Resource resource, String filename,
+                                                ServletWebRequest webRequest) throws IOException {
+        var response = Objects.requireNonNull(webRequest.getResponse());
+        String contentEncoding = null;
+        if (resource instanceof EncodedResource encoded) {
+            // Set before the conditional check, so a 304 carries it too
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (accepts(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING), encoded.encoding())) {
+                // The stored bytes go out as they are; the encoded representation has its own digest and ETag
+                contentEncoding = encoded.encoding();
+                resource = encoded.encoded();
+            }
+        }
+        var contentLength = resource.contentLength();
+        var lastModified = resource.lastModified();
+        var sha256 = resource instanceof DigestedResource digested ? digested.sha256() : null;
+        // The content digest survives a touch or a copy to another node; the stat-based tag is the fallback
+        String eTag;
+        if (sha256 != null) {
+            eTag = "\"%s\"".formatted(sha256);
+        } else if (resource instanceof VersionedResource versioned) {
+            eTag = "\"%s\"".formatted(versioned.version());
+        } else {
+            eTag = "\"%x-%x\"".formatted(lastModified, contentLength);
+        }
+        if (webRequest.checkNotModified(eTag, lastModified)) {
+            return null;
+        }
+
+        var request = webRequest.getRequest();
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename*=UTF-8''" + URLEncoder.encode(filename, StandardCharsets.UTF_8));
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setETag(eTag);
+        headers.setLastModified(lastModified);
+        if (contentEncoding != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        }
+        if (sha256 != null) {
+            // Digest of the whole representation, so it is the same on range responses
+            var base64 = Base64.getEncoder().encodeToString(HexFormat.of().parseHex(sha256));
+            headers.set(REPR_DIGEST, "sha-256=:%s:".formatted(base64));
+            headers.set(DIGEST, "sha-256=%s".formatted(base64));
+        }
+
+        var range = request.getHeader(HttpHeaders.RANGE);
+        if (range == null || !ifRangeMatches(request, eTag, lastModified)) {
+            return region(HttpStatus.OK, resource, 0, contentLength, headers, request, response);
+        }
+
+        List<ResourceRegion> regions;
+        try {
+            regions = HttpRange.toResourceRegions(HttpRange.parseRanges(range), resource);
+        } catch (IllegalArgumentException e) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+        }
+        if (regions.size() == 1) {
+            var region = regions.getFirst();
+            headers.set(HttpHeaders.CONTENT_RANGE, contentRange(region, contentLength));
+            return region(HttpStatus.PARTIAL_CONTENT, resource, region.getPosition(), region.getCount(),
+                    headers, request, response);
+        }
+        return byteRanges(resource, regions, contentLength, headers, request, response);
+    }
+
+    private ResponseEntity<StreamingResponseBody> region(HttpStatus status, Resource resource,
+                                                         long position, long count, HttpHeaders headers,
+                                                         HttpServletRequest request,
+                                                         HttpServletResponse response) {
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentLength(count);
+        var builder = ResponseEntity.status(status).headers(headers);
+        if (HttpMethod.HEAD.matches(request.getMethod())
+                || fileService.offload(resource, position, count, request)) {
+            return builder.build();
+        }
+        // Write to the servlet stream itself: the stream handed to the body hides it behind a non-flushing wrapper
+        return builder.body(ignored ->
+                fileService.transfer(resource, position, count, response.getOutputStream()));
+    }
+
+    private ResponseEntity<StreamingResponseBody> byteRanges(Resource resource, List<ResourceRegion> regions,
+                                                             long contentLength, HttpHeaders headers,
+                                                             HttpServletRequest request,
+                                                             HttpServletResponse response) {
+        var boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        var partHeaders = new ArrayList<byte[]>(regions.size());
+        var closingDelimiter = "\r\n--%s--\r\n".formatted(boundary).getBytes(StandardCharsets.US_ASCII);
+        long multipartLength = closingDelimiter.length;
+        for (var region : regions) {
+            var partHeader = "\r\n--%s\r\nContent-Type: %s\r\nContent-Range: %s\r\n\r\n"
+                    .formatted(boundary, MediaType.APPLICATION_OCTET_STREAM_VALUE, contentRange(region, contentLength))
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            multipartLength += partHeader.length + region.getCount();
+        }
+
+        headers.setContentType(new MediaType("multipart", "byteranges", Map.of("boundary", boundary)));
+        headers.setContentLength(multipartLength);
+        var builder = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return builder.build();
+        }
+        return builder.body(ignored -> {
+            var outputStream = response.getOutputStream();
+            for (var i = 0; i < regions.size(); i++) {
+                var region = regions.get(i);
+                outputStream.write(partHeaders.get(i));
+                fileService.transfer(resource, region.getPosition(), region.getCount(), outputStream);
+            }
+            outputStream.write(closingDelimiter);
+        });
+    }
+
+    private static String contentRange(ResourceRegion region, long contentLength) {
+        return "bytes %d-%d/%d".formatted(region.getPosition(),
+                region.getPosition() + region.getCount() - 1, contentLength);
+    }
+
+    private static boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        var wildcard = false;
+        for (var token : acceptEncoding.split(",")) {
+            var parts = token.split(";");
+            var coding = parts[0].trim();
+            var accepted = true;
+            for (var i = 1; i < parts.length; i++) {
+                var parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (coding.equalsIgnoreCase(encoding)) {
+                return accepted;
+            }
+            if (coding.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard;
+    }
+
+    private static boolean ifRangeMatches(HttpServletRequest request, String eTag, long lastModified) {
+        var ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range requires a strong comparison, so weak tags never match
+            return ifRange.equals(eTag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) == lastModified / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -1,27 +1,71 @@
 package io.github.chubbyhippo.updown.presentation;
 
+import io.github.chubbyhippo.updown.application.BatchUploadService;
+import io.github.chubbyhippo.updown.application.FilePage;
+import io.github.chubbyhippo.updown.application.FileQuery;
 import io.github.chubbyhippo.updown.application.FileService;
-import org.springframework.core.io.Resource;
+import io.github.chubbyhippo.updown.application.UploadResult;
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import io.github.chubbyhippo.updown.domain.InvalidFileQueryException;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import tools.jackson.databind.json.JsonMapper;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 
 @RestController
+@ImportRuntimeHints(WebRuntimeHints.class)
 public class FileController {
 
     private final FileService fileService;
+    private final BatchUploadService batchUploadService;
+    private final JsonMapper jsonMapper;
+    private final DownloadResponses downloadResponses;
 
-    public FileController(FileService fileService) {
+    public FileController(FileService fileService, BatchUploadService batchUploadService, JsonMapper jsonMapper) {
         this.fileService = fileService;
+        this.batchUploadService = batchUploadService;
+        this.jsonMapper = jsonMapper;
+        this.downloadResponses = new DownloadResponses(fileService);
+    }
+
+    /**
+     * Listing filters; {@code sort} is {@code name}, {@code size} or {@code lastModified}, prefixed with
+     * {@code -} for descending order.
+     */
+    public record ListFilesRequest(String prefix,
+                                   Long minSize,
+                                   Long maxSize,
+                                   Instant modifiedAfter,
+                                   Instant modifiedBefore,
+                                   String sort,
+                                   String cursor) {
+
+        FileQuery toQuery() {
+            var sortField = sort == null ? "name" : sort;
+            var descending = sortField.startsWith("-");
+            var sortKey = switch (descending ? sortField.substring(1) : sortField) {
+                case "name" -> FileQuery.Sort.NAME;
+                case "size" -> FileQuery.Sort.SIZE;
+                case "lastModified" -> FileQuery.Sort.LAST_MODIFIED;
+                default -> throw new InvalidFileQueryException("Unknown sort: %s".formatted(sort));
+            };
+            return new FileQuery(prefix, minSize, maxSize, modifiedAfter, modifiedBefore, sortKey, descending, cursor);
+        }
     }
 
     @PostMapping(value = "/file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -32,32 +76,90 @@ public class FileController {
 
     @PostMapping(value = "/files", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public String upload(@RequestPart("file") List<MultipartFile> files) {
-        files.forEach(fileService::uploadFile);
+        batchUploadService.uploadAll(files);
         return "Files uploaded successfully";
     }
 
+    /**
+     * Per-file results; {@code 207 Multi-Status} when any part was not stored.
+     */
+    @PostMapping(value = "/files", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<UploadResult>> upload(@RequestPart("file") List<MultipartFile> files,
+                                                     @RequestParam(defaultValue = "false") boolean atomic) {
+        var results = batchUploadService.upload(files, atomic);
+        var stored = results.stream().allMatch(result -> result.status() == UploadResult.Status.STORED);
+        return ResponseEntity.status(stored ? HttpStatus.OK : HttpStatus.MULTI_STATUS).body(results);
+    }
+
+    @PutMapping("/files/{filename:.+}")
+    public String upload(@PathVariable String filename, InputStream body) {
+        fileService.uploadFile(filename, body);
+        return "File uploaded successfully: " + filename;
+    }
+
     @GetMapping("/files")
     public Stream<String> listFiles() {
         return fileService.listFiles();
     }
 
+    @GetMapping(value = "/files", params = "limit", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<FilePage> listFiles(ListFilesRequest request, @RequestParam int limit) {
+        var page = fileService.listFiles(request.toQuery(), limit);
+        var response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            var next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", page.nextCursor())
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<%s>; rel=\"next\"".formatted(next));
+        }
+        return response.body(page);
+    }
+
+    @GetMapping(value = "/files", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFiles(ListFilesRequest request,
+                                                             @RequestParam(required = false) Integer limit) {
+        // Unbounded by default, since the listing is streamed, but a limit given has to be one
+        if (limit != null && limit < 1) {
+            throw new InvalidFileQueryException("Limit must be at least 1.");
+        }
+        var files = fileService.findFiles(request.toQuery());
+        var limited = limit == null ? files : files.limit(limit);
+        StreamingResponseBody body = outputStream -> {
+            // One object per line, written as the listing is walked, so neither side holds the whole result
+            try (limited; var bufferedOutputStream = new BufferedOutputStream(outputStream)) {
+                for (var metadata : (Iterable<FileMetadata>) limited::iterator) {
+                    bufferedOutputStream.write(jsonMapper.writeValueAsBytes(metadata));
+                    bufferedOutputStream.write('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @GetMapping(value = "/files/{filename:.+}")
-    public ResponseEntity<Resource> serveFile(@PathVariable String filename) {
+    public ResponseEntity<StreamingResponseBody> serveFile(@PathVariable String filename,
+                                                           ServletWebRequest webRequest) throws IOException {
         var resource = fileService.loadAsResource(filename);
+        return downloadResponses.serve(resource, Objects.requireNonNull(resource.getFilename()), webRequest);
+    }
 
-        var encodedFilename = URLEncoder.encode(Objects.requireNonNull(resource.getFilename()), StandardCharsets.UTF_8);
-
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename*=UTF-8''" + encodedFilename)
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(resource);
+    /**
+     * The files as a stored archive with a known length, so it can be resumed with a Range request.
+     */
+    @GetMapping("/zip")
+    public ResponseEntity<StreamingResponseBody> storedZip(@RequestParam(name = "file") List<String> filenames,
+                                                           ServletWebRequest webRequest) throws IOException {
+        return downloadResponses.serve(fileService.storedZip(filenames), "files.zip", webRequest);
     }
 
     @PostMapping("/zip")
-    public ResponseEntity<StreamingResponseBody> zipFiles(@RequestBody List<String> filenames) {
+    public ResponseEntity<StreamingResponseBody> zipFiles(@RequestBody List<String> filenames,
+                                                          @RequestParam(required = false) Integer level) {
 
-        var streamingResponseBody = fileService.zipFiles(filenames.stream());
+        var streamingResponseBody = fileService.zipFiles(filenames.stream(), level);
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION,
                         "attachment; filename=\"files.zip\"")
@@ -0,0 +1,51 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records how long after the JVM started the first request arrived, which is what a restart costs the clients
+ * rather than the time the context took to refresh.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FirstRequestFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(FirstRequestFilter.class);
+
+    private final MeterRegistry registry;
+    private final AtomicBoolean seen = new AtomicBoolean();
+
+    public FirstRequestFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (!seen.get() && seen.compareAndSet(false, true)) {
+            var uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            TimeGauge.builder("application.first.request.time", () -> uptime, TimeUnit.MILLISECONDS)
+                    .description("Time from the start of the JVM to the first request")
+                    .register(registry);
+            log.info("First request {} {} arrived {} ms after the JVM started",
+                    request.getMethod(), request.getRequestURI(), uptime);
+        }
+        filterChain.doFilter(request, response);
+    }
+}
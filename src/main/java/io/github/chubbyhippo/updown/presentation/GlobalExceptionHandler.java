@@ -1,8 +1,14 @@
 package io.github.chubbyhippo.updown.presentation;
 
 import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.InvalidFileQueryException;
+import io.github.chubbyhippo.updown.domain.InvalidFilenameException;
 import io.github.chubbyhippo.updown.domain.StorageException;
 import io.github.chubbyhippo.updown.domain.StorageFileNotFoundException;
+import io.github.chubbyhippo.updown.domain.UploadConflictException;
+import io.github.chubbyhippo.updown.domain.UploadSessionNotFoundException;
+import io.github.chubbyhippo.updown.domain.ZipJobNotFoundException;
+import io.github.chubbyhippo.updown.domain.ZipJobNotReadyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -17,6 +23,18 @@ public class GlobalExceptionHandler {
         return emptyFileException.getMessage();
     }
 
+    @ExceptionHandler(InvalidFileQueryException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String handleInvalidFileQueryException(InvalidFileQueryException invalidFileQueryException) {
+        return invalidFileQueryException.getMessage();
+    }
+
+    @ExceptionHandler(InvalidFilenameException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String handleInvalidFilenameException(InvalidFilenameException invalidFilenameException) {
+        return invalidFilenameException.getMessage();
+    }
+
     @ExceptionHandler(StorageException.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public String handleStorageException(StorageException storageException) {
@@ -29,4 +47,28 @@ public class GlobalExceptionHandler {
         return storageFileNotFoundException.getMessage();
     }
 
+    @ExceptionHandler(UploadSessionNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public String handleUploadSessionNotFoundException(UploadSessionNotFoundException uploadSessionNotFoundException) {
+        return uploadSessionNotFoundException.getMessage();
+    }
+
+    @ExceptionHandler(UploadConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public String handleUploadConflictException(UploadConflictException uploadConflictException) {
+        return uploadConflictException.getMessage();
+    }
+
+    @ExceptionHandler(ZipJobNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public String handleZipJobNotFoundException(ZipJobNotFoundException zipJobNotFoundException) {
+        return zipJobNotFoundException.getMessage();
+    }
+
+    @ExceptionHandler(ZipJobNotReadyException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public String handleZipJobNotReadyException(ZipJobNotReadyException zipJobNotReadyException) {
+        return zipJobNotReadyException.getMessage();
+    }
+
 }
@@ -0,0 +1,41 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket over bytes that takes no lock. Rather than a token count it keeps the time by which everything
+ * taken so far is paid for, so taking tokens is a single compare-and-set, and a caller that takes more than the
+ * bucket holds is told how long to wait off the debt.
+ */
+final class TokenBucket {
+
+    private final double nanosPerByte;
+    private final long burstNanos;
+    private final AtomicLong paidUntil;
+
+    TokenBucket(long bytesPerSecond, long burstBytes) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive.");
+        }
+        this.nanosPerByte = 1e9 / bytesPerSecond;
+        this.burstNanos = (long) (Math.max(burstBytes, 1) * nanosPerByte);
+        // Starts full
+        this.paidUntil = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    /**
+     * @return nanoseconds to wait before sending the bytes, zero if the bucket held enough
+     */
+    long take(long bytes) {
+        var cost = (long) (bytes * nanosPerByte);
+        while (true) {
+            var now = System.nanoTime();
+            var previous = paidUntil.get();
+            // An idle bucket only fills up to the burst
+            var next = Math.max(previous, now - burstNanos) + cost;
+            if (paidUntil.compareAndSet(previous, next)) {
+                return Math.max(0, next - now);
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.http.Outcome;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Duration, bytes and in-flight count of uploads, downloads and zip archives, and errors by exception type,
+ * tagged with the matched endpoint. Streamed bodies are measured until the async request completes. Sendfile
+ * bodies are sent by the container after the filter chain returns, so they are kept out of the throughput meters
+ * and only their size is recorded.
+ */
+@Component
+@Order(TransferMetricsFilter.ORDER)
+public class TransferMetricsFilter extends OncePerRequestFilter {
+
+    static final int ORDER = Ordered.LOWEST_PRECEDENCE - 10;
+
+    /**
+     * The bytes of a finished transfer, for filters around this one.
+     */
+    static final String BYTES_ATTRIBUTE = TransferMetricsFilter.class.getName() + ".bytes";
+
+    static final String UPLOAD = "upload";
+    static final String DOWNLOAD = "download";
+    static final String ZIP = "zip";
+
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> active = Map.of(
+            UPLOAD, new AtomicInteger(), DOWNLOAD, new AtomicInteger(), ZIP, new AtomicInteger());
+
+    public TransferMetricsFilter(MeterRegistry registry) {
+        this.registry = registry;
+        active.forEach((operation, count) -> Gauge.builder("storage.transfer.active", count, AtomicInteger::get)
+                .tag("operation", operation)
+                .description("Transfers in progress")
+                .register(registry));
+    }
+
+    static String operation(HttpServletRequest request) {
+        var path = request.getRequestURI().substring(request.getContextPath().length());
+        var method = HttpMethod.valueOf(request.getMethod());
+        if ((path.startsWith("/files/") || path.equals("/zip")
+                || (path.startsWith("/zip-jobs/") && path.endsWith("/archive")))
+                && (method == HttpMethod.GET || method == HttpMethod.HEAD)) {
+            return DOWNLOAD;
+        }
+        if ((path.startsWith("/files/") && method == HttpMethod.PUT)
+                || ((path.equals("/file") || path.equals("/files")) && method == HttpMethod.POST)
+                || (path.startsWith("/uploads/") && method == HttpMethod.PATCH)) {
+            return UPLOAD;
+        }
+        if (path.equals("/zip") && method == HttpMethod.POST) {
+            return ZIP;
+        }
+        return null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        var transfer = new Transfer(operation(request), new CountingRequest(request), new CountingResponse(response));
+        try {
+            filterChain.doFilter(transfer.request, transfer.response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            transfer.finish(e);
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(transfer);
+        } else {
+            transfer.finish(null);
+        }
+    }
+
+    private final class Transfer implements AsyncListener {
+
+        private final String operation;
+        private final CountingRequest request;
+        private final CountingResponse response;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Transfer(String operation, CountingRequest request, CountingResponse response) {
+            this.operation = operation;
+            this.request = request;
+            this.response = response;
+            if (operation != null) {
+                active.get(operation).incrementAndGet();
+            }
+        }
+
+        void finish(Throwable failure) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            var elapsed = System.nanoTime() - start;
+            var pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            var endpoint = pattern == null ? "UNKNOWN" : pattern.toString();
+            var error = failure != null ? failure : request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE);
+            if (error != null) {
+                Counter.builder("storage.errors")
+                        .tag("endpoint", endpoint)
+                        .tag("exception", error.getClass().getSimpleName())
+                        .description("Requests that failed, by exception type")
+                        .register(registry)
+                        .increment();
+            }
+            if (operation == null) {
+                return;
+            }
+            active.get(operation).decrementAndGet();
+            var bytes = bytes();
+            request.setAttribute(BYTES_ATTRIBUTE, bytes);
+            var status = failure != null ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+            var tags = Tags.of("operation", operation, "endpoint", endpoint, "method", request.getMethod(),
+                    "outcome", Outcome.forStatus(status).name());
+            if (request.getAttribute(SENDFILE_START_ATTRIBUTE) != null) {
+                // Timed only up to the hand-off, which would make the transfer look far faster than it is
+                DistributionSummary.builder("storage.transfer.sendfile")
+                        .baseUnit(BaseUnits.BYTES)
+                        .tags(tags)
+                        .description("Bytes handed to the container's sendfile, which sends them after the request")
+                        .register(registry)
+                        .record(bytes);
+                return;
+            }
+            Timer.builder("storage.transfer.duration")
+                    .tags(tags)
+                    .description("Time from the request to the last byte of the response")
+                    .register(registry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            DistributionSummary.builder("storage.transfer.bytes")
+                    .baseUnit(BaseUnits.BYTES)
+                    .tags(tags)
+                    .description("Bytes received for uploads, sent for downloads and archives")
+                    .register(registry)
+                    .record(bytes);
+        }
+
+        private long bytes() {
+            if (operation.equals(UPLOAD)) {
+                // Multipart bodies are parsed by the container from its own stream, so only the length is seen
+                return request.count.sum() > 0 ? request.count.sum() : Math.max(request.getContentLengthLong(), 0);
+            }
+            // Sendfile writes behind the servlet stream
+            if (request.getAttribute(SENDFILE_START_ATTRIBUTE) instanceof Long start
+                    && request.getAttribute(SENDFILE_END_ATTRIBUTE) instanceof Long end) {
+                return response.count.sum() + end - start;
+            }
+            return response.count.sum();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish(null);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            finish(event.getThrowable());
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finish(event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    private static final class CountingRequest extends HttpServletRequestWrapper {
+
+        private final LongAdder count = new LongAdder();
+        private ServletInputStream inputStream;
+
+        private CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new CountingInputStream(super.getInputStream(), count);
+            }
+            return inputStream;
+        }
+    }
+
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+
+        private final LongAdder count = new LongAdder();
+        private ServletOutputStream outputStream;
+
+        private CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingOutputStream(super.getOutputStream(), count);
+            }
+            return outputStream;
+        }
+    }
+
+    private static final class CountingInputStream extends ServletInputStream {
+
+        private final ServletInputStream delegate;
+        private final LongAdder count;
+
+        private CountingInputStream(ServletInputStream delegate, LongAdder count) {
+            this.delegate = delegate;
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var read = delegate.read();
+            if (read >= 0) {
+                count.increment();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            var read = delegate.read(bytes, offset, length);
+            if (read > 0) {
+                count.add(read);
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return delegate.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return delegate.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            delegate.setReadListener(readListener);
+        }
+    }
+
+    private static final class CountingOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+        private final LongAdder count;
+
+        private CountingOutputStream(ServletOutputStream delegate, LongAdder count) {
+            this.delegate = delegate;
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count.increment();
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            delegate.write(bytes, offset, length);
+            count.add(length);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) throws IOException {
+            // Passed through as a buffer, so mapped downloads keep their zero-copy write
+            var length = buffer.remaining();
+            delegate.write(buffer);
+            count.add(length - buffer.remaining());
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.github.chubbyhippo.updown.application.ResumableUploadService;
+import io.github.chubbyhippo.updown.domain.UploadSession;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("/uploads")
+public class UploadController {
+
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+    static final String UPLOAD_LENGTH = "Upload-Length";
+
+    private final ResumableUploadService resumableUploadService;
+
+    public UploadController(ResumableUploadService resumableUploadService) {
+        this.resumableUploadService = resumableUploadService;
+    }
+
+    public record CreateUploadRequest(String filename, long length) {
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadSession> create(@RequestBody CreateUploadRequest request) {
+        var session = resumableUploadService.create(request.filename(), request.length());
+        var location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .path("/{id}")
+                .buildAndExpand(session.id())
+                .toUri();
+        return ResponseEntity.created(location).body(session);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<UploadSession> get(@PathVariable String id) {
+        var session = resumableUploadService.get(id);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .header(UPLOAD_OFFSET, String.valueOf(session.committedOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(session.length()))
+                .body(session);
+    }
+
+    @PatchMapping("/{id}")
+    public ResponseEntity<Void> writeChunk(@PathVariable String id,
+                                           @RequestHeader(UPLOAD_OFFSET) long offset,
+                                           InputStream body) {
+        var session = resumableUploadService.writeChunk(id, offset, body);
+        return ResponseEntity.noContent()
+                .header(UPLOAD_OFFSET, String.valueOf(session.committedOffset()))
+                .build();
+    }
+
+    @PostMapping("/{id}/complete")
+    public String complete(@PathVariable String id) {
+        var session = resumableUploadService.complete(id);
+        return "File uploaded successfully: " + session.filename();
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abort(@PathVariable String id) {
+        resumableUploadService.abort(id);
+        return ResponseEntity.noContent().build();
+    }
+}
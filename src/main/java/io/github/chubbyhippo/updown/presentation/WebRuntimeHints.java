@@ -0,0 +1,22 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * What a native image cannot see from the handler signatures: metadata serialized inside a streamed listing,
+ * the query object bound from request parameters, and the Swagger UI assets springdoc serves.
+ */
+class WebRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                FileMetadata.class, FileController.ListFilesRequest.class);
+        hints.resources()
+                .registerPattern("META-INF/resources/webjars/swagger-ui/**")
+                .registerPattern("META-INF/maven/org.webjars/swagger-ui/pom.properties");
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.github.chubbyhippo.updown.application.FileService;
+import io.github.chubbyhippo.updown.application.ZipJobService;
+import io.github.chubbyhippo.updown.domain.ZipJob;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+@RestController
+@RequestMapping("/zip-jobs")
+public class ZipJobController {
+
+    private final ZipJobService zipJobService;
+    private final DownloadResponses downloadResponses;
+
+    public ZipJobController(ZipJobService zipJobService, FileService fileService) {
+        this.zipJobService = zipJobService;
+        this.downloadResponses = new DownloadResponses(fileService);
+    }
+
+    @PostMapping
+    public ResponseEntity<ZipJob> submit(@RequestBody List<String> filenames,
+                                         @RequestParam(required = false) Integer level) {
+        var job = zipJobService.submit(filenames, level);
+        var location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQuery(null)
+                .path("/{id}")
+                .buildAndExpand(job.id())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ZipJob> get(@PathVariable String id) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(zipJobService.get(id));
+    }
+
+    @GetMapping("/{id}/archive")
+    public ResponseEntity<StreamingResponseBody> download(@PathVariable String id,
+                                                          ServletWebRequest webRequest) throws IOException {
+        return downloadResponses.serve(zipJobService.loadArchive(id), "files.zip", webRequest);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(@PathVariable String id) {
+        zipJobService.delete(id);
+        return ResponseEntity.noContent().build();
+    }
+}
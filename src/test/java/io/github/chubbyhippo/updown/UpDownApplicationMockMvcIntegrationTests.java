@@ -1,6 +1,7 @@
 package io.github.chubbyhippo.updown;
 
-import io.github.chubbyhippo.updown.domain.StorageService;
+import io.github.chubbyhippo.updown.domain.ZipJobStore;
+import io.github.chubbyhippo.updown.infrastructure.FileSystemStorageService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -19,16 +20,27 @@ import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 import tools.jackson.databind.json.JsonMapper;
 
+import java.io.ByteArrayInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
@@ -43,11 +55,16 @@ class UpDownApplicationMockMvcIntegrationTests {
     @Autowired
     private JsonMapper jsonMapper;
     @Autowired
-    private StorageService storageService;
+    private FileSystemStorageService storageService;
+    @Autowired
+    private ZipJobStore zipJobStore;
 
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
         registry.add("storage.location", () -> tempDir.toString());
+        registry.add("storage.uploads.location", () -> tempDir.resolve("uploads").toString());
+        registry.add("storage.zip-jobs.cache.location", () -> tempDir.resolve("zip-jobs").toString());
+        registry.add("storage.compression.enabled", () -> "true");
     }
 
     @BeforeEach
@@ -102,6 +119,112 @@ class UpDownApplicationMockMvcIntegrationTests {
 
     }
 
+    @Test
+    @DisplayName("test atomic batch upload stores nothing when a part fails")
+    void testAtomicBatchUploadStoresNothingWhenAPartFails() throws Exception {
+        var file = new MockMultipartFile("file", "batch.txt", MediaType.TEXT_PLAIN_VALUE, "batch".getBytes());
+        var empty = new MockMultipartFile("file", "empty.txt", MediaType.TEXT_PLAIN_VALUE, new byte[0]);
+
+        mockMvc.perform(multipart("/files?atomic=true")
+                        .file(file)
+                        .file(empty)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$[0].status").value("ROLLED_BACK"))
+                .andExpect(jsonPath("$[1].status").value("FAILED"));
+        assertThat(tempDir.resolve("batch.txt")).doesNotExist();
+
+        mockMvc.perform(multipart("/files?atomic=true")
+                        .file(file)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("STORED"))
+                .andExpect(jsonPath("$[0].bytes").value(5));
+        assertThat(tempDir.resolve("batch.txt")).hasContent("batch");
+    }
+
+    @Test
+    @DisplayName("test stream upload file")
+    void testStreamUploadFile() throws Exception {
+        mockMvc.perform(put("/files/{filename}", "streamed.txt")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content("Hello, World!".getBytes()))
+                .andExpect(status().isOk())
+                .andExpect(content().string("File uploaded successfully: streamed.txt"));
+
+        assertThat(tempDir.resolve("streamed.txt")).hasContent("Hello, World!");
+    }
+
+    @Test
+    @DisplayName("test reject an upload under a name the storage keeps for itself")
+    void testRejectAnUploadUnderANameTheStorageKeepsForItself() throws Exception {
+        for (var name : List.of(".staging", ".index", ".digests")) {
+            mockMvc.perform(put("/files/{filename}", name)
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .content("Hello, World!".getBytes()))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(content().string("Cannot store file under a reserved name: %s".formatted(name)));
+        }
+        assertThat(Files.isRegularFile(tempDir.resolve(".digests"))).isFalse();
+    }
+
+    @Test
+    @DisplayName("test resumable upload")
+    void testResumableUpload() throws Exception {
+        var createResponse = mockMvc.perform(post("/uploads")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"filename": "resumed.txt", "length": 10}
+                                """))
+                .andExpect(status().isCreated())
+                .andExpect(header().exists(HttpHeaders.LOCATION))
+                .andReturn().getResponse();
+        var id = jsonMapper.readTree(createResponse.getContentAsString()).get("id").asString();
+
+        mockMvc.perform(patch("/uploads/{id}", id)
+                        .header("Upload-Offset", 5)
+                        .content("56789".getBytes()))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("Upload-Offset", "0"));
+        mockMvc.perform(post("/uploads/{id}/complete", id))
+                .andExpect(status().isConflict());
+        mockMvc.perform(patch("/uploads/{id}", id)
+                        .header("Upload-Offset", 0)
+                        .content("01234".getBytes()))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("Upload-Offset", "10"));
+        mockMvc.perform(get("/uploads/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Upload-Offset", "10"));
+
+        mockMvc.perform(post("/uploads/{id}/complete", id))
+                .andExpect(status().isOk())
+                .andExpect(content().string("File uploaded successfully: resumed.txt"));
+
+        assertThat(tempDir.resolve("resumed.txt")).hasContent("0123456789");
+        mockMvc.perform(get("/uploads/{id}", id))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("test reject a resumable upload whose filename cannot be stored")
+    void testRejectAResumableUploadWhoseFilenameCannotBeStored() throws Exception {
+        mockMvc.perform(post("/uploads")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"filename": "../escaped.txt", "length": 10}
+                                """))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Cannot store file outside current directory."));
+        mockMvc.perform(post("/uploads")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"length": 10}
+                                """))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Filename is required."));
+    }
+
     @Test
     @DisplayName("test list files")
     void testListFiles() throws Exception {
@@ -110,6 +233,7 @@ class UpDownApplicationMockMvcIntegrationTests {
 
         var path2 = tempDir.resolve("testList2.txt");
         Files.write(path2, "test2".getBytes());
+        storageService.reconcile();
 
         var mvcResult = mockMvc.perform(get("/files")
                         .accept(MediaType.APPLICATION_JSON))
@@ -138,6 +262,202 @@ class UpDownApplicationMockMvcIntegrationTests {
                         "attachment; filename*=UTF-8''" + filename));
     }
 
+    @Test
+    @DisplayName("test download file range")
+    void testDownloadFileRange() throws Exception {
+        var filename = "range.txt";
+        Files.write(tempDir.resolve(filename), "0123456789".getBytes());
+
+        var mvcResult = mockMvc.perform(get("/files/{filename}", filename)
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    @DisplayName("test download file multiple ranges")
+    void testDownloadFileMultipleRanges() throws Exception {
+        var filename = "multirange.txt";
+        Files.write(tempDir.resolve(filename), "0123456789".getBytes());
+
+        var mvcResult = mockMvc.perform(get("/files/{filename}", filename)
+                        .header(HttpHeaders.RANGE, "bytes=0-1,8-9"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        var response = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isPartialContent())
+                .andReturn().getResponse();
+
+        assertThat(response.getContentType()).startsWith("multipart/byteranges");
+        assertThat(response.getContentAsString())
+                .contains("Content-Range: bytes 0-1/10\r\n\r\n01")
+                .contains("Content-Range: bytes 8-9/10\r\n\r\n89");
+        assertThat(response.getContentAsByteArray()).hasSize(response.getContentLength());
+    }
+
+    @Test
+    @DisplayName("test download file range with matching if-range")
+    void testDownloadFileRangeWithMatchingIfRange() throws Exception {
+        var filename = "ifrange.txt";
+        Files.write(tempDir.resolve(filename), "0123456789".getBytes());
+
+        var eTag = mockMvc.perform(get("/files/{filename}", filename))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        var mvcResult = mockMvc.perform(get("/files/{filename}", filename)
+                        .header(HttpHeaders.RANGE, "bytes=5-")
+                        .header(HttpHeaders.IF_RANGE, eTag))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("56789"));
+    }
+
+    @Test
+    @DisplayName("test download full file when if-range is stale")
+    void testDownloadFullFileWhenIfRangeIsStale() throws Exception {
+        var filename = "stale.txt";
+        Files.write(tempDir.resolve(filename), "0123456789".getBytes());
+
+        var mvcResult = mockMvc.perform(get("/files/{filename}", filename)
+                        .header(HttpHeaders.RANGE, "bytes=5-")
+                        .header(HttpHeaders.IF_RANGE, "\"stale\""))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    @DisplayName("test return not modified when etag matches")
+    void testReturnNotModifiedWhenETagMatches() throws Exception {
+        var filename = "cached.txt";
+        Files.write(tempDir.resolve(filename), "0123456789".getBytes());
+
+        var eTag = mockMvc.perform(get("/files/{filename}", filename))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/files/{filename}", filename)
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @DisplayName("test serve digest of an uploaded file")
+    void testServeDigestOfAnUploadedFile() throws Exception {
+        mockMvc.perform(put("/files/{filename}", "digest.txt")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content("hello".getBytes()))
+                .andExpect(status().isOk());
+
+        // sha256("hello")
+        var sha256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+        var base64 = "LPJNul+wow4m6DsqxbninhsWHlwfp0JecwQzYpOLmCQ=";
+        mockMvc.perform(get("/files/{filename}", "digest.txt"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"%s\"".formatted(sha256)))
+                .andExpect(header().string("Repr-Digest", "sha-256=:%s:".formatted(base64)))
+                .andExpect(header().string("Digest", "sha-256=%s".formatted(base64)));
+
+        mockMvc.perform(get("/files/{filename}", "digest.txt")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"%s\"".formatted(sha256)))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @DisplayName("test negotiate the encoding of a compressed file")
+    void testNegotiateTheEncodingOfACompressedFile() throws Exception {
+        var text = "lorem ipsum dolor sit amet ".repeat(1_000).getBytes();
+        mockMvc.perform(put("/files/{filename}", "compressed.txt")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(text))
+                .andExpect(status().isOk());
+        var stored = Files.readAllBytes(tempDir.resolve("compressed.txt"));
+
+        var gzipped = mockMvc.perform(get("/files/{filename}", "compressed.txt")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "br;q=1, gzip;q=0.5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(gzipped))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, stored.length))
+                .andExpect(content().bytes(stored));
+
+        var identity = mockMvc.perform(get("/files/{filename}", "compressed.txt")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(identity))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, text.length))
+                .andExpect(content().bytes(text));
+    }
+
+    @Test
+    @DisplayName("test return range not satisfiable")
+    void testReturnRangeNotSatisfiable() throws Exception {
+        var filename = "unsatisfiable.txt";
+        Files.write(tempDir.resolve(filename), "0123456789".getBytes());
+
+        mockMvc.perform(get("/files/{filename}", filename)
+                        .header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    @DisplayName("test list files page by page")
+    void testListFilesPageByPage() throws Exception {
+        for (var name : List.of("page-a.txt", "page-b.txt", "page-c.txt")) {
+            mockMvc.perform(put("/files/{filename}", name).content(name.getBytes()))
+                    .andExpect(status().isOk());
+        }
+
+        var first = mockMvc.perform(get("/files?prefix=page-&limit=2")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].name").value(contains("page-a.txt", "page-b.txt")))
+                .andReturn();
+        var cursor = jsonMapper.readTree(first.getResponse().getContentAsString()).get("nextCursor").asString();
+
+        mockMvc.perform(get("/files?prefix=page-&limit=2&cursor=" + cursor)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].name").value(contains("page-c.txt")))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist())
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+
+        var ndjson = mockMvc.perform(get("/files?prefix=page-&sort=-name")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("{\"name\":\"page-c.txt\",\"size\":10,")));
+        mockMvc.perform(get("/files?prefix=page-&limit=0")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Limit must be at least 1."));
+    }
+
     @Test
     @DisplayName("test return bad request when uploading an empty file")
     void testReturnBadRequestWhenUploadingAnEmptyFile() throws Exception {
@@ -175,4 +495,91 @@ class UpDownApplicationMockMvcIntegrationTests {
                         "attachment; filename=\"files.zip\""))
                 .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM));
     }
+
+    @Test
+    @DisplayName("test resume a stored zip")
+    void testResumeAStoredZip() throws Exception {
+        // Stored through the service, so the index never holds a half-written size the layout would use
+        storageService.store("stored1.txt", new ByteArrayInputStream("stored1".getBytes()));
+        storageService.store("stored2.txt", new ByteArrayInputStream("stored2".getBytes()));
+
+        var full = mockMvc.perform(get("/zip?file=stored1.txt&file=stored2.txt"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        var archive = mockMvc.perform(asyncDispatch(full))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andReturn().getResponse();
+        var bytes = archive.getContentAsByteArray();
+        assertThat(archive.getContentLengthLong()).isEqualTo(bytes.length);
+
+        var resumed = mockMvc.perform(get("/zip?file=stored1.txt&file=stored2.txt")
+                        .header(HttpHeaders.RANGE, "bytes=40-")
+                        .header(HttpHeaders.IF_RANGE, archive.getHeader(HttpHeaders.ETAG)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(resumed))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+                        "bytes 40-%d/%d".formatted(bytes.length - 1, bytes.length)))
+                .andExpect(content().bytes(Arrays.copyOfRange(bytes, 40, bytes.length)));
+    }
+
+    @Test
+    @DisplayName("test zip job")
+    void testZipJob() throws Exception {
+        Files.write(tempDir.resolve("job1.txt"), "job1".getBytes());
+        Files.write(tempDir.resolve("job2.txt"), "job2".getBytes());
+
+        var submitResponse = mockMvc.perform(post("/zip-jobs?level=0")
+                        .content(jsonMapper.writeValueAsString(List.of("job1.txt", "job2.txt")))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, startsWith("http://localhost/zip-jobs/")))
+                .andExpect(jsonPath("$.totalBytes").value(8))
+                .andReturn().getResponse();
+        var id = jsonMapper.readTree(submitResponse.getContentAsString()).get("id").asString();
+
+        var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        String status;
+        do {
+            var job = mockMvc.perform(get("/zip-jobs/{id}", id))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            status = jsonMapper.readTree(job).get("status").asString();
+            if (status.equals("QUEUED") || status.equals("RUNNING")) {
+                Thread.sleep(10);
+            }
+        } while ((status.equals("QUEUED") || status.equals("RUNNING")) && System.nanoTime() < deadline);
+        assertThat(status).isEqualTo("DONE");
+
+        var mvcResult = mockMvc.perform(get("/zip-jobs/{id}/archive", id)
+                        .header(HttpHeaders.RANGE, "bytes=0-3"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, startsWith("bytes 0-3/")))
+                .andExpect(content().bytes(new byte[]{'P', 'K', 3, 4}));
+
+        mockMvc.perform(delete("/zip-jobs/{id}", id))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(get("/zip-jobs/{id}", id))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("test refuse the archive of a zip job that is not done")
+    void testRefuseTheArchiveOfAZipJobThatIsNotDone() throws Exception {
+        Files.write(tempDir.resolve("queued.txt"), "queued".getBytes());
+        // Created in the store only, so nothing runs it and it stays queued
+        var job = zipJobStore.create(List.of("queued.txt"), 0, 6);
+
+        mockMvc.perform(get("/zip-jobs/{id}/archive", job.id()))
+                .andExpect(status().isConflict())
+                .andExpect(content().string("Zip job is QUEUED."));
+
+        mockMvc.perform(delete("/zip-jobs/{id}", job.id()))
+                .andExpect(status().isNoContent());
+    }
 }
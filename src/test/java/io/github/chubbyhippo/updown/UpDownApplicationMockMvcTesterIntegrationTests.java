@@ -1,6 +1,6 @@
 package io.github.chubbyhippo.updown;
 
-import io.github.chubbyhippo.updown.domain.StorageService;
+import io.github.chubbyhippo.updown.infrastructure.FileSystemStorageService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -37,7 +37,7 @@ public class UpDownApplicationMockMvcTesterIntegrationTests {
     @Autowired
     private JsonMapper jsonMapper;
     @Autowired
-    private StorageService storageService;
+    private FileSystemStorageService storageService;
 
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
@@ -106,6 +106,7 @@ public class UpDownApplicationMockMvcTesterIntegrationTests {
 
         var path2 = tempDir.resolve("testList2.txt");
         Files.write(path2, "test2".getBytes());
+        storageService.reconcile();
 
         var result = mockMvcTester.get().uri("/files")
                 .accept(MediaType.APPLICATION_JSON)
@@ -0,0 +1,134 @@
+package io.github.chubbyhippo.updown.application;
+
+import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.StagedFile;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.StorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BatchUploadServiceTest {
+
+    @Mock
+    private StorageService storageService;
+    private BatchUploadService batchUploadService;
+
+    @BeforeEach
+    void setUp() {
+        batchUploadService = new BatchUploadService(storageService, new BatchUploadProperties(2));
+    }
+
+    private static MultipartFile file(String name, String content) {
+        return new MockMultipartFile("file", name, "text/plain", content.getBytes());
+    }
+
+    @Test
+    @DisplayName("should store parts concurrently up to the parallelism")
+    void shouldStorePartsConcurrentlyUpToTheParallelism() {
+        var running = new AtomicInteger();
+        var peak = new AtomicInteger();
+        var bothStarted = new CountDownLatch(2);
+        doAnswer(invocation -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            bothStarted.countDown();
+            bothStarted.await(5, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            return null;
+        }).when(storageService).store(any(MultipartFile.class));
+
+        var results = batchUploadService.upload(List.of(file("a.txt", "a"), file("b.txt", "bb"),
+                file("c.txt", "ccc"), file("d.txt", "dddd")), false);
+
+        assertThat(peak).hasValue(2);
+        assertThat(results).extracting(UploadResult::filename).containsExactly("a.txt", "b.txt", "c.txt", "d.txt");
+        assertThat(results).extracting(UploadResult::bytes).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(results).extracting(UploadResult::status).containsOnly(UploadResult.Status.STORED);
+    }
+
+    @Test
+    @DisplayName("should report the parts that failed")
+    void shouldReportThePartsThatFailed() {
+        var results = batchUploadService.upload(List.of(file("a.txt", "a"), file("empty.txt", "")), false);
+
+        assertThat(results.get(0).status()).isEqualTo(UploadResult.Status.STORED);
+        assertThat(results.get(1).status()).isEqualTo(UploadResult.Status.FAILED);
+        assertThat(results.get(1).error()).isEqualTo("Cannot upload empty file.");
+        assertThatThrownBy(() -> batchUploadService.uploadAll(List.of(file("a.txt", "a"), file("empty.txt", ""))))
+                .isInstanceOf(EmptyFileException.class);
+    }
+
+    @Test
+    @DisplayName("should commit an atomic batch only when every part was staged")
+    void shouldCommitAnAtomicBatchOnlyWhenEveryPartWasStaged() {
+        var staged = mock(StagedFile.class);
+        when(staged.size()).thenReturn(1L);
+        when(storageService.stage(eq("a.txt"), any(InputStream.class))).thenReturn(staged);
+
+        var results = batchUploadService.upload(List.of(file("a.txt", "a"), file("empty.txt", "")), true);
+
+        assertThat(results).extracting(UploadResult::status)
+                .containsExactly(UploadResult.Status.ROLLED_BACK, UploadResult.Status.FAILED);
+        verify(staged, never()).commit();
+        verify(staged).discard();
+    }
+
+    @Test
+    @DisplayName("should commit every part of a successful atomic batch")
+    void shouldCommitEveryPartOfASuccessfulAtomicBatch() {
+        var first = mock(StagedFile.class);
+        var second = mock(StagedFile.class);
+        when(storageService.stage(eq("a.txt"), any(InputStream.class))).thenReturn(first);
+        when(storageService.stage(eq("b.txt"), any(InputStream.class))).thenReturn(second);
+
+        var results = batchUploadService.upload(List.of(file("a.txt", "a"), file("b.txt", "b")), true);
+
+        assertThat(results).extracting(UploadResult::status).containsOnly(UploadResult.Status.STORED);
+        verify(first).commit();
+        verify(second).commit();
+    }
+
+    @Test
+    @DisplayName("should roll back the parts already committed when a later commit fails")
+    void shouldRollBackThePartsAlreadyCommittedWhenALaterCommitFails() {
+        var first = mock(StagedFile.class);
+        var second = mock(StagedFile.class);
+        var third = mock(StagedFile.class);
+        when(storageService.stage(eq("a.txt"), any(InputStream.class))).thenReturn(first);
+        when(storageService.stage(eq("b.txt"), any(InputStream.class))).thenReturn(second);
+        when(storageService.stage(eq("c.txt"), any(InputStream.class))).thenReturn(third);
+        doThrow(new StorageException("disk full")).when(second).commit();
+
+        var results = batchUploadService.upload(List.of(file("a.txt", "a"), file("b.txt", "b"), file("c.txt", "c")),
+                true);
+
+        assertThat(results).extracting(UploadResult::status).containsExactly(UploadResult.Status.ROLLED_BACK,
+                UploadResult.Status.FAILED, UploadResult.Status.ROLLED_BACK);
+        verify(first).rollback();
+        verify(third, never()).commit();
+        verify(first).discard();
+    }
+}
@@ -1,7 +1,13 @@
 package io.github.chubbyhippo.updown.application;
 
+import io.github.chubbyhippo.updown.domain.ArchiveCache;
+import io.github.chubbyhippo.updown.domain.DownloadEngine;
 import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import io.github.chubbyhippo.updown.domain.InvalidFileQueryException;
+import io.github.chubbyhippo.updown.domain.ResourceCache;
 import io.github.chubbyhippo.updown.domain.StorageService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,13 +16,25 @@ import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,6 +43,12 @@ class FileServiceTest {
 
     @Mock
     private StorageService storageService;
+    @Mock
+    private DownloadEngine downloadEngine;
+    @Mock
+    private ResourceCache resourceCache;
+    @Mock
+    private ArchiveCache archiveCache;
     @InjectMocks
     private FileService fileService;
 
@@ -36,6 +60,14 @@ class FileServiceTest {
         verify(storageService).store(file);
     }
 
+    @Test
+    @DisplayName("should upload a stream")
+    void shouldUploadAStream() {
+        var inputStream = new ByteArrayInputStream("test".getBytes());
+        fileService.uploadFile("test.txt", inputStream);
+        verify(storageService).store("test.txt", inputStream);
+    }
+
     @Test
     @DisplayName("should list files")
     void shouldListFiles() {
@@ -47,8 +79,30 @@ class FileServiceTest {
     @DisplayName("should load as resource")
     void shouldLoadAsResource() {
         var file = "test.txt";
-        fileService.loadAsResource(file);
-        verify(storageService).loadAsResource(file);
+        var resource = mock(Resource.class);
+        when(resourceCache.get(eq(file), any())).thenAnswer(invocation ->
+                invocation.<Function<String, Resource>>getArgument(1).apply(file));
+        when(storageService.loadAsResource(file)).thenReturn(resource);
+
+        assertThat(fileService.loadAsResource(file)).isSameAs(resource);
+    }
+
+    @Test
+    @DisplayName("should offload download to the engine")
+    void shouldOffloadDownloadToTheEngine() {
+        var resource = mock(Resource.class);
+        var request = mock(HttpServletRequest.class);
+        fileService.offload(resource, 0, 10, request);
+        verify(downloadEngine).offload(resource, 0, 10, request);
+    }
+
+    @Test
+    @DisplayName("should transfer download through the engine")
+    void shouldTransferDownloadThroughTheEngine() throws IOException {
+        var resource = mock(Resource.class);
+        var outputStream = OutputStream.nullOutputStream();
+        fileService.transfer(resource, 0, 10, outputStream);
+        verify(downloadEngine).transfer(resource, 0, 10, outputStream);
     }
 
     @Test
@@ -68,5 +122,85 @@ class FileServiceTest {
         verify(storageService).zipFiles(stringStream);
     }
 
+    @Test
+    @DisplayName("should reject a compression level out of range")
+    void shouldRejectACompressionLevelOutOfRange() {
+        var stringStream = Stream.of("file1.txt");
+        assertThatThrownBy(() -> fileService.zipFiles(stringStream, 10))
+                .isInstanceOf(InvalidFileQueryException.class)
+                .hasMessage("Compression level must be between 0 and 9.");
+
+        fileService.zipFiles(stringStream, 0);
+        verify(storageService).zipFiles(stringStream, 0);
+    }
+
+    @Test
+    @DisplayName("should key cached archives by file versions and level")
+    void shouldKeyCachedArchivesByFileVersionsAndLevel() {
+        when(storageService.version("file1.txt")).thenReturn("5:1", "5:1", "5:1", "5:2");
+
+        var key = fileService.archiveKey(List.of("file1.txt"), null);
+
+        assertThat(fileService.archiveKey(List.of("file1.txt"), null)).isEqualTo(key);
+        assertThat(fileService.archiveKey(List.of("file1.txt"), 0)).isNotEqualTo(key);
+        assertThat(fileService.archiveKey(List.of("file1.txt"), null)).isNotEqualTo(key);
+        verifyNoInteractions(resourceCache);
+    }
+
+
+
+    private static FileMetadata file(String name, long size) {
+        return new FileMetadata(name, size, Instant.parse("2026-01-01T00:00:00Z").plusSeconds(size), "text/plain");
+    }
+
+    @Test
+    @DisplayName("should page through files with cursors")
+    void shouldPageThroughFilesWithCursors() {
+        var files = List.of(file("a.txt", 1), file("b.txt", 2), file("c.txt", 3));
+        when(storageService.loadMetadata(anyString())).thenAnswer(invocation -> {
+            String from = invocation.getArgument(0);
+            return files.stream().filter(metadata -> metadata.name().compareTo(from) >= 0);
+        });
 
-}
\ No newline at end of file
+        var first = fileService.listFiles(FileQuery.all(), 2);
+        var second = fileService.listFiles(FileQuery.all().withCursor(first.nextCursor()), 2);
+
+        assertThat(first.items()).extracting(FileMetadata::name).containsExactly("a.txt", "b.txt");
+        assertThat(second.items()).extracting(FileMetadata::name).containsExactly("c.txt");
+        assertThat(second.nextCursor()).isNull();
+        verify(storageService).loadMetadata("b.txt");
+    }
+
+    @Test
+    @DisplayName("should filter by prefix and size in the requested order")
+    void shouldFilterByPrefixAndSizeInTheRequestedOrder() {
+        when(storageService.loadMetadata("")).thenAnswer(invocation -> Stream.of(
+                file("logs-1.txt", 10), file("logs-2.txt", 30), file("logs-3.txt", 20), file("other.txt", 40)));
+        var query = new FileQuery("logs-", 15L, null, null, null, FileQuery.Sort.SIZE, true, null);
+
+        var first = fileService.listFiles(query, 1);
+        var second = fileService.listFiles(query.withCursor(first.nextCursor()), 1);
+
+        assertThat(first.items()).extracting(FileMetadata::name).containsExactly("logs-2.txt");
+        assertThat(second.items()).extracting(FileMetadata::name).containsExactly("logs-3.txt");
+        assertThat(second.nextCursor()).isNull();
+    }
+
+    @Test
+    @DisplayName("should reject a cursor from another sort order")
+    void shouldRejectACursorFromAnotherSortOrder() {
+        when(storageService.loadMetadata(anyString())).thenAnswer(invocation -> Stream.of(file("a.txt", 1), file("b.txt", 2)));
+        var cursor = fileService.listFiles(FileQuery.all(), 1).nextCursor();
+        var bySize = new FileQuery(null, null, null, null, null, FileQuery.Sort.SIZE, false, cursor);
+
+        assertThatThrownBy(() -> fileService.listFiles(bySize, 1))
+                .isInstanceOf(InvalidFileQueryException.class)
+                .hasMessage("Cursor does not match the requested sort.");
+        assertThatThrownBy(() -> fileService.listFiles(FileQuery.all().withCursor("%%%"), 1))
+                .isInstanceOf(InvalidFileQueryException.class)
+                .hasMessage("Invalid cursor.");
+        assertThatThrownBy(() -> fileService.listFiles(FileQuery.all(), 0))
+                .isInstanceOf(InvalidFileQueryException.class)
+                .hasMessage("Limit must be between 1 and 1000.");
+    }
+}
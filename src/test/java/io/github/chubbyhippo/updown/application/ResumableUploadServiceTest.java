@@ -0,0 +1,97 @@
+package io.github.chubbyhippo.updown.application;
+
+import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.InvalidFilenameException;
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.StorageService;
+import io.github.chubbyhippo.updown.domain.UploadConflictException;
+import io.github.chubbyhippo.updown.domain.UploadSession;
+import io.github.chubbyhippo.updown.domain.UploadSessionStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ResumableUploadServiceTest {
+
+    @Mock
+    private UploadSessionStore uploadSessionStore;
+    @Mock
+    private StorageService storageService;
+    @InjectMocks
+    private ResumableUploadService resumableUploadService;
+
+    @Test
+    @DisplayName("should reject empty uploads")
+    void shouldRejectEmptyUploads() {
+        assertThatThrownBy(() -> resumableUploadService.create("file.txt", 0))
+                .isInstanceOf(EmptyFileException.class);
+    }
+
+    @Test
+    @DisplayName("should store completed upload and delete the session")
+    void shouldStoreCompletedUploadAndDeleteTheSession() {
+        var session = UploadSession.create("id", "file.txt", 4, Instant.now())
+                .withReceived(0, 4, Instant.now());
+        var data = new ByteArrayInputStream("data".getBytes());
+        when(uploadSessionStore.claim("id")).thenReturn(session);
+        when(uploadSessionStore.openData("id")).thenReturn(data);
+
+        resumableUploadService.complete("id");
+
+        verify(storageService).store("file.txt", data);
+        verify(uploadSessionStore).delete("id");
+    }
+
+    @Test
+    @DisplayName("should refuse to complete an incomplete upload")
+    void shouldRefuseToCompleteAnIncompleteUpload() {
+        var session = UploadSession.create("id", "file.txt", 4, Instant.now())
+                .withReceived(2, 4, Instant.now());
+        when(uploadSessionStore.claim("id")).thenReturn(session);
+
+        assertThatThrownBy(() -> resumableUploadService.complete("id"))
+                .isInstanceOf(UploadConflictException.class)
+                .hasMessage("Upload is incomplete: 0 of 4 bytes committed.");
+        verify(uploadSessionStore).release("id");
+        verify(uploadSessionStore, never()).delete("id");
+    }
+
+    @Test
+    @DisplayName("should reject a filename that cannot be stored before any byte is sent")
+    void shouldRejectAFilenameThatCannotBeStoredBeforeAnyByteIsSent() {
+        doThrow(new InvalidFilenameException("Cannot store file outside current directory."))
+                .when(storageService).validateFilename("../file.txt");
+
+        assertThatThrownBy(() -> resumableUploadService.create("../file.txt", 4))
+                .isInstanceOf(InvalidFilenameException.class);
+        verify(uploadSessionStore, never()).create("../file.txt", 4);
+    }
+
+    @Test
+    @DisplayName("should release the session when storing the completed upload fails")
+    void shouldReleaseTheSessionWhenStoringTheCompletedUploadFails() {
+        var session = UploadSession.create("id", "file.txt", 4, Instant.now())
+                .withReceived(0, 4, Instant.now());
+        var data = new ByteArrayInputStream("data".getBytes());
+        when(uploadSessionStore.claim("id")).thenReturn(session);
+        when(uploadSessionStore.openData("id")).thenReturn(data);
+        doThrow(new StorageException("Failed to store file.")).when(storageService).store("file.txt", data);
+
+        assertThatThrownBy(() -> resumableUploadService.complete("id")).isInstanceOf(StorageException.class);
+        verify(uploadSessionStore).release("id");
+        verify(uploadSessionStore, never()).delete("id");
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.chubbyhippo.updown.application;
+
+import io.github.chubbyhippo.updown.domain.InvalidFileQueryException;
+import io.github.chubbyhippo.updown.domain.ZipJob;
+import io.github.chubbyhippo.updown.domain.ZipJobNotReadyException;
+import io.github.chubbyhippo.updown.domain.ZipJobStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ZipJobServiceTest {
+
+    @Mock
+    private ZipJobStore zipJobStore;
+    @Mock
+    private FileService fileService;
+    private ZipJobService zipJobService;
+
+    @BeforeEach
+    void setUp() {
+        zipJobService = new ZipJobService(zipJobStore, fileService, new ZipJobProperties(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        zipJobService.destroy();
+    }
+
+    @Test
+    @DisplayName("should refuse the archive of an unfinished job")
+    void shouldRefuseTheArchiveOfAnUnfinishedJob() {
+        var job = ZipJob.create("id", List.of("file.txt"), null, 4, Instant.now()).running(Instant.now());
+        when(zipJobStore.get("id")).thenReturn(job);
+
+        assertThatThrownBy(() -> zipJobService.loadArchive("id"))
+                .isInstanceOf(ZipJobNotReadyException.class)
+                .hasMessage("Zip job is RUNNING.");
+        verify(zipJobStore, never()).loadArchive("id");
+    }
+
+    @Test
+    @DisplayName("should keep a finished job polled after a while from being evicted")
+    void shouldKeepAFinishedJobPolledAfterAWhileFromBeingEvicted() {
+        var hourAgo = Instant.now().minus(Duration.ofHours(1));
+        var job = ZipJob.create("id", List.of("file.txt"), null, 4, hourAgo).running(hourAgo).done(4, hourAgo);
+        when(zipJobStore.get("id")).thenReturn(job);
+
+        var polled = zipJobService.get("id");
+
+        assertThat(polled.updatedAt()).isAfter(hourAgo);
+        verify(zipJobStore).save(polled);
+    }
+
+    @Test
+    @DisplayName("should reject an empty file list")
+    void shouldRejectAnEmptyFileList() {
+        assertThatThrownBy(() -> zipJobService.submit(List.of(), null))
+                .isInstanceOf(InvalidFileQueryException.class);
+    }
+}
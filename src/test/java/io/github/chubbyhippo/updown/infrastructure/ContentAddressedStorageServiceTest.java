@@ -0,0 +1,157 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.FileStoredEvent;
+import io.github.chubbyhippo.updown.domain.StorageFileNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentAddressedStorageServiceTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private ContentAddressedStorageService service;
+    private final List<Object> events = new ArrayList<>();
+
+    private ContentAddressedStorageService storageService() {
+        var storageService = uninitializedStorageService();
+        storageService.init();
+        return storageService;
+    }
+
+    private ContentAddressedStorageService uninitializedStorageService() {
+        var zipProperties = new ZipProperties(ZipProperties.Mode.SERIAL, 1,
+                DataSize.ofMegabytes(1), DataSize.ofMegabytes(4), -1, true, DataSize.ofKilobytes(64), 0.9);
+        return new ContentAddressedStorageService(new StorageProperties(tempDir.toString()),
+                new ZipArchiveEngine(zipProperties),
+                new FileCommitter(new DurabilityProperties(DurabilityProperties.Mode.FSYNC, Duration.ZERO)), events::add);
+    }
+
+    private void store(String filename, String content) {
+        service.store(filename, new ByteArrayInputStream(content.getBytes()));
+    }
+
+    private long blobCount() throws IOException {
+        try (var files = Files.walk(tempDir.resolve("blobs"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        service = storageService();
+    }
+
+    @Test
+    @DisplayName("should store identical content once")
+    void shouldStoreIdenticalContentOnce() throws IOException {
+        store("installer.bin", "same bytes");
+        store("installer-copy.bin", "same bytes");
+
+        assertThat(blobCount()).isEqualTo(1);
+        assertThat(events).containsExactly(new FileStoredEvent("installer.bin"), new FileStoredEvent("installer-copy.bin"));
+        assertThat(service.loadAll().map(Path::toString)).containsExactlyInAnyOrder("installer.bin", "installer-copy.bin");
+        assertThat(service.stats()).isEqualTo(new ContentAddressedStorageService.DedupStats(2, 1, 20, 10));
+        assertThat(service.stats().ratio()).isEqualTo(2.0);
+    }
+
+    @Test
+    @DisplayName("should not collect blobs before a restarted service has counted their references")
+    void shouldNotCollectBlobsBeforeARestartedServiceHasCountedTheirReferences() throws IOException {
+        store("kept.txt", "kept across restarts");
+
+        var restarted = uninitializedStorageService();
+        assertThat(restarted.collectGarbage()).isZero();
+        restarted.restore();
+
+        assertThat(restarted.collectGarbage()).isZero();
+        assertThat(restarted.loadAsResource("kept.txt").getContentAsByteArray())
+                .isEqualTo("kept across restarts".getBytes());
+    }
+
+    @Test
+    @DisplayName("should load a blob under the requested filename")
+    void shouldLoadABlobUnderTheRequestedFilename() throws IOException {
+        store("report.txt", "quarterly numbers");
+
+        var resource = service.loadAsResource("report.txt");
+
+        assertThat(resource.getFilename()).isEqualTo("report.txt");
+        assertThat(resource.getContentAsByteArray()).isEqualTo("quarterly numbers".getBytes());
+        assertThatThrownBy(() -> service.loadAsResource("missing.txt"))
+                .isInstanceOf(StorageFileNotFoundException.class)
+                .hasMessage("Could not read file: missing.txt");
+    }
+
+    @Test
+    @DisplayName("should collect blobs that are no longer referenced")
+    void shouldCollectBlobsThatAreNoLongerReferenced() throws IOException {
+        store("data.csv", "version 1");
+        store("shared.csv", "version 1");
+        store("data.csv", "version 2");
+
+        assertThat(service.collectGarbage()).isZero();
+
+        store("shared.csv", "version 2");
+
+        assertThat(service.collectGarbage()).isEqualTo(1);
+        assertThat(blobCount()).isEqualTo(1);
+        assertThat(service.loadAsResource("data.csv").getContentAsByteArray()).isEqualTo("version 2".getBytes());
+    }
+
+    @Test
+    @DisplayName("should point back at the replaced blob when a commit is rolled back")
+    void shouldPointBackAtTheReplacedBlobWhenACommitIsRolledBack() throws IOException {
+        store("data.csv", "version 1");
+
+        var staged = service.stage("data.csv", new ByteArrayInputStream("version 2".getBytes()));
+        staged.commit();
+        staged.rollback();
+        staged.discard();
+
+        assertThat(service.loadAsResource("data.csv").getContentAsByteArray()).isEqualTo("version 1".getBytes());
+        assertThat(service.collectGarbage()).isEqualTo(1);
+        assertThat(service.stats()).isEqualTo(new ContentAddressedStorageService.DedupStats(1, 1, 9, 9));
+    }
+
+    @Test
+    @DisplayName("should rebuild reference counts on init")
+    void shouldRebuildReferenceCountsOnInit() {
+        store("a.txt", "content");
+        store("b.txt", "content");
+
+        var restarted = storageService();
+
+        assertThat(restarted.stats()).isEqualTo(new ContentAddressedStorageService.DedupStats(2, 1, 14, 7));
+        assertThat(restarted.collectGarbage()).isZero();
+    }
+
+    @Test
+    @DisplayName("should keep the existing file when storing an empty body")
+    void shouldKeepTheExistingFileWhenStoringAnEmptyBody() throws IOException {
+        store("notes.txt", "keep me");
+
+        assertThatThrownBy(() -> store("notes.txt", ""))
+                .isInstanceOf(EmptyFileException.class)
+                .hasMessage("Failed to store empty file.");
+        assertThat(service.loadAsResource("notes.txt").getContentAsByteArray()).isEqualTo("keep me".getBytes());
+        try (var staged = Files.list(tempDir.resolve("tmp"))) {
+            assertThat(staged).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileChannelDownloadEngineTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private static FileChannelDownloadEngine engine(DownloadProperties.Mode mode) {
+        return new FileChannelDownloadEngine(new DownloadProperties(mode, DataSize.ofBytes(4), DataSize.ofBytes(3)));
+    }
+
+    private FileSystemResource file(String content) throws IOException {
+        var path = tempDir.resolve("file.txt");
+        Files.writeString(path, content);
+        return new FileSystemResource(path);
+    }
+
+    @Test
+    @DisplayName("should offload to sendfile when the container supports it")
+    void shouldOffloadToSendfileWhenTheContainerSupportsIt() throws IOException {
+        var resource = file("0123456789");
+        var request = new MockHttpServletRequest();
+        request.setAttribute(FileChannelDownloadEngine.SENDFILE_SUPPORT_ATTRIBUTE, Boolean.TRUE);
+
+        assertThat(engine(DownloadProperties.Mode.AUTO).offload(resource, 2, 6, request)).isTrue();
+        assertThat(request.getAttribute(FileChannelDownloadEngine.SENDFILE_FILENAME_ATTRIBUTE))
+                .isEqualTo(resource.getFile().getAbsolutePath());
+        assertThat(request.getAttribute(FileChannelDownloadEngine.SENDFILE_START_ATTRIBUTE)).isEqualTo(2L);
+        assertThat(request.getAttribute(FileChannelDownloadEngine.SENDFILE_END_ATTRIBUTE)).isEqualTo(8L);
+    }
+
+    @Test
+    @DisplayName("should not offload when the container does not support sendfile")
+    void shouldNotOffloadWhenTheContainerDoesNotSupportSendfile() throws IOException {
+        var resource = file("0123456789");
+        var request = new MockHttpServletRequest();
+
+        assertThat(engine(DownloadProperties.Mode.AUTO).offload(resource, 0, 10, request)).isFalse();
+        assertThat(request.getAttribute(FileChannelDownloadEngine.SENDFILE_FILENAME_ATTRIBUTE)).isNull();
+    }
+
+    @Test
+    @DisplayName("should not offload regions below the sendfile threshold")
+    void shouldNotOffloadRegionsBelowTheSendfileThreshold() throws IOException {
+        var resource = file("0123456789");
+        var request = new MockHttpServletRequest();
+        request.setAttribute(FileChannelDownloadEngine.SENDFILE_SUPPORT_ATTRIBUTE, Boolean.TRUE);
+
+        assertThat(engine(DownloadProperties.Mode.AUTO).offload(resource, 0, 3, request)).isFalse();
+    }
+
+    @Test
+    @DisplayName("should transfer region through memory-mapped windows")
+    void shouldTransferRegionThroughMemoryMappedWindows() throws IOException {
+        var resource = file("0123456789");
+        var response = new MockHttpServletResponse();
+
+        engine(DownloadProperties.Mode.MAPPED).transfer(resource, 1, 8, response.getOutputStream());
+
+        assertThat(response.getContentAsString()).isEqualTo("12345678");
+    }
+
+    @Test
+    @DisplayName("should transfer region through the file channel")
+    void shouldTransferRegionThroughTheFileChannel() throws IOException {
+        var resource = file("0123456789");
+        var outputStream = new ByteArrayOutputStream();
+
+        engine(DownloadProperties.Mode.CHANNEL).transfer(resource, 3, 4, outputStream);
+
+        assertThat(outputStream.toString()).isEqualTo("3456");
+    }
+
+    @Test
+    @DisplayName("should stream resources that are not files")
+    void shouldStreamResourcesThatAreNotFiles() throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+
+        engine(DownloadProperties.Mode.AUTO).transfer(new ByteArrayResource("0123456789".getBytes()), 5, 5, outputStream);
+
+        assertThat(outputStream.toString()).isEqualTo("56789");
+    }
+
+    @Test
+    @DisplayName("should write a cached body from memory")
+    void shouldWriteACachedBodyFromMemory() throws IOException {
+        var resource = new CachedFileResource("file.txt", ByteBuffer.wrap("0123456789".getBytes()), 0, null);
+        var outputStream = new ByteArrayOutputStream();
+
+        engine(DownloadProperties.Mode.AUTO).transfer(resource, 3, 4, outputStream);
+
+        assertThat(outputStream.toString()).isEqualTo("3456");
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileCommitterTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private double syncs(SimpleMeterRegistry registry, String target) {
+        return registry.get("storage.durability.syncs").tag("target", target).functionCounter().count();
+    }
+
+    private FileCommitter committer(DurabilityProperties.Mode mode, Duration window, SimpleMeterRegistry registry) {
+        var committer = new FileCommitter(new DurabilityProperties(mode, window));
+        committer.bindTo(registry);
+        return committer;
+    }
+
+    private void commit(FileCommitter committer, String name) throws IOException {
+        var staged = Files.writeString(Files.createTempFile(tempDir, "staged-", ".tmp"), name);
+        committer.commit(staged, tempDir.resolve(name));
+    }
+
+    @Test
+    @DisplayName("should rename into place replacing the previous file")
+    void shouldRenameIntoPlaceReplacingThePreviousFile() throws IOException {
+        var registry = new SimpleMeterRegistry();
+        var committer = committer(DurabilityProperties.Mode.NONE, Duration.ZERO, registry);
+        Files.writeString(tempDir.resolve("file.txt"), "old");
+
+        commit(committer, "file.txt");
+
+        assertThat(tempDir.resolve("file.txt")).hasContent("file.txt");
+        assertThat(syncs(registry, "file")).isZero();
+        assertThat(syncs(registry, "directory")).isZero();
+    }
+
+    @Test
+    @DisplayName("should sync every file and its directory")
+    void shouldSyncEveryFileAndItsDirectory() throws IOException {
+        var registry = new SimpleMeterRegistry();
+        var committer = committer(DurabilityProperties.Mode.FSYNC, Duration.ZERO, registry);
+
+        commit(committer, "a.txt");
+        commit(committer, "b.txt");
+
+        assertThat(syncs(registry, "file")).isEqualTo(2);
+        assertThat(syncs(registry, "directory")).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should share directory syncs between concurrent commits")
+    void shouldShareDirectorySyncsBetweenConcurrentCommits() throws Exception {
+        var registry = new SimpleMeterRegistry();
+        var committer = committer(DurabilityProperties.Mode.GROUP, Duration.ofMillis(50), registry);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var commits = new ArrayList<Callable<Void>>();
+            for (var i = 0; i < 32; i++) {
+                var name = "file-%d.txt".formatted(i);
+                commits.add(() -> {
+                    commit(committer, name);
+                    return null;
+                });
+            }
+            for (var future : executor.invokeAll(commits)) {
+                future.get();
+            }
+        }
+
+        assertThat(syncs(registry, "file")).isEqualTo(32);
+        assertThat(syncs(registry, "directory")).isBetween(1.0, 31.0);
+        for (var i = 0; i < 32; i++) {
+            assertThat(tempDir.resolve("file-%d.txt".formatted(i))).exists();
+        }
+    }
+}
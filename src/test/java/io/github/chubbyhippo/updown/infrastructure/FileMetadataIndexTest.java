@@ -0,0 +1,99 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileMetadataIndexTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    @DisplayName("should index regular files by name on reconcile")
+    void shouldIndexRegularFilesByNameOnReconcile() throws IOException {
+        Files.writeString(tempDir.resolve("b.json"), "{}");
+        Files.writeString(tempDir.resolve("a.txt"), "hello");
+        Files.createDirectory(tempDir.resolve("nested"));
+        var index = new FileMetadataIndex(tempDir, new StorageLayout(tempDir, 0));
+
+        index.reconcile();
+
+        assertThat(index.stream().map(FileMetadata::name)).containsExactly("a.txt", "b.json");
+        assertThat(index.get("a.txt")).get()
+                .returns(5L, FileMetadata::size)
+                .returns("text/plain", FileMetadata::contentType);
+    }
+
+    @Test
+    @DisplayName("should drop deleted files on reconcile")
+    void shouldDropDeletedFilesOnReconcile() throws IOException {
+        Files.writeString(tempDir.resolve("a.txt"), "hello");
+        var index = new FileMetadataIndex(tempDir, new StorageLayout(tempDir, 0));
+        index.reconcile();
+
+        Files.delete(tempDir.resolve("a.txt"));
+        index.reconcile();
+
+        assertThat(index.stream()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should restore a snapshot and replay the journal without reading the files")
+    void shouldRestoreASnapshotAndReplayTheJournalWithoutReadingTheFiles() throws IOException {
+        Files.writeString(tempDir.resolve("a.txt"), "hello");
+        Files.writeString(tempDir.resolve("b.txt"), "bye");
+        var index = new FileMetadataIndex(tempDir, new StorageLayout(tempDir, 0));
+        index.reconcile();
+        index.openJournal();
+        index.snapshot();
+        Files.writeString(tempDir.resolve("c.txt"), "later");
+        index.refresh("c.txt");
+        Files.delete(tempDir.resolve("b.txt"));
+        index.refresh("b.txt");
+        index.close();
+        // Gone from the tree, so only the snapshot can know about it
+        var written = index.get("a.txt").orElseThrow();
+        Files.delete(tempDir.resolve("a.txt"));
+
+        var restored = new FileMetadataIndex(tempDir, new StorageLayout(tempDir, 0));
+
+        assertThat(restored.load()).isEqualTo(2);
+        assertThat(restored.stream()).containsExactly(written, index.get("c.txt").orElseThrow());
+    }
+
+    @Test
+    @DisplayName("should find files not yet indexed but never outside the root")
+    void shouldFindFilesNotYetIndexedButNeverOutsideTheRoot() throws IOException {
+        Files.createDirectory(tempDir.resolve("root"));
+        Files.writeString(tempDir.resolve("root").resolve("late.txt"), "late");
+        Files.writeString(tempDir.resolve("secret.txt"), "secret");
+        var index = new FileMetadataIndex(tempDir.resolve("root"), new StorageLayout(tempDir.resolve("root"), 0));
+
+        assertThat(index.get("late.txt")).isPresent();
+        assertThat(index.get("../secret.txt")).isEmpty();
+        assertThat(index.get("missing.txt")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should pick up changes through the watcher")
+    void shouldPickUpChangesThroughTheWatcher() throws IOException, InterruptedException {
+        try (var index = new FileMetadataIndex(tempDir, new StorageLayout(tempDir, 0))) {
+            index.watch();
+
+            Files.writeString(tempDir.resolve("watched.txt"), "watched");
+
+            for (var attempt = 0; attempt < 100 && index.stream().findAny().isEmpty(); attempt++) {
+                Thread.sleep(50);
+            }
+            assertThat(index.stream().map(FileMetadata::name)).containsExactly("watched.txt");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.FileStoredEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSystemArchiveCacheTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private FileSystemArchiveCache cache;
+    private final AtomicInteger builds = new AtomicInteger();
+    private final StreamingResponseBody builder = outputStream -> {
+        builds.incrementAndGet();
+        outputStream.write("archive".getBytes());
+    };
+
+    @BeforeEach
+    void setUp() {
+        cache = new FileSystemArchiveCache(new ZipCacheProperties(true, tempDir.toString(), DataSize.ofMegabytes(1)));
+    }
+
+    private String read(StreamingResponseBody body) throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+        body.writeTo(outputStream);
+        return outputStream.toString();
+    }
+
+    @Test
+    @DisplayName("should build an archive once and serve it from the cache")
+    void shouldBuildAnArchiveOnceAndServeItFromTheCache() throws IOException {
+        var registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        assertThat(read(cache.get("key", List.of("a.txt"), builder))).isEqualTo("archive");
+        assertThat(read(cache.get("key", List.of("a.txt"), builder))).isEqualTo("archive");
+
+        assertThat(builds).hasValue(1);
+        assertThat(registry.get("storage.zip.cache.hit.ratio").gauge().value()).isEqualTo(0.5);
+        assertThat(registry.get("storage.zip.cache.size").gauge().value()).isEqualTo(7);
+    }
+
+    @Test
+    @DisplayName("should drop archives whose files are stored again")
+    void shouldDropArchivesWhoseFilesAreStoredAgain() throws IOException {
+        read(cache.get("key", List.of("a.txt", "b.txt"), builder));
+        read(cache.get("other", List.of("c.txt"), builder));
+
+        cache.onFileStored(new FileStoredEvent("b.txt"));
+
+        read(cache.get("key", List.of("a.txt", "b.txt"), builder));
+        read(cache.get("other", List.of("c.txt"), builder));
+        assertThat(builds).hasValue(3);
+    }
+
+    @Test
+    @DisplayName("should not keep an archive whose file was stored while it was built")
+    void shouldNotKeepAnArchiveWhoseFileWasStoredWhileItWasBuilt() throws IOException {
+        read(cache.get("key", List.of("a.txt"), outputStream -> {
+            builder.writeTo(outputStream);
+            cache.onFileStored(new FileStoredEvent("a.txt"));
+        }));
+
+        read(cache.get("key", List.of("a.txt"), builder));
+        assertThat(builds).hasValue(2);
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).hasSize(1);
+        }
+    }
+}
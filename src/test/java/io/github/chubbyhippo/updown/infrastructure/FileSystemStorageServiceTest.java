@@ -1,19 +1,41 @@
 package io.github.chubbyhippo.updown.infrastructure;
 
+import io.github.chubbyhippo.updown.domain.DigestedResource;
 import io.github.chubbyhippo.updown.domain.EmptyFileException;
+import io.github.chubbyhippo.updown.domain.EncodedResource;
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import io.github.chubbyhippo.updown.domain.InvalidFilenameException;
 import io.github.chubbyhippo.updown.domain.StorageException;
 import io.github.chubbyhippo.updown.domain.StorageFileNotFoundException;
+import org.assertj.core.api.InstanceOfAssertFactories;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -28,11 +50,30 @@ class FileSystemStorageServiceTest {
     @TempDir
     private Path tempDir;
 
+    private static final CompressionProperties NO_COMPRESSION = new CompressionProperties(false, 6,
+            DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), 0.8);
+    private static final LayoutProperties FLAT = new LayoutProperties(LayoutProperties.Mode.FLAT, 2);
+
+    private static FileSystemStorageService storageService(StorageProperties properties) {
+        return storageService(properties, NO_COMPRESSION, FLAT);
+    }
+
+    private static FileSystemStorageService storageService(StorageProperties properties,
+                                                           CompressionProperties compression,
+                                                           LayoutProperties layout) {
+        var zipProperties = new ZipProperties(ZipProperties.Mode.PARALLEL, 0,
+                DataSize.ofMegabytes(1), DataSize.ofMegabytes(64), -1, true, DataSize.ofKilobytes(64), 0.9);
+        var fileCommitter = new FileCommitter(new DurabilityProperties(DurabilityProperties.Mode.NONE, Duration.ZERO));
+        return new FileSystemStorageService(properties, new ZipArchiveEngine(zipProperties), fileCommitter, compression,
+                layout, event -> {
+                });
+    }
+
     @Test
     @DisplayName("should throw exception when root path is empty")
     void shouldThrowExceptionWhenRootPathIsEmpty() {
         var properties = new StorageProperties("");
-        assertThatThrownBy(() -> new FileSystemStorageService(properties))
+        assertThatThrownBy(() -> storageService(properties))
                 .isInstanceOf(StorageException.class)
                 .hasMessage("File upload location can not be Empty.");
 
@@ -46,7 +87,7 @@ class FileSystemStorageServiceTest {
             filesMockedStatic.when(() -> Files.createDirectories(any(Path.class)))
                     .thenThrow(new IOException());
 
-            var service = new FileSystemStorageService(new StorageProperties(tempDir.toString()));
+            var service = storageService(new StorageProperties(tempDir.toString()));
 
             assertThatThrownBy(service::init)
                     .isInstanceOf(StorageException.class)
@@ -60,7 +101,7 @@ class FileSystemStorageServiceTest {
     @DisplayName("should throw exception when uploading an empty file")
     void shouldThrowExceptionWhenUploadingAnEmptyFile() {
 
-        var service = new FileSystemStorageService(new StorageProperties(tempDir.toString()));
+        var service = storageService(new StorageProperties(tempDir.toString()));
 
         var multipartFile = mock(MultipartFile.class);
         when(multipartFile.isEmpty()).thenReturn(true);
@@ -75,7 +116,7 @@ class FileSystemStorageServiceTest {
     @DisplayName("should throw exception when storing file outside the root")
     void shouldThrowExceptionWhenStoringFileOutsideTheRoot() {
 
-        var service = new FileSystemStorageService(new StorageProperties(tempDir.toString()));
+        var service = storageService(new StorageProperties(tempDir.toString()));
 
         var multipartFile = mock(MultipartFile.class);
         when(multipartFile.getOriginalFilename()).thenReturn("../file.txt");
@@ -89,7 +130,7 @@ class FileSystemStorageServiceTest {
     @DisplayName("should throw exception when cannot store file")
     void shouldThrowExceptionWhenCannotStoreFile() throws IOException {
 
-        var service = new FileSystemStorageService(new StorageProperties(tempDir.toString()));
+        var service = storageService(new StorageProperties(tempDir.toString()));
 
         var multipartFile = mock(MultipartFile.class);
         when(multipartFile.getOriginalFilename()).thenReturn("file.txt");
@@ -100,11 +141,372 @@ class FileSystemStorageServiceTest {
                 .hasMessage("Failed to store file.");
     }
 
+    @Test
+    @DisplayName("should store streamed file")
+    void shouldStoreStreamedFile() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+
+        service.store("streamed.txt", new ByteArrayInputStream("streamed".getBytes()));
+
+        assertThat(tempDir.resolve("streamed.txt")).hasContent("streamed");
+    }
+
+    @Test
+    @DisplayName("should keep existing file when streamed body is empty")
+    void shouldKeepExistingFileWhenStreamedBodyIsEmpty() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+        Files.writeString(tempDir.resolve("existing.txt"), "existing");
+
+        assertThatThrownBy(() -> service.store("existing.txt", InputStream.nullInputStream()))
+                .isInstanceOf(EmptyFileException.class)
+                .hasMessage("Failed to store empty file.");
+        assertThat(tempDir.resolve("existing.txt")).hasContent("existing");
+    }
+
+    @Test
+    @DisplayName("should keep existing file when the upload breaks off")
+    void shouldKeepExistingFileWhenTheUploadBreaksOff() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+        Files.writeString(tempDir.resolve("existing.txt"), "existing");
+        var broken = new SequenceInputStream(new ByteArrayInputStream("partial".getBytes()), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        });
+
+        assertThatThrownBy(() -> service.store("existing.txt", broken))
+                .isInstanceOf(StorageException.class)
+                .hasMessage("Failed to store file.");
+        assertThat(tempDir.resolve("existing.txt")).hasContent("existing");
+        try (var staging = Files.list(tempDir.resolve(".staging"))) {
+            assertThat(staging).isEmpty();
+        }
+    }
+
+    @Test
+    @DisplayName("should record the digest of stored files only")
+    void shouldRecordTheDigestOfStoredFilesOnly() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+        service.store("hashed.txt", new ByteArrayInputStream("hello".getBytes()));
+        Files.writeString(tempDir.resolve("copied.txt"), "hello");
+
+        assertThat(service.loadAsResource("hashed.txt"))
+                .asInstanceOf(InstanceOfAssertFactories.type(DigestedResource.class))
+                .extracting(DigestedResource::sha256)
+                .isEqualTo("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+        assertThat(service.loadAsResource("copied.txt"))
+                .asInstanceOf(InstanceOfAssertFactories.type(DigestedResource.class))
+                .extracting(DigestedResource::sha256)
+                .isNull();
+
+        // Overwritten behind the service's back: the recorded digest no longer describes the content
+        Files.writeString(tempDir.resolve("hashed.txt"), "changed");
+        service.reconcile();
+        assertThat(service.loadAsResource("hashed.txt"))
+                .asInstanceOf(InstanceOfAssertFactories.type(DigestedResource.class))
+                .extracting(DigestedResource::sha256)
+                .isNull();
+    }
+
+    @Test
+    @DisplayName("should keep compressible files gzip-encoded at rest")
+    void shouldKeepCompressibleFilesGzipEncodedAtRest() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()), new CompressionProperties(true, 6,
+                DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), 0.8), FLAT);
+        var text = "lorem ipsum dolor sit amet ".repeat(2_000).getBytes();
+        var random = new byte[text.length];
+        new Random(42).nextBytes(random);
+        service.store("text.txt", new ByteArrayInputStream(text));
+        service.store("random.bin", new ByteArrayInputStream(random));
+        service.store("small.txt", new ByteArrayInputStream("small".getBytes()));
+
+        try (var gzip = new GZIPInputStream(Files.newInputStream(tempDir.resolve("text.txt")))) {
+            assertThat(gzip.readAllBytes()).isEqualTo(text);
+        }
+        assertThat(Files.size(tempDir.resolve("text.txt"))).isLessThan(text.length / 10);
+        assertThat(tempDir.resolve("random.bin")).hasBinaryContent(random);
+        assertThat(tempDir.resolve("small.txt")).hasContent("small");
+
+        var resource = service.loadAsResource("text.txt");
+        assertThat(resource).isInstanceOf(EncodedResource.class);
+        assertThat(resource.contentLength()).isEqualTo(text.length);
+        try (var inputStream = resource.getInputStream()) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(text);
+        }
+        assertThat(service.loadAsResource("random.bin")).isNotInstanceOf(EncodedResource.class);
+        assertThat(service.loadMetadata(""))
+                .filteredOn(metadata -> metadata.name().equals("text.txt"))
+                .singleElement()
+                .extracting(FileMetadata::size)
+                .isEqualTo((long) text.length);
+
+        var archive = new ByteArrayOutputStream();
+        service.zipFiles(Stream.of("text.txt")).writeTo(archive);
+        try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            assertThat(zipInputStream.getNextEntry()).isNotNull();
+            assertThat(zipInputStream.readAllBytes()).isEqualTo(text);
+        }
+    }
+
+    @Test
+    @DisplayName("should tell encoded files from the file itself once their sidecar no longer matches")
+    void shouldTellEncodedFilesFromTheFileItselfOnceTheirSidecarNoLongerMatches() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()), new CompressionProperties(true, 6,
+                DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), 0.8), FLAT);
+        var text = "lorem ipsum dolor sit amet ".repeat(2_000).getBytes();
+        service.store("touched.txt", new ByteArrayInputStream(text));
+        service.store("lost.txt", new ByteArrayInputStream(text));
+        var sha256 = ((DigestedResource) service.loadAsResource("touched.txt")).sha256();
+
+        // A touch, and a crash that lost the sidecar
+        Files.setLastModifiedTime(tempDir.resolve("touched.txt"), FileTime.fromMillis(0));
+        Files.delete(tempDir.resolve(".digests").resolve("lost.txt"));
+        service.reconcile();
+
+        for (var name : List.of("touched.txt", "lost.txt")) {
+            var resource = service.loadAsResource(name);
+            assertThat(resource).isInstanceOf(EncodedResource.class);
+            assertThat(resource.contentLength()).isEqualTo(text.length);
+            assertThat(((DigestedResource) resource).sha256()).isEqualTo(sha256);
+            assertThat(resource.getContentAsByteArray()).isEqualTo(text);
+        }
+        assertThat(service.loadMetadata("")).extracting(FileMetadata::size)
+                .containsExactly((long) text.length, (long) text.length);
+
+        // The sidecar says encoded, but the gzip on disk is not one the service wrote
+        var foreign = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(foreign)) {
+            gzip.write(text);
+        }
+        Files.write(tempDir.resolve("touched.txt"), foreign.toByteArray());
+        service.reconcile();
+        assertThatThrownBy(() -> service.loadAsResource("touched.txt")).isInstanceOf(StorageException.class);
+    }
+
+    @Test
+    @DisplayName("should record the CRC of stored files in their sidecar")
+    void shouldRecordTheCrcOfStoredFilesInTheirSidecar() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()), new CompressionProperties(true, 6,
+                DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), 0.8), FLAT);
+        var text = "lorem ipsum dolor sit amet ".repeat(2_000).getBytes();
+        service.store("text.txt", new ByteArrayInputStream(text));
+        service.store("plain.bin", new ByteArrayInputStream("hello".getBytes()));
+
+        for (var file : List.of(Map.entry("text.txt", text), Map.entry("plain.bin", "hello".getBytes()))) {
+            var crc = new CRC32();
+            crc.update(file.getValue());
+            assertThat(Files.readString(tempDir.resolve(".digests").resolve(file.getKey())))
+                    .endsWith(" %08x".formatted(crc.getValue()));
+        }
+        try (var zipInputStream = new ZipInputStream(
+                service.storedZip(List.of("text.txt", "plain.bin")).getInputStream())) {
+            assertThat(zipInputStream.getNextEntry()).isNotNull();
+            assertThat(zipInputStream.readAllBytes()).isEqualTo(text);
+            assertThat(zipInputStream.getNextEntry()).isNotNull();
+            assertThat(zipInputStream.readAllBytes()).isEqualTo("hello".getBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("should version files by their digest, or their size and modification time when it is unknown")
+    void shouldVersionFilesByTheirDigestOrTheirSizeAndModificationTimeWhenItIsUnknown() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+        service.store("stored.txt", new ByteArrayInputStream("hello".getBytes()));
+        Files.writeString(tempDir.resolve("copied.txt"), "copied");
+        Files.setLastModifiedTime(tempDir.resolve("copied.txt"), FileTime.fromMillis(1_000));
+        service.reconcile();
+
+        assertThat(service.version("stored.txt"))
+                .isEqualTo("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+        assertThat(service.version("copied.txt")).isEqualTo("6:1000");
+        assertThatThrownBy(() -> service.version("missing.txt")).isInstanceOf(StorageFileNotFoundException.class);
+    }
+
+    @Test
+    @DisplayName("should not hold up other stores of a name while an upload of it is still arriving")
+    void shouldNotHoldUpOtherStoresOfANameWhileAnUploadOfItIsStillArriving() throws Exception {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+        var arriving = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var slow = new SequenceInputStream(new ByteArrayInputStream("slow".getBytes()), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                arriving.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        });
+        var slowStore = CompletableFuture.runAsync(() -> service.store("same.txt", slow));
+        assertThat(arriving.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture.runAsync(() -> service.store("same.txt", new ByteArrayInputStream("fast".getBytes())))
+                .get(5, TimeUnit.SECONDS);
+        assertThat(tempDir.resolve("same.txt")).hasContent("fast");
+
+        release.countDown();
+        slowStore.get(5, TimeUnit.SECONDS);
+        assertThat(tempDir.resolve("same.txt")).hasContent("slow");
+    }
+
+    @Test
+    @DisplayName("should spread files over shard directories")
+    void shouldSpreadFilesOverShardDirectories() throws IOException {
+
+        var sharded = new LayoutProperties(LayoutProperties.Mode.SHARDED, 2);
+        var service = storageService(new StorageProperties(tempDir.toString()), NO_COMPRESSION, sharded);
+        service.init();
+        service.store("sharded.txt", new ByteArrayInputStream("sharded".getBytes()));
+        Files.writeString(tempDir.resolve("flat.txt"), "flat");
+
+        try (var files = Files.find(tempDir, 3, (path, attributes) -> attributes.isRegularFile())) {
+            assertThat(files.map(tempDir::relativize).map(Path::toString))
+                    .contains("flat.txt")
+                    .anyMatch(path -> path.matches("[0-9a-f]{2}/[0-9a-f]{2}/sharded\\.txt"));
+        }
+        assertThat(service.loadAsResource("sharded.txt").getContentAsByteArray()).isEqualTo("sharded".getBytes());
+        assertThat(service.loadAsResource("sharded.txt"))
+                .asInstanceOf(InstanceOfAssertFactories.type(DigestedResource.class))
+                .extracting(DigestedResource::sha256)
+                .isNotNull();
+        service.destroy();
+
+        // A restart finds the file by walking the shards and ignores what is not in the layout
+        var restarted = storageService(new StorageProperties(tempDir.toString()), NO_COMPRESSION, sharded);
+        restarted.reconcile();
+        assertThat(restarted.loadAll()).containsExactly(Path.of("sharded.txt"));
+    }
+
+    @Test
+    @DisplayName("should restore the files of a restarted service from its snapshot")
+    void shouldRestoreTheFilesOfARestartedServiceFromItsSnapshot() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+        service.init();
+        service.store("kept.txt", new ByteArrayInputStream("kept".getBytes()));
+        service.destroy();
+        Files.writeString(tempDir.resolve("added.txt"), "added");
+
+        var restarted = storageService(new StorageProperties(tempDir.toString()));
+        restarted.restore();
+
+        assertThat(restarted.loadAll()).contains(Path.of("kept.txt"));
+        assertThat(restarted.loadAsResource("kept.txt").getContentAsByteArray()).isEqualTo("kept".getBytes());
+        restarted.reconcile();
+        assertThat(restarted.loadAll()).containsExactlyInAnyOrder(Path.of("kept.txt"), Path.of("added.txt"));
+        restarted.destroy();
+    }
+
+    @Test
+    @DisplayName("should scan the stored files when restoring without a snapshot")
+    void shouldScanTheStoredFilesWhenRestoringWithoutASnapshot() throws IOException {
+
+        Files.writeString(tempDir.resolve("kept.txt"), "kept");
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+        service.restore();
+
+        assertThat(service.loadAll()).containsExactly(Path.of("kept.txt"));
+        service.destroy();
+    }
+
+    @Test
+    @DisplayName("should only show a staged file once committed")
+    void shouldOnlyShowAStagedFileOnceCommitted() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+        service.init();
+        Files.writeString(tempDir.resolve("staged.txt"), "old");
+
+        var staged = service.stage("staged.txt", new ByteArrayInputStream("new".getBytes()));
+        assertThat(tempDir.resolve("staged.txt")).hasContent("old");
+        staged.commit();
+        staged.discard();
+
+        assertThat(tempDir.resolve("staged.txt")).hasContent("new");
+        assertThat(service.loadAll()).containsExactly(Path.of("staged.txt"));
+
+        service.stage("discarded.txt", new ByteArrayInputStream("discarded".getBytes())).discard();
+        assertThat(tempDir.resolve("discarded.txt")).doesNotExist();
+        try (var staging = Files.list(tempDir.resolve(".staging"))) {
+            assertThat(staging).isEmpty();
+        }
+        service.destroy();
+    }
+
+    @Test
+    @DisplayName("should put back the replaced file when a commit is rolled back")
+    void shouldPutBackTheReplacedFileWhenACommitIsRolledBack() throws IOException {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+        service.init();
+        service.store("kept.txt", new ByteArrayInputStream("hello".getBytes()));
+
+        var replacing = service.stage("kept.txt", new ByteArrayInputStream("replaced".getBytes()));
+        var added = service.stage("added.txt", new ByteArrayInputStream("added".getBytes()));
+        replacing.commit();
+        added.commit();
+        assertThat(tempDir.resolve("kept.txt")).hasContent("replaced");
+        replacing.rollback();
+        added.rollback();
+        replacing.discard();
+        added.discard();
+
+        assertThat(tempDir.resolve("kept.txt")).hasContent("hello");
+        assertThat(tempDir.resolve("added.txt")).doesNotExist();
+        assertThat(service.loadAll()).containsExactly(Path.of("kept.txt"));
+        assertThat(service.loadAsResource("kept.txt"))
+                .asInstanceOf(InstanceOfAssertFactories.type(DigestedResource.class))
+                .extracting(DigestedResource::sha256)
+                .isEqualTo("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+        try (var staging = Files.list(tempDir.resolve(".staging"))) {
+            assertThat(staging).isEmpty();
+        }
+        service.destroy();
+    }
+
+    @Test
+    @DisplayName("should throw exception when streaming file outside the root")
+    void shouldThrowExceptionWhenStreamingFileOutsideTheRoot() {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+
+        assertThatThrownBy(() -> service.store("../file.txt", new ByteArrayInputStream("test".getBytes())))
+                .isInstanceOf(StorageException.class)
+                .hasMessage("Cannot store file outside current directory.");
+    }
+
+    @Test
+    @DisplayName("should throw exception when storing under a reserved name")
+    void shouldThrowExceptionWhenStoringUnderAReservedName() {
+
+        var service = storageService(new StorageProperties(tempDir.toString()));
+
+        assertThatThrownBy(() -> service.store(".staging", new ByteArrayInputStream("test".getBytes())))
+                .isInstanceOf(InvalidFilenameException.class)
+                .hasMessage("Cannot store file under a reserved name: .staging");
+        assertThatThrownBy(() -> service.validateFilename("./.digests"))
+                .isInstanceOf(InvalidFilenameException.class);
+    }
+
     @Test
     @DisplayName("should throw exception when file not found")
     void shouldThrowExceptionWhenFileNotFound() {
         var filename = "nonexistentfile.txt";
-        var service = new FileSystemStorageService(new StorageProperties("test.txt"));
+        var service = storageService(new StorageProperties("test.txt"));
 
         assertThatThrownBy(() -> service.loadAsResource(filename))
                 .isInstanceOf(StorageFileNotFoundException.class)
@@ -116,7 +518,7 @@ class FileSystemStorageServiceTest {
     void shouldThrowExceptionWhenUrlIsMalformed() {
 
         var filename = "../malformedfile.txt";
-        var service = new FileSystemStorageService(new StorageProperties("test.txt"));
+        var service = storageService(new StorageProperties("test.txt"));
 
         assertThatThrownBy(() -> service.loadAsResource(filename))
                 .isInstanceOf(StorageFileNotFoundException.class)
@@ -127,7 +529,7 @@ class FileSystemStorageServiceTest {
     @DisplayName("should return stream of path")
     @SuppressWarnings("ResultOfMethodCallIgnored")
     void shouldReturnStreamOfPath() {
-        var service = new FileSystemStorageService(new StorageProperties(tempDir.toString()));
+        var service = storageService(new StorageProperties(tempDir.toString()));
         tempDir.resolve("test.txt");
         assertThat(service.loadAll()).isNotNull();
     }
@@ -137,7 +539,7 @@ class FileSystemStorageServiceTest {
     @SuppressWarnings("ResultOfMethodCallIgnored")
     void shouldReturnZippedStreamingResponseBody() {
 
-        var service = new FileSystemStorageService(new StorageProperties(tempDir.toString()));
+        var service = storageService(new StorageProperties(tempDir.toString()));
         tempDir.resolve("test1.txt");
         tempDir.resolve("test2.txt");
 
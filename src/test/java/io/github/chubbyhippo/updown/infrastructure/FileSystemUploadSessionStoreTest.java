@@ -0,0 +1,216 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.UploadConflictException;
+import io.github.chubbyhippo.updown.domain.UploadSession;
+import io.github.chubbyhippo.updown.domain.UploadSessionNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileSystemUploadSessionStoreTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private FileSystemUploadSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new FileSystemUploadSessionStore(
+                new UploadProperties(tempDir.toString(), Duration.ofHours(1)), JsonMapper.builder().build());
+    }
+
+    private static InputStream chunk(String content) {
+        return new ByteArrayInputStream(content.getBytes());
+    }
+
+    @Test
+    @DisplayName("should create and reload a session")
+    void shouldCreateAndReloadASession() {
+        var session = store.create("file.txt", 10);
+
+        var reloaded = new FileSystemUploadSessionStore(
+                new UploadProperties(tempDir.toString(), Duration.ofHours(1)), JsonMapper.builder().build())
+                .get(session.id());
+
+        assertThat(reloaded).isEqualTo(session);
+    }
+
+    @Test
+    @DisplayName("should commit contiguous chunks written out of order")
+    void shouldCommitContiguousChunksWrittenOutOfOrder() throws IOException {
+        var session = store.create("file.txt", 10);
+
+        assertThat(store.write(session.id(), 5, chunk("56789")).committedOffset()).isZero();
+        var written = store.write(session.id(), 0, chunk("01234"));
+
+        assertThat(written.committedOffset()).isEqualTo(10);
+        assertThat(written.received()).containsExactly(new UploadSession.Range(0, 10));
+        assertThat(written.complete()).isTrue();
+        try (var data = store.openData(session.id())) {
+            assertThat(data.readAllBytes()).isEqualTo("0123456789".getBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("should keep bytes received before the connection dropped")
+    void shouldKeepBytesReceivedBeforeTheConnectionDropped() {
+        var session = store.create("file.txt", 10);
+        var dropping = new InputStream() {
+            private int remaining = 4;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("connection reset");
+                }
+                remaining--;
+                return 'x';
+            }
+        };
+
+        assertThatThrownBy(() -> store.write(session.id(), 0, dropping))
+                .isInstanceOf(StorageException.class)
+                .hasMessage("Failed to write upload chunk.");
+        assertThat(store.get(session.id()).committedOffset()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("should reject chunks past the upload length")
+    void shouldRejectChunksPastTheUploadLength() {
+        var session = store.create("file.txt", 4);
+
+        assertThatThrownBy(() -> store.write(session.id(), 2, chunk("234")))
+                .isInstanceOf(UploadConflictException.class)
+                .hasMessage("Chunk exceeds the upload length 4.");
+        assertThatThrownBy(() -> store.write(session.id(), 5, chunk("5")))
+                .isInstanceOf(UploadConflictException.class)
+                .hasMessage("Offset 5 is outside the upload length 4.");
+    }
+
+    @Test
+    @DisplayName("should refuse chunks and other claims while a session is claimed")
+    void shouldRefuseChunksAndOtherClaimsWhileASessionIsClaimed() {
+        var session = store.create("file.txt", 10);
+
+        assertThat(store.claim(session.id())).isEqualTo(session);
+        assertThatThrownBy(() -> store.write(session.id(), 0, chunk("01234")))
+                .isInstanceOf(UploadConflictException.class)
+                .hasMessage("Upload is being completed or aborted.");
+        assertThatThrownBy(() -> store.claim(session.id()))
+                .isInstanceOf(UploadConflictException.class);
+
+        store.release(session.id());
+        assertThat(store.write(session.id(), 0, chunk("01234")).committedOffset()).isEqualTo(5);
+        store.claim(session.id());
+        store.delete(session.id());
+        assertThatThrownBy(() -> store.claim(session.id())).isInstanceOf(UploadSessionNotFoundException.class);
+    }
+
+    @Test
+    @DisplayName("should refuse chunks under another spelling of a claimed session's id")
+    void shouldRefuseChunksUnderAnotherSpellingOfAClaimedSessionsId() {
+        var session = store.create("file.txt", 10);
+        var spelling = session.id().toUpperCase(Locale.ROOT);
+
+        store.claim(session.id());
+
+        assertThatThrownBy(() -> store.write(spelling, 0, chunk("01234")))
+                .isInstanceOf(UploadConflictException.class)
+                .hasMessage("Upload is being completed or aborted.");
+        assertThatThrownBy(() -> store.claim(spelling)).isInstanceOf(UploadConflictException.class);
+
+        store.release(spelling);
+        assertThat(store.write(spelling, 0, chunk("01234")).committedOffset()).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("should not claim a session while a chunk is being written")
+    void shouldNotClaimASessionWhileAChunkIsBeingWritten() {
+        var session = store.create("file.txt", 10);
+        var chunk = new InputStream() {
+            private boolean claimed;
+
+            @Override
+            public int read() {
+                if (!claimed) {
+                    claimed = true;
+                    assertThatThrownBy(() -> store.claim(session.id()))
+                            .isInstanceOf(UploadConflictException.class)
+                            .hasMessage("Chunks are still being written.");
+                    return '0';
+                }
+                return -1;
+            }
+        };
+
+        assertThat(store.write(session.id(), 0, chunk).committedOffset()).isEqualTo(1);
+        assertThat(store.claim(session.id()).committedOffset()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should throw exception when session is unknown")
+    void shouldThrowExceptionWhenSessionIsUnknown() {
+        assertThatThrownBy(() -> store.get("../../etc"))
+                .isInstanceOf(UploadSessionNotFoundException.class)
+                .hasMessage("Upload session not found: ../../etc");
+    }
+
+    @Test
+    @DisplayName("should purge idle sessions")
+    void shouldPurgeIdleSessions() throws IOException {
+        var idle = store.create("idle.txt", 10);
+        var active = store.create("active.txt", 10);
+        Files.setLastModifiedTime(tempDir.resolve(idle.id()).resolve("session.json"),
+                FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+
+        assertThat(store.purgeIdle(Duration.ofDays(1))).isEqualTo(1);
+        assertThatThrownBy(() -> store.get(idle.id())).isInstanceOf(UploadSessionNotFoundException.class);
+        assertThat(store.get(active.id())).isEqualTo(active);
+    }
+
+    @Test
+    @DisplayName("should not purge an idle session that is claimed or being written")
+    void shouldNotPurgeAnIdleSessionThatIsClaimedOrBeingWritten() throws IOException {
+        var claimed = store.create("claimed.txt", 10);
+        var written = store.create("written.txt", 10);
+        for (var session : List.of(claimed, written)) {
+            Files.setLastModifiedTime(tempDir.resolve(session.id()).resolve("session.json"),
+                    FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+        }
+        store.claim(claimed.id());
+        var chunk = new InputStream() {
+            private boolean purged;
+
+            @Override
+            public int read() {
+                if (!purged) {
+                    purged = true;
+                    assertThat(store.purgeIdle(Duration.ofDays(1))).isZero();
+                    return '0';
+                }
+                return -1;
+            }
+        };
+
+        assertThat(store.write(written.id(), 0, chunk).committedOffset()).isEqualTo(1);
+        assertThat(store.get(claimed.id())).isEqualTo(claimed);
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.ZipJob;
+import io.github.chubbyhippo.updown.domain.ZipJobNotFoundException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileSystemZipJobStoreTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private FileSystemZipJobStore store(DataSize maxSize, Duration maxIdle) {
+        return new FileSystemZipJobStore(new ZipJobCacheProperties(tempDir.toString(), maxSize, maxIdle),
+                JsonMapper.builder().build());
+    }
+
+    private static ZipJob finish(FileSystemZipJobStore store, Instant updatedAt, int size) throws IOException {
+        var job = store.create(List.of("file.txt"), null, size);
+        try (var outputStream = store.openArchive(job.id())) {
+            outputStream.write(new byte[size]);
+        }
+        var done = job.running(updatedAt).done(store.commitArchive(job.id()), updatedAt);
+        store.save(done);
+        return done;
+    }
+
+    @Test
+    @DisplayName("should only expose an archive once it is committed")
+    void shouldOnlyExposeAnArchiveOnceItIsCommitted() throws IOException {
+        var store = store(DataSize.ofMegabytes(1), Duration.ofHours(1));
+        var job = store.create(List.of("file.txt"), 1, 5);
+        try (var outputStream = store.openArchive(job.id())) {
+            outputStream.write("hello".getBytes());
+            assertThatThrownBy(() -> store.loadArchive(job.id())).isInstanceOf(ZipJobNotFoundException.class);
+        }
+
+        assertThat(store.commitArchive(job.id())).isEqualTo(5);
+        assertThat(store.loadArchive(job.id()).getContentAsByteArray()).isEqualTo("hello".getBytes());
+        assertThat(store(DataSize.ofMegabytes(1), Duration.ofHours(1)).get(job.id())).isEqualTo(job);
+        assertThatThrownBy(() -> store.get("../root")).isInstanceOf(ZipJobNotFoundException.class);
+    }
+
+    @Test
+    @DisplayName("should evict the least recently used archives beyond the size limit and idle jobs")
+    void shouldEvictTheLeastRecentlyUsedArchivesBeyondTheSizeLimitAndIdleJobs() throws IOException {
+        var store = store(DataSize.ofMegabytes(1), Duration.ofDays(1));
+        var now = Instant.now();
+        var idle = store.create(List.of("file.txt"), null, 0);
+        store.save(idle.running(now.minus(Duration.ofHours(2))).failed("gone", now.minus(Duration.ofHours(2))));
+        var queued = store.create(List.of("file.txt"), null, 0);
+        var oldest = finish(store, now.minusSeconds(30), 100);
+        var recent = finish(store, now.minusSeconds(20), 100);
+        var touched = finish(store, now.minusSeconds(40), 100);
+        store.save(touched.touched(now));
+
+        var bounded = store(DataSize.ofBytes(250), Duration.ofHours(1));
+        assertThat(bounded.evict()).isEqualTo(2);
+        assertThat(bounded.list()).extracting(ZipJob::id)
+                .containsExactlyInAnyOrder(queued.id(), recent.id(), touched.id());
+        assertThatThrownBy(() -> store.get(oldest.id())).isInstanceOf(ZipJobNotFoundException.class);
+    }
+}
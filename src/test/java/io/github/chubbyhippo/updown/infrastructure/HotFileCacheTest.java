@@ -0,0 +1,94 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.FileStoredEvent;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotFileCacheTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private static HotFileCache cache(boolean enabled) {
+        return new HotFileCache(new HotFileCacheProperties(enabled, DataSize.ofKilobytes(64),
+                DataSize.ofBytes(16), Duration.ofMinutes(10)));
+    }
+
+    private Function<String, Resource> loader() {
+        return filename -> {
+            loads.incrementAndGet();
+            return new FileSystemResource(tempDir.resolve(filename));
+        };
+    }
+
+    @Test
+    @DisplayName("should serve repeated requests from memory")
+    void shouldServeRepeatedRequestsFromMemory() throws IOException {
+        Files.writeString(tempDir.resolve("hot.txt"), "hot content");
+        var cache = cache(true);
+
+        var first = cache.get("hot.txt", loader());
+        var second = cache.get("hot.txt", loader());
+
+        assertThat(loads).hasValue(1);
+        assertThat(second).isSameAs(first).isInstanceOf(CachedFileResource.class);
+        assertThat(second.getContentAsByteArray()).isEqualTo("hot content".getBytes());
+        assertThat(second.getFilename()).isEqualTo("hot.txt");
+        assertThat(second.contentLength()).isEqualTo(11);
+    }
+
+    @Test
+    @DisplayName("should reload a file after it is stored again")
+    void shouldReloadAFileAfterItIsStoredAgain() throws IOException {
+        Files.writeString(tempDir.resolve("hot.txt"), "version 1");
+        var cache = cache(true);
+        cache.get("hot.txt", loader());
+
+        Files.writeString(tempDir.resolve("hot.txt"), "version 2");
+        cache.onFileStored(new FileStoredEvent("hot.txt"));
+
+        assertThat(cache.get("hot.txt", loader()).getContentAsByteArray()).isEqualTo("version 2".getBytes());
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("should not cache files above the entry size")
+    void shouldNotCacheFilesAboveTheEntrySize() throws IOException {
+        Files.writeString(tempDir.resolve("large.txt"), "more than sixteen bytes");
+        var cache = cache(true);
+
+        var resource = cache.get("large.txt", loader());
+        cache.get("large.txt", loader());
+
+        assertThat(resource).isInstanceOf(FileSystemResource.class);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("should pass through when disabled")
+    void shouldPassThroughWhenDisabled() throws IOException {
+        Files.writeString(tempDir.resolve("hot.txt"), "hot content");
+        var cache = cache(false);
+
+        cache.get("hot.txt", loader());
+        var resource = cache.get("hot.txt", loader());
+
+        assertThat(resource).isInstanceOf(FileSystemResource.class);
+        assertThat(loads).hasValue(2);
+    }
+}
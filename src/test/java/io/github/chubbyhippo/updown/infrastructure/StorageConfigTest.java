@@ -0,0 +1,39 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.StorageService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class StorageConfigTest {
+
+    private final StorageService storageService = mock(StorageService.class);
+
+    @Test
+    @DisplayName("should restore the stored files in keep mode")
+    void shouldRestoreTheStoredFilesInKeepMode() throws Exception {
+        new StorageConfig().applicationRunner(storageService, new StartupProperties(StartupProperties.Mode.KEEP))
+                .run(new DefaultApplicationArguments());
+
+        verify(storageService).restore();
+        verify(storageService, never()).deleteAll();
+        verify(storageService, never()).init();
+    }
+
+    @Test
+    @DisplayName("should delete the stored files and start empty in reset mode")
+    void shouldDeleteTheStoredFilesAndStartEmptyInResetMode() throws Exception {
+        new StorageConfig().applicationRunner(storageService, new StartupProperties(StartupProperties.Mode.RESET))
+                .run(new DefaultApplicationArguments());
+
+        var order = inOrder(storageService);
+        order.verify(storageService).deleteAll();
+        order.verify(storageService).init();
+        verify(storageService, never()).restore();
+    }
+}
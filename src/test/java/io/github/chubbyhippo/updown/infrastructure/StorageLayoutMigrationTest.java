@@ -0,0 +1,88 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.DigestedResource;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageLayoutMigrationTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private FileSystemStorageService storageService(LayoutProperties.Mode mode) {
+        var zipProperties = new ZipProperties(ZipProperties.Mode.PARALLEL, 0,
+                DataSize.ofMegabytes(1), DataSize.ofMegabytes(64), -1, true, DataSize.ofKilobytes(64), 0.9);
+        return new FileSystemStorageService(new StorageProperties(tempDir.toString()),
+                new ZipArchiveEngine(zipProperties),
+                new FileCommitter(new DurabilityProperties(DurabilityProperties.Mode.NONE, Duration.ZERO)),
+                new CompressionProperties(false, 6, DataSize.ofKilobytes(4), DataSize.ofKilobytes(64), 0.8),
+                new LayoutProperties(mode, 2), event -> {
+        });
+    }
+
+    @Test
+    @DisplayName("should move a flat root and its digests into shards")
+    void shouldMoveAFlatRootAndItsDigestsIntoShards() throws IOException {
+        var flat = storageService(LayoutProperties.Mode.FLAT);
+        flat.init();
+        flat.store("hashed.txt", new ByteArrayInputStream("hello".getBytes()));
+        flat.destroy();
+        Files.writeString(tempDir.resolve("copied.txt"), "copied");
+
+        assertThat(StorageLayoutMigration.migrate(tempDir, 2)).isEqualTo(2);
+        // Running it again finds nothing left to move
+        assertThat(StorageLayoutMigration.migrate(tempDir, 2)).isZero();
+
+        var sharded = storageService(LayoutProperties.Mode.SHARDED);
+        sharded.reconcile();
+        assertThat(sharded.loadAll()).containsExactly(Path.of("copied.txt"), Path.of("hashed.txt"));
+        assertThat(sharded.loadAsResource("copied.txt").getContentAsByteArray()).isEqualTo("copied".getBytes());
+        assertThat(sharded.loadAsResource("hashed.txt"))
+                .asInstanceOf(InstanceOfAssertFactories.type(DigestedResource.class))
+                .extracting(DigestedResource::sha256)
+                .isEqualTo("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+        try (var rootFiles = Files.list(tempDir)) {
+            assertThat(rootFiles).noneMatch(Files::isRegularFile);
+        }
+    }
+
+    @Test
+    @DisplayName("should move files named like shard directories out of their way")
+    void shouldMoveFilesNamedLikeShardDirectoriesOutOfTheirWay() throws IOException {
+        var flat = storageService(LayoutProperties.Mode.FLAT);
+        flat.init();
+        var names = IntStream.range(0, 256).mapToObj(i -> HexFormat.of().toHexDigits((byte) i)).toList();
+        for (var name : names) {
+            flat.store(name, new ByteArrayInputStream(name.getBytes()));
+        }
+        flat.destroy();
+
+        assertThat(StorageLayoutMigration.migrate(tempDir, 2)).isEqualTo(256);
+
+        var sharded = storageService(LayoutProperties.Mode.SHARDED);
+        sharded.reconcile();
+        assertThat(sharded.loadAll()).map(Path::toString).containsExactlyInAnyOrderElementsOf(names);
+        assertThat(sharded.loadAsResource("ab").getContentAsByteArray()).isEqualTo("ab".getBytes());
+        assertThat(sharded.loadAsResource("ab"))
+                .asInstanceOf(InstanceOfAssertFactories.type(DigestedResource.class))
+                .extracting(DigestedResource::sha256)
+                .isNotNull();
+        try (var rootFiles = Files.list(tempDir)) {
+            assertThat(rootFiles).map(path -> path.getFileName().toString())
+                    .noneMatch(name -> name.startsWith(".migrating"));
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.UploadSession;
+import io.github.chubbyhippo.updown.domain.ZipJob;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageRuntimeHintsTest {
+
+    @Test
+    @DisplayName("should register the persisted records for binding and the mime types table")
+    void shouldRegisterThePersistedRecordsForBindingAndTheMimeTypesTable() {
+        var hints = new RuntimeHints();
+
+        new StorageRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertThat(RuntimeHintsPredicates.reflection().onType(ZipJob.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(ZipJob.Status.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(UploadSession.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("org/springframework/http/mime.types"))
+                .accepts(hints);
+    }
+}
@@ -0,0 +1,275 @@
+package io.github.chubbyhippo.updown.infrastructure;
+
+import io.github.chubbyhippo.updown.domain.StorageException;
+import io.github.chubbyhippo.updown.domain.VersionedResource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZipArchiveEngineTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private static ZipArchiveEngine engine(ZipProperties.Mode mode) {
+        return engine(mode, true);
+    }
+
+    private static ZipArchiveEngine engine(ZipProperties.Mode mode, boolean adaptive) {
+        // Tiny chunks and buffer so a single test file spans several chunks and the window fills up
+        return new ZipArchiveEngine(new ZipProperties(mode, 4, DataSize.ofKilobytes(1), DataSize.ofKilobytes(4), -1,
+                adaptive, DataSize.ofKilobytes(1), 0.9));
+    }
+
+    private Map<String, byte[]> files() throws IOException {
+        var random = new Random(42);
+        var incompressible = new byte[10_000];
+        random.nextBytes(incompressible);
+        var files = new LinkedHashMap<String, byte[]>();
+        files.put("empty.txt", new byte[0]);
+        files.put("small.txt", "hello zip".getBytes());
+        files.put("exact.bin", new byte[2048]);
+        files.put("text.txt", "lorem ipsum dolor sit amet ".repeat(2_000).getBytes());
+        files.put("random.bin", incompressible);
+        for (var file : files.entrySet()) {
+            Files.write(tempDir.resolve(file.getKey()), file.getValue());
+        }
+        return files;
+    }
+
+    private byte[] zip(ZipArchiveEngine engine, Map<String, byte[]> files) throws IOException {
+        return zip(engine, files, -1);
+    }
+
+    private byte[] zip(ZipArchiveEngine engine, Map<String, byte[]> files, int level) throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+        engine.write(files.keySet().stream()
+                .map(name -> ZipArchiveEngine.Source.of(name, tempDir.resolve(name))), outputStream, level);
+        return outputStream.toByteArray();
+    }
+
+    private Map<String, Integer> methods(byte[] archive) throws IOException {
+        var path = tempDir.resolve("methods.zip");
+        Files.write(path, archive);
+        var methods = new LinkedHashMap<String, Integer>();
+        try (var zipFile = new ZipFile(path.toFile())) {
+            zipFile.stream().forEach(entry -> methods.put(entry.getName(), entry.getMethod()));
+        }
+        return methods;
+    }
+
+    @Test
+    @DisplayName("should produce an archive readable as a stream in entry order")
+    void shouldProduceAnArchiveReadableAsAStreamInEntryOrder() throws IOException {
+        var files = files();
+
+        var archive = zip(engine(ZipProperties.Mode.PARALLEL), files);
+
+        var unzipped = new LinkedHashMap<String, byte[]>();
+        try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (var entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+                unzipped.put(entry.getName(), zipInputStream.readAllBytes());
+            }
+        }
+        assertThat(unzipped.keySet()).containsExactlyElementsOf(files.keySet());
+        files.forEach((name, content) -> assertThat(unzipped.get(name)).isEqualTo(content));
+    }
+
+    @Test
+    @DisplayName("should produce a central directory matching the entries")
+    void shouldProduceACentralDirectoryMatchingTheEntries() throws IOException {
+        var files = files();
+        var archive = tempDir.resolve("archive.zip");
+        Files.write(archive, zip(engine(ZipProperties.Mode.PARALLEL), files));
+
+        try (var zipFile = new ZipFile(archive.toFile())) {
+            assertThat(zipFile.size()).isEqualTo(files.size());
+            for (var file : files.entrySet()) {
+                var entry = zipFile.getEntry(file.getKey());
+                assertThat(entry.getSize()).isEqualTo(file.getValue().length);
+                try (var inputStream = zipFile.getInputStream(entry)) {
+                    assertThat(inputStream.readAllBytes()).isEqualTo(file.getValue());
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should compress like the serial writer")
+    void shouldCompressLikeTheSerialWriter() throws IOException {
+        var files = files();
+
+        var parallel = zip(engine(ZipProperties.Mode.PARALLEL, false), files);
+        var serial = zip(engine(ZipProperties.Mode.SERIAL, false), files);
+
+        // Priming each chunk with its predecessor keeps the ratio close to a single deflate stream
+        assertThat((double) parallel.length).isLessThan(serial.length * 1.1);
+    }
+
+    @ParameterizedTest
+    @EnumSource(ZipProperties.Mode.class)
+    @DisplayName("should store entries that do not compress")
+    void shouldStoreEntriesThatDoNotCompress(ZipProperties.Mode mode) throws IOException {
+        var files = files();
+        files.put("photo.jpg", "not really a jpeg but named like one".repeat(100).getBytes());
+        Files.write(tempDir.resolve("photo.jpg"), files.get("photo.jpg"));
+
+        var methods = methods(zip(engine(mode), files));
+
+        assertThat(methods).containsEntry("random.bin", ZipEntry.STORED)
+                .containsEntry("photo.jpg", ZipEntry.STORED)
+                .containsEntry("empty.txt", ZipEntry.STORED)
+                .containsEntry("small.txt", ZipEntry.STORED)
+                .containsEntry("text.txt", ZipEntry.DEFLATED)
+                .containsEntry("exact.bin", ZipEntry.DEFLATED);
+    }
+
+    @ParameterizedTest
+    @EnumSource(ZipProperties.Mode.class)
+    @DisplayName("should store every entry at level zero")
+    void shouldStoreEveryEntryAtLevelZero(ZipProperties.Mode mode) throws IOException {
+        var files = files();
+
+        var archive = zip(engine(mode), files, 0);
+
+        assertThat(methods(archive).values()).containsOnly(ZipEntry.STORED);
+        try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (var entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+                assertThat(zipInputStream.readAllBytes()).isEqualTo(files.get(entry.getName()));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ZipProperties.Mode.class)
+    @DisplayName("should report cpu time saved by storing")
+    void shouldReportCpuTimeSavedByStoring(ZipProperties.Mode mode) throws IOException {
+        var engine = engine(mode);
+        var registry = new SimpleMeterRegistry();
+        engine.bindTo(registry);
+
+        zip(engine, files());
+
+        assertThat(registry.get("storage.zip.entries").tag("method", "stored").functionCounter().count()).isEqualTo(3);
+        assertThat(registry.get("storage.zip.entries").tag("method", "deflated").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("storage.zip.stored").functionCounter().count()).isEqualTo(10_009);
+        assertThat(registry.get("storage.zip.deflate.cpu").functionCounter().count()).isPositive();
+        assertThat(registry.get("storage.zip.cpu.saved").functionCounter().count()).isPositive();
+    }
+
+    @Test
+    @DisplayName("should throw exception when a file is missing")
+    void shouldThrowExceptionWhenAFileIsMissing() {
+        var sources = Stream.of("missing.txt")
+                .map(name -> new ZipArchiveEngine.Source(name, tempDir.resolve(name), 0, 0));
+
+        assertThatThrownBy(() -> engine(ZipProperties.Mode.PARALLEL).write(sources, new ByteArrayOutputStream()))
+                .isInstanceOf(StorageException.class)
+                .hasMessage("Failed to read file: missing.txt");
+    }
+
+    @Test
+    @DisplayName("should lay out a stored archive whose length is known and whose ranges read on their own")
+    void shouldLayOutAStoredArchiveWhoseLengthIsKnownAndWhoseRangesReadOnTheirOwn() throws IOException {
+        var files = files();
+        var engine = engine(ZipProperties.Mode.PARALLEL);
+        var archive = engine.storedArchive(files.keySet().stream()
+                .map(name -> ZipArchiveEngine.Source.of(name, tempDir.resolve(name)))
+                .toList());
+
+        var bytes = archive.getContentAsByteArray();
+
+        assertThat(archive.contentLength()).isEqualTo(bytes.length);
+        assertThat(methods(bytes)).containsOnlyKeys(files.keySet()).allSatisfy((name, method) ->
+                assertThat(method).isEqualTo(ZipEntry.STORED));
+        var unzipped = new LinkedHashMap<String, byte[]>();
+        try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                unzipped.put(entry.getName(), zipInputStream.readAllBytes());
+            }
+        }
+        files.forEach((name, content) -> assertThat(unzipped.get(name)).isEqualTo(content));
+        // Ranges across header and file boundaries, read after skipping to them
+        for (var start : new int[]{0, 29, 100, 2_100, bytes.length - 200}) {
+            try (var inputStream = archive.getInputStream()) {
+                assertThat(inputStream.skip(start)).isEqualTo(start);
+                assertThat(inputStream.readNBytes(3_000))
+                        .isEqualTo(Arrays.copyOfRange(bytes, start, Math.min(bytes.length, start + 3_000)));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should read a range of a stored archive without opening the files before it when their CRCs are known")
+    void shouldReadARangeOfAStoredArchiveWithoutOpeningTheFilesBeforeItWhenTheirCrcsAreKnown() throws IOException {
+        var files = files();
+        var sources = files.entrySet().stream()
+                .map(file -> {
+                    var crc = new CRC32();
+                    crc.update(file.getValue());
+                    var source = ZipArchiveEngine.Source.of(file.getKey(), tempDir.resolve(file.getKey()));
+                    return new ZipArchiveEngine.Source(source.name(), source.path(), source.size(),
+                            source.lastModified(), false, crc.getValue());
+                })
+                .toList();
+        var archive = engine(ZipProperties.Mode.PARALLEL).storedArchive(sources);
+        var bytes = archive.getContentAsByteArray();
+
+        // Everything but the last file is gone, so a range in it only reads if nothing before it is opened
+        for (var name : files.keySet()) {
+            if (!name.equals("random.bin")) {
+                Files.delete(tempDir.resolve(name));
+            }
+        }
+        var start = bytes.length - 5_000;
+        try (var inputStream = archive.getInputStream()) {
+            assertThat(inputStream.skip(start)).isEqualTo(start);
+            assertThat(inputStream.readAllBytes()).isEqualTo(Arrays.copyOfRange(bytes, start, bytes.length));
+        }
+    }
+
+    @Test
+    @DisplayName("should version a stored archive by every entry, not only the newest one and the length")
+    void shouldVersionAStoredArchiveByEveryEntryNotOnlyTheNewestOneAndTheLength() throws IOException {
+        var engine = engine(ZipProperties.Mode.PARALLEL);
+        var a = tempDir.resolve("a.txt");
+        var b = tempDir.resolve("b.txt");
+
+        var archive = (VersionedResource) engine.storedArchive(List.of(
+                new ZipArchiveEngine.Source("a.txt", a, 10, 1_000), new ZipArchiveEngine.Source("b.txt", b, 10, 2_000)));
+        // a.txt replaced by content of the same size, still older than b.txt
+        var replaced = (VersionedResource) engine.storedArchive(List.of(
+                new ZipArchiveEngine.Source("a.txt", a, 10, 1_500), new ZipArchiveEngine.Source("b.txt", b, 10, 2_000)));
+
+        assertThat(replaced.lastModified()).isEqualTo(archive.lastModified());
+        assertThat(replaced.contentLength()).isEqualTo(archive.contentLength());
+        assertThat(replaced.version()).isNotEqualTo(archive.version());
+        assertThat(((VersionedResource) engine.storedArchive(List.of(
+                new ZipArchiveEngine.Source("a.txt", a, 10, 1_000), new ZipArchiveEngine.Source("b.txt", b, 10, 2_000))))
+                .version()).isEqualTo(archive.version());
+    }
+}
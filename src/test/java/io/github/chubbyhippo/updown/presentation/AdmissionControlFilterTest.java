@@ -0,0 +1,129 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.github.chubbyhippo.updown.infrastructure.DownloadProperties;
+import io.github.chubbyhippo.updown.infrastructure.FileChannelDownloadEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlFilterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private AdmissionControlFilter filter(boolean enabled) {
+        return new AdmissionControlFilter(new AdmissionProperties(enabled, new AdmissionProperties.Limits(1, 1, 1),
+                Duration.ofMillis(10), Duration.ofMillis(1500), false, 2.0), registry);
+    }
+
+    private static MockFilterChain streaming() {
+        return new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) {
+                request.startAsync(request, response);
+            }
+        });
+    }
+
+    private static MockHttpServletRequest download() {
+        var request = new MockHttpServletRequest("GET", "/files/download.txt");
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    @Test
+    @DisplayName("should turn away a download over the limit until the streamed one completes")
+    void shouldTurnAwayADownloadOverTheLimitUntilTheStreamedOneCompletes() throws ServletException, IOException {
+        var filter = filter(true);
+        var streamed = download();
+        filter.doFilter(streamed, new MockHttpServletResponse(), streaming());
+
+        var rejected = new MockHttpServletResponse();
+        filter.doFilter(download(), rejected, new MockFilterChain());
+
+        assertThat(rejected.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        assertThat(registry.get("storage.admission.rejected").tag("operation", "download").functionCounter().count())
+                .isEqualTo(1);
+
+        Objects.requireNonNull(streamed.getAsyncContext()).complete();
+        var admitted = new MockHttpServletResponse();
+        filter.doFilter(download(), admitted, new MockFilterChain());
+
+        assertThat(admitted.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    @DisplayName("should keep an admitted download above the sendfile threshold off sendfile and in its slot")
+    void shouldKeepAnAdmittedDownloadAboveTheSendfileThresholdOffSendfileAndInItsSlot(@TempDir Path directory)
+            throws ServletException, IOException {
+        var file = Files.write(directory.resolve("download.txt"), new byte[1024 * 1024]);
+        var engine = new FileChannelDownloadEngine(new DownloadProperties(DownloadProperties.Mode.AUTO,
+                DataSize.ofKilobytes(48), DataSize.ofMegabytes(4)));
+        var offloaded = new AtomicBoolean(true);
+        var filter = filter(true);
+        var streamed = download();
+        streamed.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        filter.doFilter(streamed, new MockHttpServletResponse(), new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                var resource = new FileSystemResource(file);
+                offloaded.set(engine.offload(resource, 0, resource.contentLength(), request));
+                request.startAsync(request, response);
+            }
+        }));
+
+        var rejected = new MockHttpServletResponse();
+        filter.doFilter(download(), rejected, new MockFilterChain());
+
+        assertThat(offloaded).isFalse();
+        assertThat(streamed.getAttribute("org.apache.tomcat.sendfile.filename")).isNull();
+        assertThat(rejected.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    @DisplayName("should limit each operation on its own")
+    void shouldLimitEachOperationOnItsOwn() throws ServletException, IOException {
+        var filter = filter(true);
+        filter.doFilter(download(), new MockHttpServletResponse(), streaming());
+
+        var upload = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("PUT", "/files/upload.txt"), upload, new MockFilterChain());
+        var listing = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/files"), listing, new MockFilterChain());
+
+        assertThat(upload.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        assertThat(listing.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    @DisplayName("should let everything through when disabled")
+    void shouldLetEverythingThroughWhenDisabled() throws ServletException, IOException {
+        var filter = filter(false);
+        filter.doFilter(download(), new MockHttpServletResponse(), streaming());
+
+        var response = new MockHttpServletResponse();
+        filter.doFilter(download(), response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    }
+}
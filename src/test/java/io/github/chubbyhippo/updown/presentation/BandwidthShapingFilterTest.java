@@ -0,0 +1,75 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BandwidthShapingFilterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BandwidthShapingFilter filter = new BandwidthShapingFilter(new BandwidthProperties(true,
+            new BandwidthProperties.Limits(DataSize.ofBytes(0), DataSize.ofBytes(0)),
+            new BandwidthProperties.Limits(DataSize.ofMegabytes(1), DataSize.ofBytes(0)),
+            DataSize.ofKilobytes(64)), registry);
+
+    @Test
+    @DisplayName("should pace a download to the client rate")
+    void shouldPaceADownloadToTheClientRate() throws ServletException, IOException {
+        var request = new MockHttpServletRequest("GET", "/files/download.txt");
+        request.setAttribute("org.apache.tomcat.sendfile.support", true);
+        var sendfile = new Object[1];
+        var response = new MockHttpServletResponse();
+        var started = System.nanoTime();
+
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest servletRequest, HttpServletResponse servletResponse)
+                    throws IOException {
+                sendfile[0] = servletRequest.getAttribute("org.apache.tomcat.sendfile.support");
+                servletResponse.getOutputStream().write(ByteBuffer.wrap(new byte[320 * 1024]));
+            }
+        }));
+
+        // 64 KB of burst, then 256 KB at 1 MB per second
+        assertThat(System.nanoTime() - started).isGreaterThan(200_000_000L);
+        assertThat(response.getContentAsByteArray()).hasSize(320 * 1024);
+        assertThat(sendfile[0]).isEqualTo(false);
+        assertThat(registry.get("storage.bandwidth.bytes").tag("direction", "download").functionCounter().count())
+                .isEqualTo(320 * 1024);
+        assertThat(registry.get("storage.bandwidth.delayed").tag("direction", "download").functionCounter().count())
+                .isPositive();
+    }
+
+    @Test
+    @DisplayName("should give each client its own rate")
+    void shouldGiveEachClientItsOwnRate() throws ServletException, IOException {
+        for (var client : new String[]{"192.0.2.1", "192.0.2.2"}) {
+            var request = new MockHttpServletRequest("GET", "/files/download.txt");
+            request.setRemoteAddr(client);
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain(new HttpServlet() {
+                @Override
+                protected void service(HttpServletRequest servletRequest, HttpServletResponse servletResponse)
+                        throws IOException {
+                    servletResponse.getOutputStream().write(new byte[64 * 1024]);
+                }
+            }));
+        }
+
+        // Both fit in their own burst
+        assertThat(registry.get("storage.bandwidth.delayed").tag("direction", "download").functionCounter().count())
+                .isZero();
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimiterTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    @DisplayName("should hand a released slot to a waiting request")
+    void shouldHandAReleasedSlotToAWaitingRequest() throws InterruptedException, ExecutionException {
+        var limiter = new ConcurrencyLimiter(1, false, 2.0);
+        assertThat(limiter.acquire(Duration.ZERO)).isTrue();
+        assertThat(limiter.acquire(Duration.ofMillis(10))).isFalse();
+
+        var waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire(Duration.ofSeconds(10));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (limiter.queued() == 0) {
+            Thread.onSpinWait();
+        }
+        limiter.release(1_000_000, MB, false);
+
+        assertThat(waiting.get()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should lower the limit while transfers slow down and raise it when they recover")
+    void shouldLowerTheLimitWhileTransfersSlowDownAndRaiseItWhenTheyRecover() throws InterruptedException {
+        var limiter = new ConcurrencyLimiter(10, true, 2.0);
+        for (var i = 0; i < 10; i++) {
+            assertThat(limiter.acquire(Duration.ZERO)).isTrue();
+        }
+        // 1 ms per MB sets the baseline, then 5 ms per MB is too slow
+        limiter.release(1_000_000, MB, false);
+        for (var i = 0; i < 9; i++) {
+            limiter.release(5_000_000, MB, false);
+        }
+        assertThat(limiter.limit()).isLessThan(5);
+
+        for (var round = 0; round < 200; round++) {
+            // Fill the limit, so that fast transfers show it could be higher
+            var acquired = 0;
+            while (limiter.acquire(Duration.ZERO)) {
+                acquired++;
+            }
+            for (var i = 0; i < acquired; i++) {
+                limiter.release(1_000_000, MB, false);
+            }
+        }
+        assertThat(limiter.limit()).isEqualTo(10);
+    }
+}
@@ -1,36 +1,59 @@
 package io.github.chubbyhippo.updown.presentation;
 
+import io.github.chubbyhippo.updown.application.BatchUploadService;
+import io.github.chubbyhippo.updown.application.FilePage;
+import io.github.chubbyhippo.updown.application.FileQuery;
 import io.github.chubbyhippo.updown.application.FileService;
+import io.github.chubbyhippo.updown.application.UploadResult;
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import tools.jackson.databind.json.JsonMapper;
 
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(FileController.class)
+@Import(SimpleMeterRegistry.class)
+@EnableConfigurationProperties({AdmissionProperties.class, BandwidthProperties.class})
 class FileControllerMockMvcTest {
 
     @Autowired
     private MockMvc mockMvc;
     @MockitoBean
     private FileService fileService;
+    @MockitoBean
+    private BatchUploadService batchUploadService;
     @Autowired
     private JsonMapper jsonMapper;
 
@@ -75,6 +98,34 @@ class FileControllerMockMvcTest {
 
     }
 
+    @Test
+    @DisplayName("should report per-file results of a batch upload")
+    void shouldReportPerFileResultsOfABatchUpload() throws Exception {
+        var file = new MockMultipartFile("file", "test1.txt", MediaType.TEXT_PLAIN_VALUE, "test1".getBytes());
+        when(batchUploadService.upload(any(), eq(true))).thenReturn(List.of(
+                new UploadResult("test1.txt", UploadResult.Status.FAILED, 0, 1, "Failed to store file.")));
+
+        mockMvc.perform(multipart("/files?atomic=true")
+                        .file(file)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$[0].filename").value("test1.txt"))
+                .andExpect(jsonPath("$[0].status").value("FAILED"))
+                .andExpect(jsonPath("$[0].error").value("Failed to store file."));
+    }
+
+    @Test
+    @DisplayName("should stream upload a file")
+    void shouldStreamUploadAFile() throws Exception {
+        mockMvc.perform(put("/files/{filename}", "hello.txt")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content("Hello, World!".getBytes()))
+                .andExpect(status().isOk())
+                .andExpect(content().string("File uploaded successfully: hello.txt"));
+
+        verify(fileService).uploadFile(eq("hello.txt"), any(InputStream.class));
+    }
+
     @Test
     @DisplayName("should list files")
     void shouldListFiles() throws Exception {
@@ -93,6 +144,54 @@ class FileControllerMockMvcTest {
 
     }
 
+    @Test
+    @DisplayName("should list a page of files with a link to the next")
+    void shouldListAPageOfFilesWithALinkToTheNext() throws Exception {
+        var metadata = new FileMetadata("a.txt", 1, Instant.parse("2026-01-01T00:00:00Z"), "text/plain");
+        when(fileService.listFiles(any(FileQuery.class), eq(1)))
+                .thenReturn(new FilePage(List.of(metadata), "next-cursor"));
+
+        mockMvc.perform(get("/files?limit=1&prefix=a")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].name").value("a.txt"))
+                .andExpect(jsonPath("$.nextCursor").value("next-cursor"))
+                .andExpect(header().string(HttpHeaders.LINK,
+                        "<http://localhost/files?limit=1&prefix=a&cursor=next-cursor>; rel=\"next\""));
+
+        verify(fileService).listFiles(new FileQuery("a", null, null, null, null, FileQuery.Sort.NAME, false, null), 1);
+    }
+
+    @Test
+    @DisplayName("should stream files as ndjson")
+    void shouldStreamFilesAsNdjson() throws Exception {
+        when(fileService.findFiles(any(FileQuery.class))).thenReturn(Stream.of(
+                new FileMetadata("a.txt", 1, Instant.parse("2026-01-01T00:00:00Z"), "text/plain"),
+                new FileMetadata("b.txt", 2, Instant.parse("2026-01-02T00:00:00Z"), "text/plain")));
+
+        var mvcResult = mockMvc.perform(get("/files").param("sort", "-size")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        var lines = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString().lines().toList();
+        assertThat(lines).hasSize(2);
+        assertThat(jsonMapper.readValue(lines.get(1), FileMetadata.class).name()).isEqualTo("b.txt");
+        verify(fileService).findFiles(new FileQuery(null, null, null, null, null, FileQuery.Sort.SIZE, true, null));
+    }
+
+    @Test
+    @DisplayName("should reject an unknown sort")
+    void shouldRejectAnUnknownSort() throws Exception {
+        mockMvc.perform(get("/files").param("limit", "10").param("sort", "colour")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Unknown sort: colour"));
+    }
+
     @Test
     @DisplayName("should download file")
     void shouldDownloadFile() throws Exception {
@@ -107,7 +206,9 @@ class FileControllerMockMvcTest {
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
                 .andExpect(header().string("Content-Disposition",
-                        "attachment; filename*=UTF-8''" +   filename ));
+                        "attachment; filename*=UTF-8''" +   filename ))
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().exists("ETag"));
     }
 
 }
\ No newline at end of file
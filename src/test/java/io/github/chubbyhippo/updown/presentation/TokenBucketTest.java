@@ -0,0 +1,25 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    @DisplayName("should let a burst through and make the rest wait for the rate")
+    void shouldLetABurstThroughAndMakeTheRestWaitForTheRate() {
+        var bucket = new TokenBucket(1000, 500);
+
+        var burst = bucket.take(500);
+        var first = bucket.take(1000);
+        var second = bucket.take(1000);
+
+        assertThat(burst).isZero();
+        // 1000 bytes at 1000 bytes per second, less what refilled since
+        assertThat(first).isBetween(900_000_000L, 1_000_000_000L);
+        // Debt adds up
+        assertThat(second).isBetween(1_900_000_000L, 2_000_000_000L);
+    }
+}
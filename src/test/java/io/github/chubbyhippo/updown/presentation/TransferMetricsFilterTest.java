@@ -0,0 +1,144 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.github.chubbyhippo.updown.domain.StorageFileNotFoundException;
+import io.github.chubbyhippo.updown.infrastructure.DownloadProperties;
+import io.github.chubbyhippo.updown.infrastructure.FileChannelDownloadEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferMetricsFilterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final TransferMetricsFilter filter = new TransferMetricsFilter(registry);
+
+    private static MockFilterChain chain(String pattern, ServletBody body) {
+        return new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, pattern);
+                body.handle(request, response);
+            }
+        });
+    }
+
+    private interface ServletBody {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+
+    @Test
+    @DisplayName("should record bytes read by an upload")
+    void shouldRecordBytesReadByAnUpload() throws ServletException, IOException {
+        var request = new MockHttpServletRequest("PUT", "/files/upload.txt");
+        request.setContent("uploaded".getBytes());
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain("/files/{filename:.+}",
+                (servletRequest, response) -> servletRequest.getInputStream().readAllBytes()));
+
+        var bytes = registry.get("storage.transfer.bytes")
+                .tag("operation", "upload")
+                .tag("endpoint", "/files/{filename:.+}")
+                .tag("outcome", "SUCCESS")
+                .summary();
+        assertThat(bytes.count()).isEqualTo(1);
+        assertThat(bytes.totalAmount()).isEqualTo(8);
+        assertThat(registry.get("storage.transfer.duration").tag("operation", "upload").timer().count()).isEqualTo(1);
+        assertThat(registry.get("storage.transfer.active").tag("operation", "upload").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("should keep a streamed download in flight until the async request completes")
+    void shouldKeepAStreamedDownloadInFlightUntilTheAsyncRequestCompletes() throws ServletException, IOException {
+        var request = new MockHttpServletRequest("GET", "/files/download.txt");
+        request.setAsyncSupported(true);
+        var response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain("/files/{filename:.+}", (servletRequest, servletResponse) -> {
+            servletRequest.startAsync(servletRequest, servletResponse);
+            servletResponse.getOutputStream().write("0123456789".getBytes());
+        }));
+
+        assertThat(registry.get("storage.transfer.active").tag("operation", "download").gauge().value()).isOne();
+        assertThat(registry.find("storage.transfer.bytes").summary()).isNull();
+
+        Objects.requireNonNull(request.getAsyncContext()).complete();
+
+        assertThat(registry.get("storage.transfer.active").tag("operation", "download").gauge().value()).isZero();
+        assertThat(registry.get("storage.transfer.bytes").tag("operation", "download").summary().totalAmount())
+                .isEqualTo(10);
+        assertThat(response.getContentAsString()).isEqualTo("0123456789");
+    }
+
+    @Test
+    @DisplayName("should keep a download above the sendfile threshold out of the throughput meters")
+    void shouldKeepADownloadAboveTheSendfileThresholdOutOfTheThroughputMeters(@TempDir Path directory)
+            throws ServletException, IOException {
+        var file = Files.write(directory.resolve("download.txt"), new byte[1024 * 1024]);
+        var engine = new FileChannelDownloadEngine(new DownloadProperties(DownloadProperties.Mode.AUTO,
+                DataSize.ofKilobytes(48), DataSize.ofMegabytes(4)));
+        var request = new MockHttpServletRequest("GET", "/files/download.txt");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain("/files/{filename:.+}",
+                (servletRequest, response) -> {
+                    var resource = new FileSystemResource(file);
+                    assertThat(engine.offload(resource, 0, resource.contentLength(), servletRequest)).isTrue();
+                }));
+
+        assertThat(registry.find("storage.transfer.duration").timer()).isNull();
+        assertThat(registry.find("storage.transfer.bytes").summary()).isNull();
+        assertThat(registry.get("storage.transfer.sendfile").tag("operation", "download").summary().totalAmount())
+                .isEqualTo(1024 * 1024);
+        assertThat(request.getAttribute(TransferMetricsFilter.BYTES_ATTRIBUTE)).isEqualTo(1024 * 1024L);
+    }
+
+    @Test
+    @DisplayName("should count errors by exception type")
+    void shouldCountErrorsByExceptionType() throws ServletException, IOException {
+        var request = new MockHttpServletRequest("GET", "/files/missing.txt");
+        var response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain("/files/{filename:.+}", (servletRequest, servletResponse) -> {
+            servletRequest.setAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE,
+                    new StorageFileNotFoundException("Could not read file: missing.txt"));
+            servletResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }));
+
+        assertThat(registry.get("storage.errors")
+                .tag("endpoint", "/files/{filename:.+}")
+                .tag("exception", "StorageFileNotFoundException")
+                .counter().count()).isEqualTo(1);
+        assertThat(registry.get("storage.transfer.duration").tag("outcome", "CLIENT_ERROR").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should not time listings as transfers")
+    void shouldNotTimeListingsAsTransfers() throws ServletException, IOException {
+        var request = new MockHttpServletRequest("GET", "/files");
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain("/files",
+                (servletRequest, response) -> response.getOutputStream().write("[]".getBytes())));
+
+        assertThat(registry.find("storage.transfer.duration").timer()).isNull();
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.chubbyhippo.updown.presentation;
+
+import io.github.chubbyhippo.updown.domain.FileMetadata;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebRuntimeHintsTest {
+
+    @Test
+    @DisplayName("should register the streamed metadata, the listing query and the swagger ui assets")
+    void shouldRegisterTheStreamedMetadataTheListingQueryAndTheSwaggerUiAssets() {
+        var hints = new RuntimeHints();
+
+        new WebRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertThat(RuntimeHintsPredicates.reflection().onType(FileMetadata.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(FileController.ListFilesRequest.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("META-INF/resources/webjars/swagger-ui/5.0/index.html"))
+                .accepts(hints);
+    }
+}
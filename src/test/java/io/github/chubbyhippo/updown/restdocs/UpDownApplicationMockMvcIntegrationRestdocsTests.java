@@ -1,6 +1,6 @@
 package io.github.chubbyhippo.updown.restdocs;
 
-import io.github.chubbyhippo.updown.domain.StorageService;
+import io.github.chubbyhippo.updown.infrastructure.FileSystemStorageService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -54,7 +54,7 @@ class UpDownApplicationMockMvcIntegrationRestdocsTests {
     @Autowired
     private JsonMapper jsonMapper;
     @Autowired
-    private StorageService storageService;
+    private FileSystemStorageService storageService;
 
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
@@ -130,6 +130,7 @@ class UpDownApplicationMockMvcIntegrationRestdocsTests {
 
         var path2 = tempDir.resolve("testList2.txt");
         Files.write(path2, "test2".getBytes());
+        storageService.reconcile();
 
         var mvcResult = mockMvc.perform(get("/files")
                         .accept(MediaType.APPLICATION_JSON))